@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.repository.auditing;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.MemoryOverflowModel;
+import org.openrdf.model.vocabulary.RDF;
+
+/**
+ * Remembers which resources each activity graph has recorded in a
+ * transaction. The most recently used are kept in a small map and the rest in
+ * a model that overflows to disk, so every resource is only recorded once
+ * regardless of the size of the transaction.
+ * 
+ * @author James Leigh
+ * 
+ */
+class ActivitySummary {
+	private static final int MAX_RECENT = 1024;
+	private final Map<List<URI>, Boolean> recent = new LinkedHashMap<List<URI>, Boolean>(
+			128, 0.75f, true) {
+		private static final long serialVersionUID = -3179185066364394213L;
+
+		protected boolean removeEldestEntry(Entry<List<URI>, Boolean> eldest) {
+			if (size() <= MAX_RECENT)
+				return false;
+			List<URI> key = eldest.getKey();
+			Boolean value = eldest.getValue();
+			overflow.add(key.get(1), RDF.VALUE, value ? inserted : touched,
+					key.get(0));
+			return true;
+		}
+	};
+	private MemoryOverflowModel overflow = new MemoryOverflowModel();
+	private final Literal inserted;
+	private final Literal touched;
+
+	public ActivitySummary(ValueFactory vf) {
+		inserted = vf.createLiteral(true);
+		touched = vf.createLiteral(false);
+	}
+
+	/**
+	 * @return {@link Boolean#TRUE} if recorded as inserted,
+	 *         {@link Boolean#FALSE} if only recorded or <code>null</code>
+	 */
+	public Boolean get(URI activityGraph, URI resource) {
+		Boolean value = recent.get(Arrays.asList(activityGraph, resource));
+		if (value != null || overflow.isEmpty())
+			return value;
+		if (overflow.contains(resource, RDF.VALUE, inserted, activityGraph))
+			return Boolean.TRUE;
+		if (overflow.contains(resource, RDF.VALUE, touched, activityGraph))
+			return Boolean.FALSE;
+		return null;
+	}
+
+	public void put(URI activityGraph, URI resource, Boolean value) {
+		List<URI> key = Arrays.asList(activityGraph, resource);
+		if (recent.put(key, value) == null && !overflow.isEmpty()) {
+			overflow.remove(resource, RDF.VALUE, null, activityGraph);
+		}
+	}
+
+	/**
+	 * If some of the resources have been moved to a temporary store on disk.
+	 */
+	public boolean isOverflowed() {
+		return overflow.isOverflowed();
+	}
+
+	/**
+	 * Forgets every resource. A model that has overflowed is replaced, as it
+	 * would otherwise stay on disk for the next transaction.
+	 */
+	public void clear() {
+		recent.clear();
+		if (overflow.isOverflowed()) {
+			overflow = new MemoryOverflowModel();
+		} else {
+			overflow.clear();
+		}
+	}
+}
@@ -30,14 +30,24 @@ package org.openrdf.repository.auditing;
 
 import static org.openrdf.query.QueryLanguage.SPARQL;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.Duration;
@@ -47,6 +57,7 @@ import org.openrdf.OpenRDFException;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryLanguage;
@@ -54,6 +65,18 @@ import org.openrdf.query.TupleQuery;
 import org.openrdf.query.TupleQueryResult;
 import org.openrdf.query.Update;
 import org.openrdf.query.UpdateExecutionException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.Modify;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.UpdateExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+import org.openrdf.query.impl.DatasetImpl;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.query.impl.MapBindingSet;
+import org.openrdf.query.parser.ParsedUpdate;
+import org.openrdf.query.parser.QueryParserUtil;
 import org.openrdf.repository.DelegatingRepository;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
@@ -61,70 +84,121 @@ import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.auditing.helpers.ActivityTagFactory;
 import org.openrdf.repository.contextaware.ContextAwareRepository;
 import org.openrdf.repository.http.HTTPRepository;
+import org.openrdf.repository.sail.SailRepositoryConnection;
 import org.openrdf.repository.sparql.SPARQLRepository;
+import org.openrdf.sail.SailException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class AuditingRepository extends ContextAwareRepository {
-	private static final String FILTER_NOT_EXISTS_ACTIVE_TRIPLES = "FILTER NOT EXISTS { GRAPH ?obsolete {\n\t\t\t"
-				+ "?s ?p ?o\n\t\t\t"
-				+ "FILTER ( !strstarts(str(?obsolete),str(?s)) )\n\t\t\t"
-				+ "FILTER ( !strstarts(str(?obsolete),str(?o)) )\n\t\t\t"
-				+ "FILTER ( !strstarts(str(?s),str(?obsolete)) )\n\t\t\t"
-				+ "FILTER ( !strstarts(str(?o),str(?obsolete)) )\n\t\t\t"
-				+ "FILTER ( !strstarts(str(?p),str(rdf:)) || sameTerm(?p,rdf:type) && ( !isIRI(?o) || !strstarts(str(?o),str(rdf:)) && !strstarts(str(?o),str(prov:)) && !strstarts(str(?o),str(audit:)) ))\n\t\t\t"
-				+ "FILTER ( !strstarts(str(?p),str(prov:)) )\n\t\t\t"
-				+ "FILTER ( !strstarts(str(?p),str(audit:)) )\n\t\t"
-				+ "}}\n\t\t";
+	private static final String MBEAN_DOMAIN = "org.openrdf.repository.auditing";
+	private static final String AUDIT = "http://www.openrdf.org/rdf/2012/auditing#";
+	private static final String RECENT_ACTIVITY = AUDIT + "RecentActivity";
+	private static final int MAX_ANALYSED_UPDATES = 256;
+	private static final int MAX_ANALYSED_LENGTH = 4096;
 	private static final String SELECT_RECENT = "PREFIX prov:<http://www.w3.org/ns/prov#>\n"
 			+ "PREFIX audit:<http://www.openrdf.org/rdf/2012/auditing#>\n"
 			+ "SELECT REDUCED ?recent { ?recent a audit:RecentActivity\n\t"
 			+ "OPTIONAL { ?recent prov:endedAtTime ?endedAtTime } }\n"
 			+ "ORDER BY ?endedAtTime";
-	private static final String TRIM_RECENT_ACTIVITY = "PREFIX rdf:<http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n"
+	/**
+	 * A statement in the ?candidate graph that is not provenance and not about
+	 * the activity itself.
+	 */
+	private static final String LIVE_STATEMENT = "GRAPH ?candidate {\n\t\t\t"
+			+ "?s ?p ?o\n\t\t\t"
+			+ "FILTER ( !isIRI(?s) || !strstarts(str(?s),str(?candidate)) && !strstarts(str(?candidate),str(?s)) )\n\t\t\t"
+			+ "FILTER ( !isIRI(?o) || !strstarts(str(?o),str(?candidate)) && !strstarts(str(?candidate),str(?o)) )\n\t\t\t"
+			+ "FILTER ( !strstarts(str(?p),str(prov:)) && !strstarts(str(?p),str(audit:)) )\n\t\t\t"
+			+ "FILTER ( !strstarts(str(?p),str(rdf:)) || sameTerm(?p,rdf:type) && ( !isIRI(?o) || !strstarts(str(?o),str(rdf:)) && !strstarts(str(?o),str(prov:)) && !strstarts(str(?o),str(audit:)) ) )\n\t\t"
+			+ "}";
+	/**
+	 * Unflags the recent $activity and flags each graph it may have changed as
+	 * either still contributing or obsolete. Graphs that are already flagged
+	 * are not read again and the others are only checked once for all the
+	 * activities bound.
+	 */
+	private static final String TRIM_RECENT_ACTIVITIES = "PREFIX rdf:<http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n"
 			+ "PREFIX prov:<http://www.w3.org/ns/prov#>\n"
 			+ "PREFIX audit:<http://www.openrdf.org/rdf/2012/auditing#>\n"
 			+ "DELETE {\n\t"
 			+ "GRAPH $activity { $activity a audit:RecentActivity }\n"
 			+ "} INSERT {\n\t"
-			+ "GRAPH ?obsolete { ?obsolete a audit:ObsoleteActivity }\n"
+			+ "GRAPH ?candidate { ?candidate a ?flag }\n"
 			+ "} WHERE {\n\t"
+			+ "{\n\t\t"
 			+ "$activity a audit:RecentActivity\n\t"
-			+ "OPTIONAL {\n\t\t"
+			+ "} UNION {\n\t\t"
 			+ "{\n\t\t\t"
-			+ "BIND ($activity AS ?obsolete)\n\t\t"
-			+ "} UNION {\n\t\t\t"
-			+ "$activity prov:wasInformedBy ?obsolete\n\t\t"
-			+ "} UNION {\n\t\t\t"
-			+ "$activity prov:used ?entity . ?obsolete prov:used ?entity\n\t\t"
+			+ "SELECT DISTINCT ?candidate {\n\t\t\t\t"
+			+ "$activity a audit:RecentActivity\n\t\t\t\t"
+			+ "{\n\t\t\t\t\t"
+			+ "BIND ($activity AS ?candidate)\n\t\t\t\t"
+			+ "} UNION {\n\t\t\t\t\t"
+			+ "$activity prov:wasInformedBy ?candidate\n\t\t\t\t"
+			+ "} UNION {\n\t\t\t\t\t"
+			+ "$activity prov:used ?entity . ?candidate prov:used ?entity\n\t\t\t\t"
+			+ "}\n\t\t\t"
+			+ "}\n\t\t"
 			+ "}\n\t\t"
-			+ "FILTER NOT EXISTS { [prov:wasGeneratedBy ?obsolete] }\n\t"
-			+ FILTER_NOT_EXISTS_ACTIVE_TRIPLES
-			+ "FILTER EXISTS { GRAPH ?obsolete { ?s ?p ?o } }\n\t"
+			+ "FILTER NOT EXISTS { [prov:wasGeneratedBy ?candidate] }\n\t\t"
+			+ "FILTER NOT EXISTS { ?candidate a audit:ObsoleteActivity }\n\t\t"
+			+ "FILTER NOT EXISTS { ?candidate a audit:ContributingActivity }\n\t\t"
+			+ "FILTER EXISTS { GRAPH ?candidate { ?s ?p ?o } }\n\t\t"
+			+ "BIND (if(EXISTS { " + LIVE_STATEMENT + " }, audit:ContributingActivity, audit:ObsoleteActivity) AS ?flag)\n\t"
 			+ "}\n"
 			+ "}";
-	private static final String PURGE_EARLIER = "PREFIX rdf:<http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n"
+	/**
+	 * Removes the obsolete graphs that ended before $earlier. Only graphs that
+	 * are not flagged as contributing are checked again before they are
+	 * removed, as statements can be added to them by connections that are not
+	 * recording activities.
+	 */
+	private static final String PURGE_OBSOLETE = "PREFIX rdf:<http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n"
 			+ "PREFIX prov:<http://www.w3.org/ns/prov#>\n"
 			+ "PREFIX audit:<http://www.openrdf.org/rdf/2012/auditing#>\n"
 			+ "DELETE {\n\t"
-			+ "GRAPH ?obsolete { ?subject ?predicate ?object }\n"
+			+ "GRAPH ?candidate { ?subject ?predicate ?object }\n"
 			+ "} WHERE {\n\t"
-			+ "?obsolete a audit:ObsoleteActivity; prov:endedAtTime ?endedAtTime\n\t"
-			+ "FILTER (?endedAtTime < $earlier)\n\t"
-			+ "FILTER NOT EXISTS { ?obsolete a audit:RecentActivity }\n\t"
-			+ FILTER_NOT_EXISTS_ACTIVE_TRIPLES
-			+ "GRAPH ?obsolete { ?subject ?predicate ?object }\n" + "}";
+			+ "{\n\t\t"
+			+ "SELECT ?candidate {\n\t\t\t"
+			+ "?candidate a audit:ObsoleteActivity; prov:endedAtTime ?endedAtTime\n\t\t\t"
+			+ "FILTER (?endedAtTime < $earlier)\n\t\t\t"
+			+ "FILTER NOT EXISTS { ?candidate a audit:RecentActivity }\n\t\t\t"
+			+ "FILTER NOT EXISTS { ?candidate a audit:ContributingActivity }\n\t\t\t"
+			+ "FILTER NOT EXISTS { " + LIVE_STATEMENT + " }\n\t\t"
+			+ "}\n\t"
+			+ "}\n\t"
+			+ "GRAPH ?candidate { ?subject ?predicate ?object }\n"
+			+ "}";
 
 	private final Logger logger = LoggerFactory
 			.getLogger(AuditingRepository.class);
 	private final ArrayDeque<URI> recent = new ArrayDeque<URI>(1024);
+	/** parsed {@link #TRIM_RECENT_ACTIVITIES} */
+	private Modify trimRecentActivities;
 	private DatatypeFactory datatypeFactory;
 	private Duration purgeAfter;
-	private long nextPurge = Long.MAX_VALUE;
+	private volatile long nextPurge = Long.MAX_VALUE;
 	private int minRecent;
 	private int maxRecent;
+	private int trimBatchSize = 64;
+	private long maintenancePeriod;
+	/** parsed updates by language, base URI and update string */
+	private final Map<List<Object>, UpdateAnalysis> analysedUpdates = new LinkedHashMap<List<Object>, UpdateAnalysis>(
+			MAX_ANALYSED_UPDATES, 0.75f, true) {
+		private static final long serialVersionUID = -6718213620451253411L;
+
+		protected boolean removeEldestEntry(
+				Entry<List<Object>, UpdateAnalysis> eldest) {
+			return size() > MAX_ANALYSED_UPDATES;
+		}
+	};
+	private volatile AuditingRepositoryMaintenance maintenance;
 	private Boolean transactional;
 	private ActivityFactory activityFactory;
+	private final AuditingRepositoryMonitor monitor = new AuditingRepositoryMonitor();
+	private ObjectName mbean;
 
 	public AuditingRepository() {
 		super();
@@ -182,6 +256,32 @@ public class AuditingRepository extends ContextAwareRepository {
 		this.maxRecent = maxRecent;
 	}
 
+	/**
+	 * The maximum number of recent activity graphs that are trimmed together
+	 * in a single update and commit.
+	 */
+	public int getTrimBatchSize() {
+		return trimBatchSize;
+	}
+
+	public void setTrimBatchSize(int trimBatchSize) {
+		if (trimBatchSize < 1)
+			throw new IllegalArgumentException("Trim batch size must be positive");
+		this.trimBatchSize = trimBatchSize;
+	}
+
+	/**
+	 * Milliseconds between background checks for recent activities to trim
+	 * and obsolete activity graphs to purge, zero to only check after commits.
+	 */
+	public long getMaintenancePeriod() {
+		return maintenancePeriod;
+	}
+
+	public void setMaintenancePeriod(long maintenancePeriod) {
+		this.maintenancePeriod = maintenancePeriod;
+	}
+
 	public boolean isTransactional() {
 		if (transactional != null)
 			return transactional;
@@ -210,6 +310,26 @@ public class AuditingRepository extends ContextAwareRepository {
 		this.activityFactory = activityFactory;
 	}
 
+	/**
+	 * The cost of recording activities, which is also exposed via JMX.
+	 */
+	public AuditingRepositoryMonitor getMonitor() {
+		return monitor;
+	}
+
+	/**
+	 * Waits for the trimming and purging requested so far to complete.
+	 * 
+	 * @return <code>false</code> if the timeout elapsed first
+	 */
+	public boolean awaitMaintenance(long timeout, TimeUnit unit)
+			throws RepositoryException {
+		AuditingRepositoryMaintenance maintenance = this.maintenance;
+		if (maintenance == null)
+			return true;
+		return maintenance.await(timeout, unit);
+	}
+
 	@Override
 	public synchronized void initialize() throws RepositoryException {
 		super.initialize();
@@ -223,7 +343,13 @@ public class AuditingRepository extends ContextAwareRepository {
 		}
 		RepositoryConnection con = super.getConnection();
 		try {
-			recent.addAll(loadRecentActivities(con));
+			ParsedUpdate trim = QueryParserUtil.parseUpdate(SPARQL,
+					TRIM_RECENT_ACTIVITIES, null);
+			trimRecentActivities = (Modify) trim.getUpdateExprs().get(0);
+			Collection<URI> loaded = loadRecentActivities(con);
+			synchronized (recent) {
+				recent.addAll(loaded);
+			}
 			if (purgeAfter == null) {
 				nextPurge = Long.MAX_VALUE;
 			} else {
@@ -236,9 +362,25 @@ public class AuditingRepository extends ContextAwareRepository {
 		} finally {
 			con.close();
 		}
+		mbean = registerMBean();
+		AuditingRepositoryMaintenance maintenance = new AuditingRepositoryMaintenance(this);
+		maintenance.setPeriod(maintenancePeriod);
+		maintenance.start();
+		this.maintenance = maintenance;
 		cleanup();
 	}
 
+	@Override
+	public synchronized void shutDown() throws RepositoryException {
+		if (maintenance != null) {
+			maintenance.stop();
+			maintenance = null;
+		}
+		unregisterMBean(mbean);
+		mbean = null;
+		super.shutDown();
+	}
+
 	@Override
 	public AuditingRepositoryConnection getConnection()
 			throws RepositoryException {
@@ -257,15 +399,65 @@ public class AuditingRepository extends ContextAwareRepository {
 		return con;
 	}
 
-	synchronized void addRecentActivities(Collection<URI> recentActivities)
+	/**
+	 * The parsed update and the patterns it changes, shared by connections.
+	 * Long updates and updates with INSERT DATA or DELETE DATA are parsed
+	 * each time, as they are unlikely to be repeated.
+	 */
+	UpdateAnalysis getUpdateAnalysis(QueryLanguage ql, String update,
+			String baseURI) throws MalformedQueryException,
+			QueryEvaluationException {
+		if (update.length() > MAX_ANALYSED_LENGTH)
+			return analyseUpdate(ql, update, baseURI);
+		List<Object> key = Arrays.<Object> asList(ql, baseURI, update);
+		synchronized (analysedUpdates) {
+			UpdateAnalysis analysis = analysedUpdates.get(key);
+			if (analysis != null)
+				return analysis;
+		}
+		UpdateAnalysis analysis = analyseUpdate(ql, update, baseURI);
+		if (!analysis.isData()) {
+			synchronized (analysedUpdates) {
+				analysedUpdates.put(key, analysis);
+			}
+		}
+		return analysis;
+	}
+
+	private UpdateAnalysis analyseUpdate(QueryLanguage ql, String update,
+			String baseURI) throws MalformedQueryException,
+			QueryEvaluationException {
+		ParsedUpdate parsed = QueryParserUtil.parseUpdate(ql, update, baseURI);
+		return new UpdateAnalysis(parsed);
+	}
+
+	void addRecentActivities(Collection<URI> recentActivities)
 			throws RepositoryException {
-		recent.addAll(recentActivities);
+		synchronized (recent) {
+			recent.addAll(recentActivities);
+		}
+	}
+
+	/**
+	 * Requests background maintenance if there are recent activities to trim
+	 * or obsolete activity graphs to purge.
+	 */
+	void cleanup() {
+		AuditingRepositoryMaintenance maintenance = this.maintenance;
+		if (maintenance != null
+				&& (isTrimDue() || isPurgeDue(System.currentTimeMillis()))) {
+			maintenance.request();
+		}
 	}
 
-	synchronized void cleanup() {
-		if (recent.size() >= maxRecent) {
+	/**
+	 * Trims and purges using its own connection, called from the maintenance
+	 * thread.
+	 */
+	void maintain() {
+		if (isTrimDue()) {
 			try {
-				RepositoryConnection con = super.getConnection();
+				RepositoryConnection con = getDelegate().getConnection();
 				try {
 					trimRecentActivities(con);
 				} finally {
@@ -275,64 +467,138 @@ public class AuditingRepository extends ContextAwareRepository {
 				logger.warn(e.toString(), e);
 			}
 		}
-		if (nextPurge < Long.MAX_VALUE) {
-			long now = System.currentTimeMillis();
-			if (now >= nextPurge) {
-				Date earlier = new Date(now);
-				purgeAfter.negate().addTo(earlier);
+		long now = System.currentTimeMillis();
+		if (isPurgeDue(now)) {
+			Date earlier = new Date(now);
+			purgeAfter.negate().addTo(earlier);
+			try {
+				RepositoryConnection con = getDelegate().getConnection();
 				try {
-					RepositoryConnection con = super.getConnection();
-					try {
-						purgeObsolete(earlier, con);
-					} finally {
-						con.close();
-					}
-				} catch (OpenRDFException e) {
-					logger.error(e.toString(), e);
+					purgeObsolete(earlier, con);
 				} finally {
-					Date next = new Date(now);
-					purgeAfter.addTo(next);
-					nextPurge = next.getTime();
+					con.close();
 				}
+			} catch (OpenRDFException e) {
+				logger.error(e.toString(), e);
+			} finally {
+				Date next = new Date(now);
+				purgeAfter.addTo(next);
+				nextPurge = next.getTime();
 			}
 		}
 	}
 
-	private synchronized void trimRecentActivities(RepositoryConnection con)
+	private boolean isTrimDue() {
+		synchronized (recent) {
+			return recent.size() >= maxRecent;
+		}
+	}
+
+	private boolean isPurgeDue(long now) {
+		long next = nextPurge;
+		return next < Long.MAX_VALUE && now >= next;
+	}
+
+	private void trimRecentActivities(RepositoryConnection con)
 			throws RepositoryException, MalformedQueryException,
 			UpdateExecutionException {
-		Set<URI> trim = new LinkedHashSet<URI>(recent.size());
-		while (recent.size() >= minRecent || recent.size() >= maxRecent) {
-			URI poll = recent.poll();
-			if (poll == null)
-				break;
-			trim.add(poll);
+		Set<URI> trim;
+		synchronized (recent) {
+			trim = new LinkedHashSet<URI>(recent.size());
+			while (recent.size() >= minRecent || recent.size() >= maxRecent) {
+				URI poll = recent.poll();
+				if (poll == null)
+					break;
+				trim.add(poll);
+			}
 		}
+		long start = System.nanoTime();
+		int size = trim.size();
 		try {
-			Iterator<URI> iter = trim.iterator();
-			while (iter.hasNext()) {
+			List<URI> list = new ArrayList<URI>(trim);
+			for (int i = 0, n = list.size(); i < n; i += trimBatchSize) {
+				List<URI> batch = list.subList(i, Math.min(n, i + trimBatchSize));
 				con.setAutoCommit(false);
-				Update update = con.prepareUpdate(SPARQL, TRIM_RECENT_ACTIVITY);
-				update.setBinding("activity", iter.next());
-				update.execute();
+				trimRecentActivities(batch, con);
 				con.setAutoCommit(true);
-				iter.remove();
+				trim.removeAll(batch);
 			}
 		} finally {
-			recent.addAll(trim);
+			monitor.trimmed(size - trim.size(), start);
+			synchronized (recent) {
+				recent.addAll(trim);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the trim update once for these activities, directly in the
+	 * sail when possible.
+	 */
+	private void trimRecentActivities(List<URI> activities,
+			RepositoryConnection con) throws RepositoryException,
+			MalformedQueryException, UpdateExecutionException {
+		if (con instanceof SailRepositoryConnection) {
+			SailRepositoryConnection sail = (SailRepositoryConnection) con;
+			UpdateExpr expr = bindActivities(activities);
+			try {
+				sail.getSailConnection().executeUpdate(expr, new DatasetImpl(),
+						EmptyBindingSet.getInstance(), false);
+			} catch (SailException e) {
+				throw new RepositoryException(e);
+			}
+		} else {
+			Update update = con.prepareUpdate(SPARQL, TRIM_RECENT_ACTIVITIES);
+			update.setDataset(new DatasetImpl());
+			for (URI activity : activities) {
+				update.setBinding("activity", activity);
+				update.execute();
+			}
 		}
 	}
 
+	/**
+	 * The parsed trim update with every $activity that is flagged as recent
+	 * assigned to each of these activities.
+	 */
+	private UpdateExpr bindActivities(List<URI> activities) {
+		final List<BindingSet> bindings = new ArrayList<BindingSet>(
+				activities.size());
+		for (URI activity : activities) {
+			MapBindingSet bs = new MapBindingSet(1);
+			bs.addBinding("activity", activity);
+			bindings.add(bs);
+		}
+		Modify modify = trimRecentActivities.clone();
+		modify.getWhereExpr().visit(new QueryModelVisitorBase<RuntimeException>() {
+			public void meet(StatementPattern node) {
+				Var subj = node.getSubjectVar();
+				Var obj = node.getObjectVar();
+				if ("activity".equals(subj.getName()) && !subj.hasValue()
+						&& obj.hasValue()
+						&& RECENT_ACTIVITY.equals(obj.getValue().stringValue())) {
+					BindingSetAssignment assignment = new BindingSetAssignment();
+					assignment.setBindingSets(bindings);
+					node.replaceWith(new Join(assignment, node.clone()));
+				}
+			}
+		});
+		return modify;
+	}
+
 	private void purgeObsolete(Date earlier, RepositoryConnection con)
 			throws RepositoryException, MalformedQueryException,
 			UpdateExecutionException {
+		long start = System.nanoTime();
 		GregorianCalendar cal = new GregorianCalendar(1970, 0, 1);
 		cal.setTime(earlier);
 		XMLGregorianCalendar xgc = datatypeFactory.newXMLGregorianCalendar(cal);
 		ValueFactory vf = con.getValueFactory();
-		Update update = con.prepareUpdate(QueryLanguage.SPARQL, PURGE_EARLIER);
+		Update update = con.prepareUpdate(SPARQL, PURGE_OBSOLETE);
+		update.setDataset(new DatasetImpl());
 		update.setBinding("earlier", vf.createLiteral(xgc));
 		update.execute();
+		monitor.purged(start);
 	}
 
 	private Collection<URI> loadRecentActivities(RepositoryConnection con)
@@ -355,6 +621,35 @@ public class AuditingRepository extends ContextAwareRepository {
 		return recentActivities;
 	}
 
+	private ObjectName registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			String id = Integer.toHexString(System.identityHashCode(this));
+			ObjectName name = new ObjectName(MBEAN_DOMAIN
+					+ ":type=AuditingRepository,dataDir="
+					+ ObjectName.quote(String.valueOf(getDataDir())) + ",id="
+					+ id);
+			server.registerMBean(monitor, name);
+			return name;
+		} catch (JMException e) {
+			logger.warn(e.toString(), e);
+			return null;
+		}
+	}
+
+	private void unregisterMBean(ObjectName name) {
+		if (name == null)
+			return;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			logger.warn(e.toString(), e);
+		}
+	}
+
 	private boolean isTransactionSupported(Repository delegate) {
 		return !(delegate instanceof HTTPRepository) && !(delegate instanceof SPARQLRepository);
 	}
@@ -30,52 +30,69 @@ package org.openrdf.repository.auditing;
 
 import static org.openrdf.query.QueryLanguage.SPARQL;
 
-import java.util.HashMap;
+import info.aduna.iteration.Iteration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 import org.openrdf.model.BNode;
 import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.query.BindingSet;
+import org.openrdf.query.BooleanQuery;
 import org.openrdf.query.Dataset;
+import org.openrdf.query.GraphQuery;
 import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.Query;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.UnsupportedQueryLanguageException;
 import org.openrdf.query.Update;
 import org.openrdf.query.UpdateExecutionException;
-import org.openrdf.query.algebra.Add;
-import org.openrdf.query.algebra.Clear;
-import org.openrdf.query.algebra.Copy;
-import org.openrdf.query.algebra.Create;
 import org.openrdf.query.algebra.DeleteData;
-import org.openrdf.query.algebra.InsertData;
-import org.openrdf.query.algebra.Load;
+import org.openrdf.query.algebra.Extension;
+import org.openrdf.query.algebra.ExtensionElem;
 import org.openrdf.query.algebra.Modify;
-import org.openrdf.query.algebra.Move;
-import org.openrdf.query.algebra.QueryModelNode;
+import org.openrdf.query.algebra.MultiProjection;
+import org.openrdf.query.algebra.ProjectionElem;
+import org.openrdf.query.algebra.ProjectionElemList;
+import org.openrdf.query.algebra.Reduced;
+import org.openrdf.query.algebra.SingletonSet;
 import org.openrdf.query.algebra.StatementPattern;
 import org.openrdf.query.algebra.UpdateExpr;
+import org.openrdf.query.algebra.ValueConstant;
 import org.openrdf.query.algebra.Var;
 import org.openrdf.query.impl.DatasetImpl;
-import org.openrdf.query.parser.ParsedUpdate;
-import org.openrdf.query.parser.QueryParser;
-import org.openrdf.query.parser.QueryParserUtil;
+import org.openrdf.query.impl.EmptyBindingSet;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
-import org.openrdf.repository.auditing.helpers.BasicGraphPatternVisitor;
+import org.openrdf.repository.RepositoryResult;
 import org.openrdf.repository.contextaware.ContextAwareConnection;
+import org.openrdf.repository.sail.SailRepositoryConnection;
+import org.openrdf.repository.sail.SailUpdate;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailException;
 
 public class AuditingRepositoryConnection extends ContextAwareConnection {
 
 	private static final int MAX_SIZE = 1024;
 	private static final String RECENT_ACTIVITY = "http://www.openrdf.org/rdf/2012/auditing#RecentActivity";
+	private static final String OBSOLETE_ACTIVITY = "http://www.openrdf.org/rdf/2012/auditing#ObsoleteActivity";
 	private static final String USED = "http://www.w3.org/ns/prov#used";
 	private static final String WAS_GENERATED_BY = "http://www.w3.org/ns/prov#wasGeneratedBy";
 	private static final String WAS_INFORMED_BY = "http://www.w3.org/ns/prov#wasInformedBy";
@@ -99,6 +116,22 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 			+ "FILTER ( !sameTerm($activity,?entity) )\n\t\t"
 			+ "OPTIONAL { ?entity prov:wasGeneratedBy ?generatedBy }\n\t"
 			+ "}\n" + "}";
+	/**
+	 * Unflags the graphs that $activity may have removed statements from, so
+	 * they are checked again when it is trimmed.
+	 */
+	private static final String RESET_CONTRIBUTING = "PREFIX prov:<http://www.w3.org/ns/prov#>\n"
+			+ "PREFIX audit:<http://www.openrdf.org/rdf/2012/auditing#>\n"
+			+ "DELETE {\n\t"
+			+ "GRAPH ?graph { ?graph a audit:ContributingActivity }\n"
+			+ "} WHERE {\n\t"
+			+ "{\n\t\t"
+			+ "$activity prov:wasInformedBy ?graph\n\t"
+			+ "} UNION {\n\t\t"
+			+ "$activity prov:used ?entity . ?graph prov:used ?entity\n\t"
+			+ "}\n\t"
+			+ "?graph a audit:ContributingActivity\n"
+			+ "}";
 	private static final String BALANCE_ACTIVITY = UPDATE_ACTIVITY.substring(0,
 			UPDATE_ACTIVITY.length() - 2)
 			+ "\n\t"
@@ -109,13 +142,24 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 			+ ")\n" + "}";
 
 	private final AuditingRepository repository;
-	private final Map<URI, Set<URI>> modifiedGraphs = new HashMap<URI, Set<URI>>();
-	private final Map<URI, Map<URI, Boolean>> modifiedEntities = new HashMap<URI, Map<URI, Boolean>>();
+	private final ActivitySummary modifiedGraphs;
+	private final ActivitySummary modifiedEntities;
 	private final URI provUsed;
 	private final URI provWasGeneratedBy;
 	private final URI provWasInformedBy;
+	private final URI obsoleteActivity;
 	private Set<URI> uncommittedActivityGraphs = new LinkedHashSet<URI>();
+	/** activity graphs that have removed statements in this transaction */
+	private final Set<URI> removingActivityGraphs = new HashSet<URI>();
 	private ActivityFactory activityFactory;
+	/** add and remove operations requested in this transaction */
+	private long userStatements;
+	/** provenance statements written in this transaction */
+	private long auditStatements;
+	/** statements removed from every graph, not yet sent to the sail */
+	private final List<Statement> pendingRemoves = new ArrayList<Statement>();
+	/** activity graph of the pending removals */
+	private URI pendingActivity;
 
 	public AuditingRepositoryConnection(AuditingRepository repository,
 			RepositoryConnection connection) throws RepositoryException {
@@ -124,6 +168,9 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 		provUsed = connection.getValueFactory().createURI(USED);
 		provWasGeneratedBy = connection.getValueFactory().createURI(WAS_GENERATED_BY);
 		provWasInformedBy = connection.getValueFactory().createURI(WAS_INFORMED_BY);
+		obsoleteActivity = connection.getValueFactory().createURI(OBSOLETE_ACTIVITY);
+		modifiedGraphs = new ActivitySummary(connection.getValueFactory());
+		modifiedEntities = new ActivitySummary(connection.getValueFactory());
 	}
 
 	public ActivityFactory getActivityFactory() {
@@ -151,19 +198,36 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 
 	@Override
 	public void commit() throws RepositoryException {
+		long auditStart = System.nanoTime();
+		long user, audit;
+		synchronized (this) {
+			user = userStatements;
+			audit = auditStatements;
+		}
+		flushRemoves();
 		Set<URI> recentActivities = finalizeActivityGraphs();
+		long storeStart = System.nanoTime();
 		super.commit();
+		long closeStart = System.nanoTime();
 		closeActivityGraphs(recentActivities);
+		if (!recentActivities.isEmpty()) {
+			AuditingRepositoryMonitor monitor = getRepository().getMonitor();
+			monitor.committed(recentActivities.size(), user, audit
+					+ recentActivities.size(), auditStart, storeStart,
+					closeStart);
+		}
 	}
 
 	@Override
 	public void rollback() throws RepositoryException {
+		discardRemoves();
 		super.rollback();
 		reset();
 	}
 
 	@Override
 	public void close() throws RepositoryException {
+		discardRemoves();
 		super.close();
 		getRepository().cleanup();
 	}
@@ -181,23 +245,24 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 	}
 
 	@Override
-	public Update prepareUpdate(final QueryLanguage ql, final String update, final String baseURI)
+	public Update prepareUpdate(QueryLanguage ql, String update, String baseURI)
 			throws MalformedQueryException, RepositoryException {
-		final Update prepared = super.prepareUpdate(ql, update, baseURI);
+		if (baseURI == null) {
+			baseURI = getBaseURI();
+		}
+		final UpdateAnalysis analysis = analyse(ql, update, baseURI);
+		final Update prepared = prepareDelegateUpdate(ql, update, baseURI, analysis);
 		if (prepared == null)
 			return prepared;
 		return new Update(){
 			public void execute() throws UpdateExecutionException {
 				try {
+					flushRemoves();
 					BindingSet bindings = prepared.getBindings();
 					Dataset dataset = prepared.getDataset();
-					if (dataset != null) {
-						activity(ql, update, baseURI, bindings, dataset);
+					if (dataset != null && analysis != null) {
+						activity(analysis, bindings, dataset);
 					}
-				} catch (MalformedQueryException e) {
-					// ignore
-				} catch (QueryEvaluationException e) {
-					// ignore
 				} catch (RepositoryException e) {
 					throw new UpdateExecutionException(e);
 				}
@@ -238,6 +303,107 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 		};
 	}
 
+	@Override
+	public Query prepareQuery(QueryLanguage ql, String query, String baseURI)
+			throws MalformedQueryException, RepositoryException {
+		Query prepared = super.prepareQuery(ql, query, baseURI);
+		if (prepared instanceof TupleQuery)
+			return flushing((TupleQuery) prepared, TupleQuery.class);
+		if (prepared instanceof GraphQuery)
+			return flushing((GraphQuery) prepared, GraphQuery.class);
+		if (prepared instanceof BooleanQuery)
+			return flushing((BooleanQuery) prepared, BooleanQuery.class);
+		return prepared;
+	}
+
+	@Override
+	public TupleQuery prepareTupleQuery(QueryLanguage ql, String query,
+			String baseURI) throws MalformedQueryException,
+			RepositoryException {
+		TupleQuery prepared = super.prepareTupleQuery(ql, query, baseURI);
+		return flushing(prepared, TupleQuery.class);
+	}
+
+	@Override
+	public GraphQuery prepareGraphQuery(QueryLanguage ql, String query,
+			String baseURI) throws MalformedQueryException,
+			RepositoryException {
+		GraphQuery prepared = super.prepareGraphQuery(ql, query, baseURI);
+		return flushing(prepared, GraphQuery.class);
+	}
+
+	@Override
+	public BooleanQuery prepareBooleanQuery(QueryLanguage ql, String query,
+			String baseURI) throws MalformedQueryException,
+			RepositoryException {
+		BooleanQuery prepared = super.prepareBooleanQuery(ql, query, baseURI);
+		return flushing(prepared, BooleanQuery.class);
+	}
+
+	@Override
+	public RepositoryResult<Statement> getStatements(Resource subj, URI pred,
+			Value obj, boolean includeInferred, Resource... contexts)
+			throws RepositoryException {
+		flushRemoves();
+		return super.getStatements(subj, pred, obj, includeInferred, contexts);
+	}
+
+	@Override
+	public boolean hasStatement(Resource subj, URI pred, Value obj,
+			boolean includeInferred, Resource... contexts)
+			throws RepositoryException {
+		flushRemoves();
+		return super.hasStatement(subj, pred, obj, includeInferred, contexts);
+	}
+
+	@Override
+	public boolean hasStatement(Statement st, boolean includeInferred,
+			Resource... contexts) throws RepositoryException {
+		flushRemoves();
+		return super.hasStatement(st, includeInferred, contexts);
+	}
+
+	@Override
+	public void exportStatements(Resource subj, URI pred, Value obj,
+			boolean includeInferred, RDFHandler handler, Resource... contexts)
+			throws RepositoryException, RDFHandlerException {
+		flushRemoves();
+		super.exportStatements(subj, pred, obj, includeInferred, handler,
+				contexts);
+	}
+
+	@Override
+	public void export(RDFHandler handler, Resource... contexts)
+			throws RepositoryException, RDFHandlerException {
+		flushRemoves();
+		super.export(handler, contexts);
+	}
+
+	@Override
+	public RepositoryResult<Resource> getContextIDs()
+			throws RepositoryException {
+		flushRemoves();
+		return super.getContextIDs();
+	}
+
+	@Override
+	public long size(Resource... contexts) throws RepositoryException {
+		flushRemoves();
+		return super.size(contexts);
+	}
+
+	@Override
+	public boolean isEmpty() throws RepositoryException {
+		flushRemoves();
+		return super.isEmpty();
+	}
+
+	@Override
+	public void clear(Resource... contexts) throws RepositoryException {
+		flushRemoves();
+		super.clear(contexts);
+	}
+
 	@Override
 	protected boolean isDelegatingAdd() throws RepositoryException {
 		return getInsertContext() == null;
@@ -246,6 +412,8 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 	@Override
 	protected void addWithoutCommit(Resource subject, URI predicate,
 			Value object, Resource... contexts) throws RepositoryException {
+		flushRemoves();
+		countUserStatement();
 		activity(getInsertContext(), true, subject, contexts);
 		getDelegate().add(subject, predicate, object, contexts);
 	}
@@ -255,25 +423,214 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 		return getInsertContext() == null;
 	}
 
+	/**
+	 * Statements without a graph that are removed from every graph are
+	 * removed in batches, directly from the underlying sail when possible.
+	 */
+	@Override
+	public <E extends Exception> void remove(
+			Iteration<? extends Statement, E> statements, Resource... contexts)
+			throws RepositoryException, E {
+		if (!isRemovingFromAllGraphs(contexts)) {
+			super.remove(statements, contexts);
+			return;
+		}
+		boolean autoCommit = isAutoCommit();
+		setAutoCommit(false);
+		boolean completed = false;
+		try {
+			while (statements.hasNext()) {
+				Statement st = statements.next();
+				if (st.getContext() == null) {
+					removeWithoutCommit(st.getSubject(), st.getPredicate(), st
+							.getObject());
+				} else {
+					removeWithoutCommit(st.getSubject(), st.getPredicate(), st
+							.getObject(), st.getContext());
+				}
+			}
+			completed = true;
+		} finally {
+			if (autoCommit && !completed) {
+				rollback();
+			}
+			setAutoCommit(autoCommit);
+		}
+	}
+
 	@Override
 	protected void removeWithoutCommit(Resource subject, URI predicate,
 			Value object, Resource... contexts) throws RepositoryException {
+		countUserStatement();
 		Resource[] defRemove = getReadContexts();
 		URI activityGraph = getInsertContext();
 		if (contexts == null || contexts.length > 0) {
+			flushRemoves();
 			activity(activityGraph, false, subject, contexts);
 			getDelegate().remove(subject, predicate, object, contexts);
 		} else if (defRemove == null || defRemove.length > 0) {
+			flushRemoves();
 			activity(activityGraph, false, subject, defRemove);
 			getDelegate().remove(subject, predicate, object, defRemove);
+		} else if (subject != null && predicate != null && object != null
+				&& getSailConnection() != null) {
+			activity(activityGraph, false, subject);
+			removeLater(getValueFactory().createStatement(subject, predicate,
+					object), activityGraph);
 		} else {
+			flushRemoves();
 			activity(activityGraph, false, subject);
 			executeDelete(subject, predicate, object);
 		}
 	}
 
+	/**
+	 * Queues a statement to be removed from every graph in a single DELETE
+	 * DATA operation with the others, before anything else is read or written.
+	 */
+	private synchronized void removeLater(Statement st, URI activityGraph)
+			throws RepositoryException {
+		if (pendingActivity != null && !pendingActivity.equals(activityGraph)) {
+			flushRemoves();
+		}
+		pendingActivity = activityGraph;
+		pendingRemoves.add(st);
+		if (pendingRemoves.size() >= MAX_SIZE) {
+			flushRemoves();
+		}
+	}
+
+	private synchronized void flushRemoves() throws RepositoryException {
+		if (pendingRemoves.isEmpty())
+			return;
+		List<Statement> batch = new ArrayList<Statement>(pendingRemoves);
+		pendingRemoves.clear();
+		executeUpdate(getSailConnection(), deleteData(batch), pendingActivity);
+	}
+
+	private synchronized void discardRemoves() {
+		pendingRemoves.clear();
+		pendingActivity = null;
+	}
+
+	/**
+	 * Sends the pending removals to the sail before the query is evaluated.
+	 */
+	private <Q extends Query> Q flushing(final Q query, Class<Q> type) {
+		ClassLoader cl = type.getClassLoader();
+		Class<?>[] types = new Class<?>[] { type };
+		return type.cast(Proxy.newProxyInstance(cl, types,
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						if (method.getName().equals("evaluate")) {
+							try {
+								flushRemoves();
+							} catch (RepositoryException e) {
+								throw new QueryEvaluationException(e);
+							}
+						}
+						try {
+							return method.invoke(query, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				}));
+	}
+
+	private synchronized void countUserStatement() {
+		userStatements++;
+	}
+
+	private boolean isRemovingFromAllGraphs(Resource... contexts)
+			throws RepositoryException {
+		if (contexts == null || contexts.length > 0 || isDelegatingRemove())
+			return false;
+		URI[] defRemove = getRemoveContexts();
+		if (defRemove == null || defRemove.length > 0)
+			return false;
+		URI[] defRead = getReadContexts();
+		return defRead != null && defRead.length == 0;
+	}
+
+	private SailConnection getSailConnection() throws RepositoryException {
+		RepositoryConnection delegate = getDelegate();
+		if (delegate instanceof SailRepositoryConnection)
+			return ((SailRepositoryConnection) delegate).getSailConnection();
+		return null;
+	}
+
+	private void executeUpdate(SailConnection sail, UpdateExpr expr,
+			URI activityGraph) throws RepositoryException {
+		DatasetImpl dataset = new DatasetImpl();
+		dataset.setDefaultInsertGraph(activityGraph);
+		try {
+			sail.executeUpdate(expr, dataset, EmptyBindingSet.getInstance(),
+					isIncludeInferred());
+		} catch (SailException e) {
+			throw new RepositoryException(e);
+		}
+	}
+
+	/**
+	 * The algebra of a DELETE DATA operation of these statements.
+	 */
+	private DeleteData deleteData(List<Statement> statements) {
+		MultiProjection projection = new MultiProjection();
+		Extension extension = new Extension(new SingletonSet());
+		int i = 0;
+		for (Statement st : statements) {
+			ProjectionElemList list = new ProjectionElemList();
+			list.addElement(constant(++i, st.getSubject(), "subject", extension));
+			list.addElement(constant(++i, st.getPredicate(), "predicate", extension));
+			list.addElement(constant(++i, st.getObject(), "object", extension));
+			projection.addProjection(list);
+		}
+		projection.setArg(extension);
+		return new DeleteData(new Reduced(projection));
+	}
+
+	private ProjectionElem constant(int i, Value value, String target,
+			Extension extension) {
+		String name = "-const-" + i;
+		extension.addElement(new ExtensionElem(new ValueConstant(value), name));
+		return new ProjectionElem(name, target);
+	}
+
+	/**
+	 * The algebra of a DELETE WHERE operation of this pattern.
+	 */
+	private Modify deleteWhere(Resource subject, URI predicate, Value object) {
+		StatementPattern pattern = new StatementPattern(var("subject", subject),
+				var("predicate", predicate), var("object", object));
+		return new Modify(pattern, null, pattern.clone());
+	}
+
+	private Var var(String name, Value value) {
+		if (value == null)
+			return new Var(name);
+		Var var = new Var("-const-" + name, value);
+		var.setAnonymous(true);
+		return var;
+	}
+
 	private void executeDelete(Resource subject, URI predicate, Value object)
 			throws RepositoryException {
+		SailConnection sail = getSailConnection();
+		if (sail != null) {
+			UpdateExpr expr;
+			if (subject != null && predicate != null && object != null) {
+				List<Statement> list = new ArrayList<Statement>(1);
+				list.add(getValueFactory().createStatement(subject, predicate,
+						object));
+				expr = deleteData(list);
+			} else {
+				expr = deleteWhere(subject, predicate, object);
+			}
+			executeUpdate(sail, expr, getInsertContext());
+			return;
+		}
 		StringBuilder sb = new StringBuilder();
 		if (subject instanceof URI && predicate instanceof URI
 				&& (object instanceof URI || object instanceof Literal)) {
@@ -351,80 +708,85 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 		return label;
 	}
 
-	private void activity(QueryLanguage ql, String update, String baseURI,
-			BindingSet bindings, Dataset dataset)
-			throws MalformedQueryException, RepositoryException,
-			QueryEvaluationException {
-		QueryParser parser = QueryParserUtil.createParser(ql);
-		ParsedUpdate parsed = parser.parseUpdate(update, baseURI);
-		for (UpdateExpr expr : parsed.getUpdateExprs()) {
-			if (expr instanceof Modify) {
-				QueryModelNode deleteExpr = ((Modify) expr).getDeleteExpr();
-				QueryModelNode insertExpr = ((Modify) expr).getInsertExpr();
-				if (deleteExpr != null) {
-					deleteActivity(deleteExpr, bindings, dataset);
-				}
-				if (insertExpr != null) {
-					insertActivity(insertExpr, bindings, dataset);
-				}
-			} else if (isDeleteOperation(expr)) {
-				deleteActivity(expr, bindings, dataset);
-			} else if (isInsertOperation(expr)) {
-				insertActivity(expr, bindings, dataset);
-			}
+	/**
+	 * The shared analysis of this update or <code>null</code> if it cannot be
+	 * parsed here.
+	 */
+	private UpdateAnalysis analyse(QueryLanguage ql, String update,
+			String baseURI) {
+		try {
+			return getRepository().getUpdateAnalysis(ql, update, baseURI);
+		} catch (MalformedQueryException e) {
+			return null;
+		} catch (UnsupportedQueryLanguageException e) {
+			return null;
+		} catch (QueryEvaluationException e) {
+			return null;
 		}
 	}
 
-	private void insertActivity(QueryModelNode insertExpr, BindingSet bindings,
-			Dataset dataset) throws QueryEvaluationException,
-			RepositoryException {
-		URI activityGraph = dataset.getDefaultInsertGraph();
-		for (URI entity : findEntity(insertExpr, bindings)) {
-			activity(activityGraph, true, entity);
+	/**
+	 * Reuses the parsed update when the delegate is a sail, otherwise lets
+	 * the delegate parse it.
+	 */
+	private Update prepareDelegateUpdate(QueryLanguage ql, String update,
+			String baseURI, UpdateAnalysis analysis)
+			throws MalformedQueryException, RepositoryException {
+		RepositoryConnection delegate = getDelegate();
+		if (analysis == null || !(delegate instanceof SailRepositoryConnection))
+			return super.prepareUpdate(ql, update, baseURI);
+		SailRepositoryConnection con = (SailRepositoryConnection) delegate;
+		Update prepared = new SailUpdate(analysis.getParsedUpdate(), con) {
+		};
+		// same dataset as ContextAwareConnection would use
+		URI[] read = getReadContexts();
+		URI[] remove = getRemoveContexts();
+		URI insert = getInsertContext();
+		if (read.length > 0 || remove.length > 0 || insert != null) {
+			DatasetImpl ds = new DatasetImpl();
+			for (URI graph : read) {
+				ds.addDefaultGraph(graph);
+			}
+			for (URI graph : remove) {
+				ds.addDefaultRemoveGraph(graph);
+			}
+			ds.setDefaultInsertGraph(insert);
+			prepared.setDataset(ds);
 		}
-		activity(activityGraph, true, null, findGraphs(insertExpr, bindings, dataset));
+		prepared.setIncludeInferred(isIncludeInferred());
+		return prepared;
 	}
 
-	private void deleteActivity(QueryModelNode deleteExpr, BindingSet bindings,
-			Dataset dataset) throws QueryEvaluationException,
-			RepositoryException {
+	private void activity(UpdateAnalysis analysis, BindingSet bindings,
+			Dataset dataset) throws RepositoryException {
 		URI activityGraph = dataset.getDefaultInsertGraph();
-		for (URI entity : findEntity(deleteExpr, bindings)) {
-			activity(activityGraph, false, entity);
+		for (UpdateAnalysis.Change change : analysis.getChanges()) {
+			boolean inserted = change.isInserted();
+			for (URI entity : findEntity(change.getSubjects(), bindings)) {
+				activity(activityGraph, inserted, entity);
+			}
+			activity(activityGraph, inserted, null,
+					findGraphs(change.getContexts(), bindings, dataset));
 		}
-		activity(activityGraph, false, null, findGraphs(deleteExpr, bindings, dataset));
 	}
 
-	private boolean isInsertOperation(UpdateExpr expr) {
-		return expr instanceof Add || expr instanceof Copy
-				|| expr instanceof Create || expr instanceof InsertData
-				|| expr instanceof Load || expr instanceof Move;
-	}
-
-	private boolean isDeleteOperation(UpdateExpr expr) {
-		return expr instanceof Clear || expr instanceof DeleteData;
-	}
-
-	private Set<URI> findEntity(QueryModelNode expr, final BindingSet bindings) throws QueryEvaluationException {
-		final Set<URI> entities = new HashSet<URI>();
-		expr.visit(new BasicGraphPatternVisitor() {
-			public void meet(StatementPattern node) {
-				Var var = node.getSubjectVar();
-				Value subj = var.getValue();
-				if (subj == null) {
-					subj = bindings.getValue(var.getName());
-				}
-				if (subj instanceof URI) {
-					entities.add(entity((URI) subj));
-				}
+	private Set<URI> findEntity(List<Var> subjects, BindingSet bindings) {
+		Set<URI> entities = new HashSet<URI>();
+		for (Var var : subjects) {
+			Value subj = var.getValue();
+			if (subj == null) {
+				subj = bindings.getValue(var.getName());
 			}
-		});
+			if (subj instanceof URI) {
+				entities.add(entity((URI) subj));
+			}
+		}
 		return entities;
 	}
 
-	private URI[] findGraphs(QueryModelNode expr, final BindingSet bindings,
-			Dataset dataset) throws QueryEvaluationException {
-		final Set<URI> graphs = new LinkedHashSet<URI>();
+	private URI[] findGraphs(List<Var> contexts, BindingSet bindings,
+			Dataset dataset) {
+		Set<URI> graphs = new LinkedHashSet<URI>();
 		if (dataset != null) {
 			if (dataset.getDefaultInsertGraph() != null) {
 				graphs.add(dataset.getDefaultInsertGraph());
@@ -433,20 +795,15 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 				graphs.addAll(dataset.getDefaultRemoveGraphs());
 			}
 		}
-		expr.visit(new BasicGraphPatternVisitor() {
-			public void meet(StatementPattern node) {
-				Var var = node.getContextVar();
-				if (var != null) {
-					Value ctx = var.getValue();
-					if (ctx == null) {
-						ctx = bindings.getValue(var.getName());
-					}
-					if (ctx instanceof URI) {
-						graphs.add((URI) ctx);
-					}
-				}
+		for (Var var : contexts) {
+			Value ctx = var.getValue();
+			if (ctx == null) {
+				ctx = bindings.getValue(var.getName());
+			}
+			if (ctx instanceof URI) {
+				graphs.add((URI) ctx);
 			}
-		});
+		}
 		return graphs.toArray(new URI[graphs.size()]);
 	}
 
@@ -469,45 +826,46 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 				activityFactory.activityStarted(activityGraph, con);
 			}
 		}
+		if (!inserted) {
+			removingActivityGraphs.add(activityGraph);
+		}
 		if (subject instanceof URI && !isActivityEntity(activityGraph, subject)) {
-			Map<URI, Boolean> entities = modifiedEntities.get(activityGraph);
-			if (entities == null) {
-				modifiedEntities.put(activityGraph, entities = new HashMap<URI, Boolean>());
-			}
 			URI entity = entity((URI) subject);
-			Boolean wasInserted = entities.get(entity);
-			if (entities.size() >= MAX_SIZE) {
-				entities.clear();
-			}
+			Boolean wasInserted = modifiedEntities.get(activityGraph, entity);
 			if (inserted && wasInserted != Boolean.TRUE) {
-				entities.put(entity, Boolean.TRUE);
+				modifiedEntities.put(activityGraph, entity, Boolean.TRUE);
 				con.remove(entity, provWasGeneratedBy, null);
 				con.add(entity, provWasGeneratedBy, activityGraph, activityGraph);
+				auditStatements++;
 				if (wasInserted == null) {
 					con.add(activityGraph, provUsed, entity, activityGraph);
+					auditStatements++;
 				}
 			} else if (wasInserted == null) {
-				entities.put(entity, inserted ? Boolean.TRUE : Boolean.FALSE);
+				modifiedEntities.put(activityGraph, entity, inserted ? Boolean.TRUE : Boolean.FALSE);
 				con.add(activityGraph, provUsed, entity, activityGraph);
+				auditStatements++;
 			}
 		}
 		if (contexts == null || contexts.length == 0)
 			return;
 		if (contexts.length == 1 && activityGraph.equals(contexts[0]))
 			return;
-		Set<URI> graphs = modifiedGraphs.get(activityGraph);
-		if (graphs == null) {
-			modifiedGraphs.put(activityGraph, graphs = new HashSet<URI>());
-		}
 		for (Resource ctx : contexts) {
-			if (ctx instanceof URI && !isActivityEntity(activityGraph, ctx)) {
-				if (graphs.add((URI) ctx)) {
-					con.add(activityGraph, provWasInformedBy, (URI) ctx, activityGraph);
-				}
-				if (graphs.size() >= MAX_SIZE) {
-					graphs.clear();
-					graphs.add((URI) ctx);
-				}
+			if (!(ctx instanceof URI) || isActivityEntity(activityGraph, ctx))
+				continue;
+			URI graph = (URI) ctx;
+			Boolean wasInserted = modifiedGraphs.get(activityGraph, graph);
+			if (wasInserted == null) {
+				con.add(activityGraph, provWasInformedBy, graph, activityGraph);
+				auditStatements++;
+			}
+			if (inserted && wasInserted != Boolean.TRUE) {
+				modifiedGraphs.put(activityGraph, graph, Boolean.TRUE);
+				// an obsolete graph contributes again once inserted into
+				con.remove(graph, RDF.TYPE, obsoleteActivity, graph);
+			} else if (wasInserted == null) {
+				modifiedGraphs.put(activityGraph, graph, Boolean.FALSE);
 			}
 		}
 	}
@@ -533,16 +891,28 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 			if (getRepository().isTransactional()) {
 				finalizeActivityGraph(activityGraph);
 			}
+			if (removingActivityGraphs.contains(activityGraph)) {
+				resetContributing(activityGraph);
+			}
+		}
+		removingActivityGraphs.clear();
+		if (modifiedGraphs.isOverflowed() || modifiedEntities.isOverflowed()) {
+			getRepository().getMonitor().summarySpilled();
 		}
 		modifiedGraphs.clear();
 		modifiedEntities.clear();
+		userStatements = 0;
+		auditStatements = 0;
 		return recentActivities;
 	}
 
 	private synchronized void reset() {
 		uncommittedActivityGraphs = new LinkedHashSet<URI>(uncommittedActivityGraphs.size());
+		removingActivityGraphs.clear();
 		modifiedGraphs.clear();
 		modifiedEntities.clear();
+		userStatements = 0;
+		auditStatements = 0;
 	}
 
 	private void addMetadata(URI activityGraph) throws RepositoryException {
@@ -564,6 +934,20 @@ public class AuditingRepositoryConnection extends ContextAwareConnection {
 		}
 	}
 
+	private void resetContributing(URI activityGraph)
+			throws RepositoryException {
+		try {
+			Update update = getDelegate().prepareUpdate(SPARQL, RESET_CONTRIBUTING);
+			update.setBinding("activity", activityGraph);
+			update.setDataset(new DatasetImpl());
+			update.execute();
+		} catch (UpdateExecutionException e) {
+			throw new RepositoryException(e);
+		} catch (MalformedQueryException e) {
+			throw new RepositoryException(e);
+		}
+	}
+
 	private void closeActivityGraphs(Set<URI> recentActivities)
 			throws RepositoryException {
 		getRepository().addRecentActivities(recentActivities);
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.repository.auditing;
+
+/**
+ * Management interface of an {@link AuditingRepository} that is registered
+ * with the platform MBeanServer when the repository is initialized.
+ * 
+ * @author James Leigh
+ * 
+ */
+public interface AuditingRepositoryMXBean {
+
+	/**
+	 * Number of transactions committed with at least one activity graph.
+	 */
+	long getCommitCount();
+
+	/**
+	 * Number of activity graphs that have been committed.
+	 */
+	long getActivityCount();
+
+	/**
+	 * Number of add and remove operations requested by users within an
+	 * activity.
+	 */
+	long getUserStatementCount();
+
+	/**
+	 * Number of provenance statements written about modified entities and
+	 * graphs, not including the statements of the finalising updates.
+	 */
+	long getAuditStatementCount();
+
+	/**
+	 * Ratio of audit statements to user statements, or zero if no user
+	 * statement has been recorded.
+	 */
+	double getAuditOverhead();
+
+	/**
+	 * Total milliseconds spent finalising activity graphs before the
+	 * underlying repository commits.
+	 */
+	long getAuditCommitTime();
+
+	/**
+	 * Total milliseconds the underlying repository spent committing.
+	 */
+	long getStoreCommitTime();
+
+	/**
+	 * Total milliseconds spent balancing and closing activity graphs after
+	 * the underlying repository committed.
+	 */
+	long getCloseActivityTime();
+
+	/**
+	 * Number of transactions whose modified entities or graphs were moved to
+	 * a temporary store on disk.
+	 */
+	long getSummarySpillCount();
+
+	/**
+	 * Number of recent activity markers that have been trimmed.
+	 */
+	long getTrimmedActivities();
+
+	/**
+	 * Total milliseconds spent trimming recent activity markers.
+	 */
+	long getTrimTime();
+
+	/**
+	 * Number of times obsolete activity graphs have been purged.
+	 */
+	long getPurgeCount();
+
+	/**
+	 * Total milliseconds spent purging obsolete activity graphs.
+	 */
+	long getPurgeTime();
+
+	/**
+	 * Resets all counters to zero.
+	 */
+	void resetCounters();
+}
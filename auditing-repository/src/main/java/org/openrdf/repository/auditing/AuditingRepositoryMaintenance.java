@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.repository.auditing;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrdf.repository.RepositoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Trims recent activities and purges obsolete activity graphs on a background
+ * thread, so committing connections only request it. Requests made while
+ * maintenance is running are combined into a single run that follows it.
+ * 
+ * @author James Leigh
+ * 
+ */
+class AuditingRepositoryMaintenance {
+	private final Logger logger = LoggerFactory
+			.getLogger(AuditingRepositoryMaintenance.class);
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final AtomicBoolean requested = new AtomicBoolean();
+	private final AtomicLong skipped = new AtomicLong();
+	private final AuditingRepository repository;
+	private volatile long period;
+	private ScheduledExecutorService executor;
+
+	public AuditingRepositoryMaintenance(AuditingRepository repository) {
+		this.repository = repository;
+	}
+
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Milliseconds between maintenance checks that are not requested by a
+	 * commit, zero to only run after commits. Takes effect when started.
+	 */
+	public void setPeriod(long period) {
+		this.period = Math.max(0, period);
+	}
+
+	/**
+	 * Number of requests combined with a run that was already scheduled.
+	 */
+	public long getSkippedRequests() {
+		return skipped.get();
+	}
+
+	public synchronized void start() {
+		if (executor == null) {
+			executor = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r,
+									"Auditing Repository Maintenance "
+											+ repository);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			if (period > 0) {
+				executor.scheduleWithFixedDelay(new Runnable() {
+					public void run() {
+						request();
+					}
+				}, period, period, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Waits for any maintenance in progress to complete and stops checking.
+	 */
+	public void stop() throws RepositoryException {
+		ScheduledExecutorService shutdown;
+		synchronized (this) {
+			shutdown = executor;
+			executor = null;
+		}
+		if (shutdown != null) {
+			shutdown.shutdown();
+			try {
+				while (!shutdown.awaitTermination(10, TimeUnit.SECONDS)) {
+					logger.warn("Waiting for auditing maintenance of {}",
+							repository);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RepositoryException(e);
+			}
+		}
+	}
+
+	/**
+	 * Waits for the maintenance requested before this call to complete.
+	 * 
+	 * @return <code>false</code> if the timeout elapsed first
+	 */
+	public boolean await(long timeout, TimeUnit unit)
+			throws RepositoryException {
+		Future<?> future;
+		synchronized (this) {
+			if (executor == null)
+				return true;
+			future = executor.submit(new Runnable() {
+				public void run() {
+					// all previously submitted tasks have completed
+				}
+			});
+		}
+		try {
+			future.get(timeout, unit);
+			return true;
+		} catch (TimeoutException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RepositoryException(e);
+		} catch (ExecutionException e) {
+			throw new RepositoryException(e.getCause());
+		}
+	}
+
+	/**
+	 * Schedules a maintenance run, unless one is already waiting to run.
+	 */
+	public void request() {
+		requested.set(true);
+		if (scheduled.compareAndSet(false, true)) {
+			boolean submitted = submit(new Runnable() {
+				public void run() {
+					try {
+						do {
+							try {
+								requested.set(false);
+								repository.maintain();
+							} finally {
+								scheduled.set(false);
+							}
+						} while (requested.get()
+								&& scheduled.compareAndSet(false, true));
+					} catch (RuntimeException e) {
+						logger.error(e.toString(), e);
+					}
+				}
+			});
+			if (!submitted) {
+				scheduled.set(false);
+			}
+		} else {
+			skipped.incrementAndGet();
+		}
+	}
+
+	private synchronized boolean submit(Runnable task) {
+		if (executor == null)
+			return false;
+		executor.execute(task);
+		return true;
+	}
+}
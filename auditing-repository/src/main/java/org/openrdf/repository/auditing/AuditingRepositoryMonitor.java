@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.repository.auditing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the cost of recording the activities of an
+ * {@link AuditingRepository}.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class AuditingRepositoryMonitor implements AuditingRepositoryMXBean {
+	private final AtomicLong commits = new AtomicLong();
+	private final AtomicLong activities = new AtomicLong();
+	private final AtomicLong userStatements = new AtomicLong();
+	private final AtomicLong auditStatements = new AtomicLong();
+	private final AtomicLong auditCommit = new AtomicLong();
+	private final AtomicLong storeCommit = new AtomicLong();
+	private final AtomicLong closeActivity = new AtomicLong();
+	private final AtomicLong summarySpills = new AtomicLong();
+	private final AtomicLong trimmed = new AtomicLong();
+	private final AtomicLong trim = new AtomicLong();
+	private final AtomicLong purges = new AtomicLong();
+	private final AtomicLong purge = new AtomicLong();
+
+	public long getCommitCount() {
+		return commits.get();
+	}
+
+	public long getActivityCount() {
+		return activities.get();
+	}
+
+	public long getUserStatementCount() {
+		return userStatements.get();
+	}
+
+	public long getAuditStatementCount() {
+		return auditStatements.get();
+	}
+
+	public double getAuditOverhead() {
+		long user = userStatements.get();
+		if (user == 0)
+			return 0;
+		return (double) auditStatements.get() / user;
+	}
+
+	public long getAuditCommitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(auditCommit.get());
+	}
+
+	public long getStoreCommitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(storeCommit.get());
+	}
+
+	public long getCloseActivityTime() {
+		return TimeUnit.NANOSECONDS.toMillis(closeActivity.get());
+	}
+
+	public long getSummarySpillCount() {
+		return summarySpills.get();
+	}
+
+	public long getTrimmedActivities() {
+		return trimmed.get();
+	}
+
+	public long getTrimTime() {
+		return TimeUnit.NANOSECONDS.toMillis(trim.get());
+	}
+
+	public long getPurgeCount() {
+		return purges.get();
+	}
+
+	public long getPurgeTime() {
+		return TimeUnit.NANOSECONDS.toMillis(purge.get());
+	}
+
+	public void resetCounters() {
+		commits.set(0);
+		activities.set(0);
+		userStatements.set(0);
+		auditStatements.set(0);
+		auditCommit.set(0);
+		storeCommit.set(0);
+		closeActivity.set(0);
+		summarySpills.set(0);
+		trimmed.set(0);
+		trim.set(0);
+		purges.set(0);
+		purge.set(0);
+	}
+
+	/**
+	 * Records a committed transaction. The activity graphs were finalised
+	 * from the first {@link System#nanoTime()}, the underlying repository
+	 * committed from the second and the activities were closed from the
+	 * third until now.
+	 */
+	public void committed(int activityCount, long user, long audit,
+			long auditStart, long storeStart, long closeStart) {
+		long end = System.nanoTime();
+		commits.incrementAndGet();
+		activities.addAndGet(activityCount);
+		userStatements.addAndGet(user);
+		auditStatements.addAndGet(audit);
+		auditCommit.addAndGet(storeStart - auditStart);
+		storeCommit.addAndGet(closeStart - storeStart);
+		closeActivity.addAndGet(end - closeStart);
+	}
+
+	public void summarySpilled() {
+		summarySpills.incrementAndGet();
+	}
+
+	/**
+	 * Records the trimming of recent activity markers since the given
+	 * {@link System#nanoTime()}.
+	 */
+	public void trimmed(int count, long start) {
+		trimmed.addAndGet(count);
+		trim.addAndGet(System.nanoTime() - start);
+	}
+
+	/**
+	 * Records a purge of obsolete activity graphs since the given
+	 * {@link System#nanoTime()}.
+	 */
+	public void purged(long start) {
+		purges.incrementAndGet();
+		purge.addAndGet(System.nanoTime() - start);
+	}
+}
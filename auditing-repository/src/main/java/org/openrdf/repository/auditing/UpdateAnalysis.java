@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.repository.auditing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.openrdf.query.Dataset;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.Add;
+import org.openrdf.query.algebra.Clear;
+import org.openrdf.query.algebra.Copy;
+import org.openrdf.query.algebra.Create;
+import org.openrdf.query.algebra.DeleteData;
+import org.openrdf.query.algebra.InsertData;
+import org.openrdf.query.algebra.Load;
+import org.openrdf.query.algebra.Modify;
+import org.openrdf.query.algebra.Move;
+import org.openrdf.query.algebra.QueryModelNode;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.UpdateExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.parser.ParsedUpdate;
+import org.openrdf.repository.auditing.helpers.BasicGraphPatternVisitor;
+
+/**
+ * A parsed update with the subject and graph of every statement pattern it
+ * inserts or deletes, so it can be shared by connections and executed again
+ * without being parsed.
+ * 
+ * @author James Leigh
+ * 
+ */
+class UpdateAnalysis {
+
+	/**
+	 * The statement patterns deleted or inserted by one part of an update.
+	 */
+	static class Change {
+		private final boolean inserted;
+		private final List<Var> subjects = new ArrayList<Var>();
+		private final List<Var> contexts = new ArrayList<Var>();
+
+		Change(boolean inserted, QueryModelNode expr)
+				throws QueryEvaluationException {
+			this.inserted = inserted;
+			expr.visit(new BasicGraphPatternVisitor() {
+				public void meet(StatementPattern node) {
+					subjects.add(node.getSubjectVar());
+					if (node.getContextVar() != null) {
+						contexts.add(node.getContextVar());
+					}
+				}
+			});
+		}
+
+		public boolean isInserted() {
+			return inserted;
+		}
+
+		public List<Var> getSubjects() {
+			return subjects;
+		}
+
+		public List<Var> getContexts() {
+			return contexts;
+		}
+	}
+
+	private final ParsedUpdate parsed;
+	private final List<Change> changes;
+	private final boolean data;
+
+	public UpdateAnalysis(ParsedUpdate parsed) throws QueryEvaluationException {
+		this.parsed = parsed;
+		List<Change> list = new ArrayList<Change>();
+		boolean data = false;
+		for (UpdateExpr expr : parsed.getUpdateExprs()) {
+			if (expr instanceof Modify) {
+				QueryModelNode deleteExpr = ((Modify) expr).getDeleteExpr();
+				QueryModelNode insertExpr = ((Modify) expr).getInsertExpr();
+				if (deleteExpr != null) {
+					list.add(new Change(false, deleteExpr));
+				}
+				if (insertExpr != null) {
+					list.add(new Change(true, insertExpr));
+				}
+			} else if (expr instanceof InsertData
+					|| expr instanceof DeleteData) {
+				data = true;
+				list.add(new Change(expr instanceof InsertData, expr));
+			} else if (isDeleteOperation(expr)) {
+				list.add(new Change(false, expr));
+			} else if (isInsertOperation(expr)) {
+				list.add(new Change(true, expr));
+			}
+		}
+		this.changes = Collections.unmodifiableList(list);
+		this.data = data;
+	}
+
+	/**
+	 * A copy of the parsed update for one execution. The evaluation of an
+	 * update moves its WHERE clause under a new root, so each execution is
+	 * given its own clone of the update expressions.
+	 */
+	public ParsedUpdate getParsedUpdate() {
+		ParsedUpdate copy = new ParsedUpdate(parsed.getNamespaces());
+		Map<UpdateExpr, Dataset> datasets = parsed.getDatasetMapping();
+		for (UpdateExpr expr : parsed.getUpdateExprs()) {
+			UpdateExpr clone = expr.clone();
+			copy.addUpdateExpr(clone);
+			Dataset dataset = datasets.get(expr);
+			if (dataset != null) {
+				copy.map(clone, dataset);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * If this update carries its own statements in INSERT DATA or DELETE
+	 * DATA, which are rarely executed twice and should not be kept.
+	 */
+	public boolean isData() {
+		return data;
+	}
+
+	public List<Change> getChanges() {
+		return changes;
+	}
+
+	private boolean isInsertOperation(UpdateExpr expr) {
+		return expr instanceof Add || expr instanceof Copy
+				|| expr instanceof Create || expr instanceof Load
+				|| expr instanceof Move;
+	}
+
+	private boolean isDeleteOperation(UpdateExpr expr) {
+		return expr instanceof Clear;
+	}
+}
@@ -29,10 +29,12 @@
 package org.openrdf.repository.auditing.config;
 
 import static org.openrdf.repository.auditing.config.AuditingSchema.ACTIVITY_NAMESPACE;
+import static org.openrdf.repository.auditing.config.AuditingSchema.MAINTENANCE_PERIOD;
 import static org.openrdf.repository.auditing.config.AuditingSchema.MAX_RECENT;
 import static org.openrdf.repository.auditing.config.AuditingSchema.MIN_RECENT;
 import static org.openrdf.repository.auditing.config.AuditingSchema.PURGE_AFTER;
 import static org.openrdf.repository.auditing.config.AuditingSchema.TRANSACTIONAL;
+import static org.openrdf.repository.auditing.config.AuditingSchema.TRIM_BATCH_SIZE;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
@@ -54,6 +56,8 @@ public class AuditingRepositoryConfig extends ContextAwareConfig {
 	private String ns;
 	private int minRecent;
 	private int maxRecent;
+	private int trimBatchSize;
+	private long maintenancePeriod;
 	private Duration purgeAfter;
 	private Boolean transactional;
 
@@ -81,6 +85,22 @@ public class AuditingRepositoryConfig extends ContextAwareConfig {
 		this.maxRecent = maxRecent;
 	}
 
+	public int getTrimBatchSize() {
+		return trimBatchSize;
+	}
+
+	public void setTrimBatchSize(int trimBatchSize) {
+		this.trimBatchSize = trimBatchSize;
+	}
+
+	public long getMaintenancePeriod() {
+		return maintenancePeriod;
+	}
+
+	public void setMaintenancePeriod(long maintenancePeriod) {
+		this.maintenancePeriod = maintenancePeriod;
+	}
+
 	public Duration getPurgeAfter() {
 		return purgeAfter;
 	}
@@ -106,6 +126,13 @@ public class AuditingRepositoryConfig extends ContextAwareConfig {
 		}
 		model.add(self, MIN_RECENT, vf.createLiteral(minRecent));
 		model.add(self, MAX_RECENT, vf.createLiteral(maxRecent));
+		if (trimBatchSize > 0) {
+			model.add(self, TRIM_BATCH_SIZE, vf.createLiteral(trimBatchSize));
+		}
+		if (maintenancePeriod > 0) {
+			model.add(self, MAINTENANCE_PERIOD,
+					vf.createLiteral(maintenancePeriod));
+		}
 		if (purgeAfter != null) {
 			model.add(self, PURGE_AFTER,
 					vf.createLiteral(purgeAfter.toString(), XMLSchema.DURATION));
@@ -130,6 +157,14 @@ public class AuditingRepositoryConfig extends ContextAwareConfig {
 		if (lit != null) {
 			setMaxRecent(lit.intValue());
 		}
+		lit = model.filter(implNode, TRIM_BATCH_SIZE, null).objectLiteral();
+		if (lit != null) {
+			setTrimBatchSize(lit.intValue());
+		}
+		lit = model.filter(implNode, MAINTENANCE_PERIOD, null).objectLiteral();
+		if (lit != null) {
+			setMaintenancePeriod(lit.longValue());
+		}
 		lit = model.filter(implNode, PURGE_AFTER, null).objectLiteral();
 		if (lit != null) {
 			try {
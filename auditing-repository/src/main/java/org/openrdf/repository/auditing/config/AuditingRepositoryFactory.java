@@ -96,6 +96,10 @@ public class AuditingRepositoryFactory extends ContextAwareFactory {
 		}
 		repo.setMinRecent(config.getMinRecent());
 		repo.setMaxRecent(config.getMaxRecent());
+		if (config.getTrimBatchSize() > 0) {
+			repo.setTrimBatchSize(config.getTrimBatchSize());
+		}
+		repo.setMaintenancePeriod(config.getMaintenancePeriod());
 		repo.setPurgeAfter(config.getPurgeAfter());
 		repo.setTransactional(config.getTransactional());
 		return repo;
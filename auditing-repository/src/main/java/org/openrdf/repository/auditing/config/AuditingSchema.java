@@ -46,6 +46,8 @@ public class AuditingSchema {
 	public static final URI ACTIVITY_NAMESPACE = new URIImpl(NAMESPACE + "activityNamespace");
 	public static final URI MIN_RECENT = new URIImpl(NAMESPACE + "minimumRecentActivities");
 	public static final URI MAX_RECENT = new URIImpl(NAMESPACE + "maximumRecentActivities");
+	public static final URI TRIM_BATCH_SIZE = new URIImpl(NAMESPACE + "trimRecentActivitiesBatchSize");
+	public static final URI MAINTENANCE_PERIOD = new URIImpl(NAMESPACE + "maintenancePeriod");
 	public static final URI PURGE_AFTER = new URIImpl(NAMESPACE + "purgeObsoleteActivitiesAfter");
 	public static final URI TRANSACTIONAL = new URIImpl(NAMESPACE + "isTransactional");
 
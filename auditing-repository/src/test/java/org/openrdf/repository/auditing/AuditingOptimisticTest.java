@@ -4,6 +4,7 @@ package org.openrdf.repository.auditing;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
@@ -70,6 +71,7 @@ public class AuditingOptimisticTest extends TestCase {
 			throws Exception {
 		conn.setAutoCommit(true);
 		conn.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		return repo.getConnection();
 	}
 
@@ -499,6 +501,7 @@ public class AuditingOptimisticTest extends TestCase {
 		con.rollback();
 		con.setAutoCommit(true);
 		con.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		con = repo.getConnection();
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertFalse(con.hasStatement(carmichael, knows, jackson, false));
@@ -516,6 +519,7 @@ public class AuditingOptimisticTest extends TestCase {
 		assertTrue(con.isEmpty());
 		con.add(carmichael, knows, harris);
 		con.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		con = repo.getConnection();
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, GENERATED_BY, null, false));
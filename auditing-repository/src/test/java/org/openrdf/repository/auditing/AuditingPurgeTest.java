@@ -4,6 +4,7 @@ package org.openrdf.repository.auditing;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
@@ -34,6 +35,7 @@ public class AuditingPurgeTest extends TestCase {
 	public static final URI ACTIVITY = new URIImpl("http://www.w3.org/ns/prov#Activity");
 	public static final URI RECENT = new URIImpl("http://www.openrdf.org/rdf/2012/auditing#RecentActivity");
 	public static final URI OBSOLETE = new URIImpl("http://www.openrdf.org/rdf/2012/auditing#ObsoleteActivity");
+	public static final URI CONTRIBUTING = new URIImpl("http://www.openrdf.org/rdf/2012/auditing#ContributingActivity");
 	public static final URI ENDED_AT = new URIImpl("http://www.w3.org/ns/prov#endedAtTime");
 	public static final URI GENERATED_BY = new URIImpl("http://www.w3.org/ns/prov#wasGeneratedBy");
 	public static final URI CAHNGED = new URIImpl("http://www.openrdf.org/rdf/2012/auditing#changed");
@@ -70,6 +72,7 @@ public class AuditingPurgeTest extends TestCase {
 			throws Exception {
 		conn.setAutoCommit(true);
 		conn.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		return repo.getConnection();
 	}
 
@@ -165,6 +168,26 @@ public class AuditingPurgeTest extends TestCase {
 		con = commit(repo, con);
 	}
 
+	public void testContributingMarker() throws Exception {
+		begin(con);
+		con.add(carmichael, knows, harris);
+		con = commit(repo, con);
+		URI first = lastActivity;
+		begin(con);
+		con.add(carmichael, knows, jackson);
+		con = commit(repo, con);
+		URI second = lastActivity;
+		assertTrue(con.hasStatement(first, RDF.TYPE, CONTRIBUTING, false, first));
+		assertFalse(con.hasStatement(null, RDF.TYPE, OBSOLETE, false));
+		begin(con);
+		con.remove(carmichael, knows, harris);
+		con = commit(repo, con);
+		assertFalse(con.hasStatement(null, null, null, false, first));
+		assertTrue(con.hasStatement(second, RDF.TYPE, CONTRIBUTING, false, second));
+		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
+		assertFalse(con.hasStatement(null, RDF.TYPE, OBSOLETE, false));
+	}
+
 	public void testAddMany() throws Exception {
 		begin(con);
 		assertTrue(con.isEmpty());
@@ -213,6 +236,24 @@ public class AuditingPurgeTest extends TestCase {
 		assertTrue(con.hasStatement(null, CAHNGED, null, false));
 	}
 
+	public void testRemoveLastContribution() throws Exception {
+		begin(con);
+		con.add(carmichael, knows, harris);
+		con.add(carmichael, knows, jackson);
+		con = commit(repo, con);
+		URI first = lastActivity;
+		begin(con);
+		con.remove(carmichael, knows, harris);
+		con = commit(repo, con);
+		assertTrue(con.getContextIDs().asList().contains(first));
+		assertTrue(con.hasStatement(carmichael, knows, jackson, false, first));
+		begin(con);
+		con.remove(carmichael, knows, jackson);
+		con = commit(repo, con);
+		assertFalse(con.getContextIDs().asList().contains(first));
+		assertFalse(con.hasStatement(carmichael, knows, null, false));
+	}
+
 	public void testRemoveMany() throws Exception {
 		begin(con);
 		assertTrue(con.isEmpty());
@@ -503,6 +544,7 @@ public class AuditingPurgeTest extends TestCase {
 		con.rollback();
 		con.setAutoCommit(true);
 		con.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		con = repo.getConnection();
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertFalse(con.hasStatement(carmichael, knows, jackson, false));
@@ -520,6 +562,7 @@ public class AuditingPurgeTest extends TestCase {
 		assertTrue(con.isEmpty());
 		con.add(carmichael, knows, harris);
 		con.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		con = repo.getConnection();
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, GENERATED_BY, null, false));
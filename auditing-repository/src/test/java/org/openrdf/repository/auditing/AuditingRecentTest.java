@@ -2,8 +2,13 @@ package org.openrdf.repository.auditing;
 
 
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
@@ -70,6 +75,7 @@ public class AuditingRecentTest extends TestCase {
 			throws Exception {
 		conn.setAutoCommit(true);
 		conn.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		return repo.getConnection();
 	}
 
@@ -196,6 +202,53 @@ public class AuditingRecentTest extends TestCase {
 		assertEquals(7, con.getStatements(null, RDF.TYPE, RECENT, false).asList().size());
 	}
 
+	public void testTrimBatch() throws Exception {
+		repo.setMinRecent(3);
+		repo.setMaxRecent(12);
+		repo.setTrimBatchSize(4);
+		begin(con);
+		con.add(carmichael, knows, harris);
+		for (int i = 0; i < 11; i++) {
+			con = reopen(repo, con);
+			con.remove(carmichael, knows, null);
+			con.add(carmichael, knows, vf.createURI(NS, "friend" + i));
+		}
+		con = commit(repo, con);
+		assertTrue(con.hasStatement(carmichael, knows, vf.createURI(NS, "friend10"), false));
+		assertEquals(12, con.getContextIDs().asList().size());
+		assertEquals(2, con.getStatements(null, RDF.TYPE, RECENT, false).asList().size());
+		assertEquals(10, repo.getMonitor().getTrimmedActivities());
+		assertTrue(con.hasStatement(null, RDF.TYPE, OBSOLETE, false));
+	}
+
+	public void testCommitDuringMaintenance() throws Exception {
+		repo.setMinRecent(1);
+		repo.setMaxRecent(1);
+		final CountDownLatch committed = new CountDownLatch(1);
+		final List<Exception> errors = new ArrayList<Exception>();
+		synchronized (repo) {
+			new Thread(new Runnable() {
+				public void run() {
+					try {
+						AuditingRepositoryConnection con = repo.getConnection();
+						con.add(carmichael, knows, harris);
+						con.close();
+					} catch (Exception e) {
+						errors.add(e);
+					} finally {
+						committed.countDown();
+					}
+				}
+			}).start();
+			assertTrue(committed.await(1, TimeUnit.MINUTES));
+		}
+		assertEquals(Collections.emptyList(), errors);
+		assertTrue(repo.awaitMaintenance(1, TimeUnit.MINUTES));
+		assertTrue(con.hasStatement(carmichael, knows, harris, false));
+		assertFalse(con.hasStatement(null, RDF.TYPE, RECENT, false));
+		assertEquals(1, repo.getMonitor().getTrimmedActivities());
+	}
+
 	public void testRemove() throws Exception {
 		begin(con);
 		assertTrue(con.isEmpty());
@@ -501,6 +554,7 @@ public class AuditingRecentTest extends TestCase {
 		con.rollback();
 		con.setAutoCommit(true);
 		con.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		con = repo.getConnection();
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertFalse(con.hasStatement(carmichael, knows, jackson, false));
@@ -518,6 +572,7 @@ public class AuditingRecentTest extends TestCase {
 		assertTrue(con.isEmpty());
 		con.add(carmichael, knows, harris);
 		con.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		con = repo.getConnection();
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, GENERATED_BY, null, false));
@@ -2,8 +2,11 @@ package org.openrdf.repository.auditing;
 
 
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
@@ -19,6 +22,9 @@ import org.openrdf.model.impl.URIImpl;
 import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.Update;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
@@ -70,6 +76,7 @@ public class AuditingTest extends TestCase {
 			throws Exception {
 		conn.setAutoCommit(true);
 		conn.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		return repo.getConnection();
 	}
 
@@ -238,6 +245,55 @@ public class AuditingTest extends TestCase {
 		assertEquals(0, con.getStatements(null, RDF.TYPE, RECENT, false).asList().size());
 	}
 
+	public void testRemoveBatch() throws Exception {
+		begin(con);
+		List<Statement> statements = new ArrayList<Statement>();
+		for (int i = 0; i < 3000; i++) {
+			URI painter = vf.createURI(NS, "p" + i);
+			con.add(painter, knows, carmichael);
+			statements.add(vf.createStatement(painter, knows, carmichael));
+		}
+		con = reopen(repo, con);
+		con.remove(statements);
+		con = commit(repo, con);
+		assertFalse(con.hasStatement(null, knows, carmichael, false));
+		assertEquals(2, con.getContextIDs().asList().size());
+		assertTrue(con.hasStatement(null, RDF.TYPE, OBSOLETE, false));
+		assertTrue(con.hasStatement(null, INFORMED_BY, null, false));
+		assertTrue(con.hasStatement(null, CAHNGED, null, false));
+		assertTrue(con.hasStatement(lastActivity, USED, vf.createURI(NS, "p0"), false));
+		assertTrue(con.hasStatement(lastActivity, USED, vf.createURI(NS, "p2999"), false));
+	}
+
+	public void testRemoveEachInBatch() throws Exception {
+		URI entity = vf.createURI("http://www.w3.org/ns/prov#entity");
+		begin(con);
+		con.add(carmichael, knows, harris);
+		con.add(harris, knows, jackson);
+		con.add(jackson, knows, johnston);
+		con = reopen(repo, con);
+		TupleQuery qry = con.prepareTupleQuery(QueryLanguage.SPARQL,
+				"SELECT ?s { ?s <http://xmlns.com/foaf/0.1/knows> ?o }");
+		con.remove(carmichael, knows, harris);
+		con.remove(harris, knows, jackson);
+		assertFalse(con.hasStatement(carmichael, knows, harris, false));
+		TupleQueryResult result = qry.evaluate();
+		assertTrue(result.hasNext());
+		assertEquals(jackson, result.next().getValue("s"));
+		assertFalse(result.hasNext());
+		result.close();
+		con.remove(jackson, knows, johnston);
+		con.add(jackson, knows, johnston);
+		con = commit(repo, con);
+		assertFalse(con.hasStatement(carmichael, knows, harris, false));
+		assertFalse(con.hasStatement(harris, knows, jackson, false));
+		assertTrue(con.hasStatement(jackson, knows, johnston, false));
+		assertTrue(con.hasStatement(lastActivity, USED, carmichael, false));
+		assertTrue(con.hasStatement(lastActivity, USED, harris, false));
+		assertTrue(con.hasStatement(null, entity, carmichael, false));
+		assertTrue(con.hasStatement(null, entity, harris, false));
+	}
+
 	public void testRemoveAdd() throws Exception {
 		begin(con);
 		assertTrue(con.isEmpty());
@@ -489,6 +545,43 @@ public class AuditingTest extends TestCase {
 		assertTrue(con.hasStatement(null, CAHNGED, null, false));
 	}
 
+	public void testModifyTemplate() throws Exception {
+		String update = "INSERT { $person <http://xmlns.com/foaf/0.1/knows> $friend }\n" +
+				"WHERE { }";
+		begin(con);
+		assertTrue(con.isEmpty());
+		Update insert = con.prepareUpdate(QueryLanguage.SPARQL, update, "http://example.com/");
+		insert.setBinding("person", carmichael);
+		insert.setBinding("friend", harris);
+		insert.execute();
+		con = reopen(repo, con);
+		insert = con.prepareUpdate(QueryLanguage.SPARQL, update, "http://example.com/");
+		insert.setBinding("person", jackson);
+		insert.setBinding("friend", johnston);
+		insert.execute();
+		con = commit(repo, con);
+		UpdateAnalysis analysis = repo.getUpdateAnalysis(QueryLanguage.SPARQL, update, "http://example.com/");
+		assertSame(analysis, repo.getUpdateAnalysis(QueryLanguage.SPARQL, update, "http://example.com/"));
+		assertNotSame(analysis.getParsedUpdate().getUpdateExprs().get(0),
+				analysis.getParsedUpdate().getUpdateExprs().get(0));
+		assertTrue(con.hasStatement(carmichael, knows, harris, false));
+		assertTrue(con.hasStatement(jackson, knows, johnston, false));
+		assertTrue(con.hasStatement(carmichael, GENERATED_BY, null, false));
+		assertTrue(con.hasStatement(jackson, GENERATED_BY, null, false));
+		assertEquals(2, con.getContextIDs().asList().size());
+	}
+
+	public void testInsertDataNotShared() throws Exception {
+		String update = "INSERT DATA { <carmichael> <http://xmlns.com/foaf/0.1/knows> <harris> }";
+		begin(con);
+		con.prepareUpdate(QueryLanguage.SPARQL, update, "http://example.com/").execute();
+		con = commit(repo, con);
+		assertNotSame(repo.getUpdateAnalysis(QueryLanguage.SPARQL, update, "http://example.com/"),
+				repo.getUpdateAnalysis(QueryLanguage.SPARQL, update, "http://example.com/"));
+		assertTrue(con.hasStatement(carmichael, knows, harris, false));
+		assertTrue(con.hasStatement(carmichael, GENERATED_BY, null, false));
+	}
+
 	public void testRollback() throws Exception {
 		begin(con);
 		assertTrue(con.isEmpty());
@@ -500,6 +593,7 @@ public class AuditingTest extends TestCase {
 		con.rollback();
 		con.setAutoCommit(true);
 		con.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		con = repo.getConnection();
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertFalse(con.hasStatement(carmichael, knows, jackson, false));
@@ -517,6 +611,7 @@ public class AuditingTest extends TestCase {
 		assertTrue(con.isEmpty());
 		con.add(carmichael, knows, harris);
 		con.close();
+		repo.awaitMaintenance(1, TimeUnit.MINUTES);
 		con = repo.getConnection();
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, GENERATED_BY, null, false));
@@ -529,4 +624,36 @@ public class AuditingTest extends TestCase {
 		assertFalse(con.hasStatement(null, INFORMED_BY, null, false));
 		assertFalse(con.hasStatement(null, CAHNGED, null, false));
 	}
+
+	public void testLargeActivity() throws Exception {
+		AuditingRepositoryMonitor monitor = repo.getMonitor();
+		begin(con);
+		for (int i = 0; i < 3000; i++) {
+			con.add(vf.createURI(NS, "person" + i), knows, harris);
+		}
+		for (int i = 0; i < 3000; i++) {
+			con.add(vf.createURI(NS, "person" + i), knows, jackson);
+		}
+		con = commit(repo, con);
+		assertEquals(6000, monitor.getUserStatementCount());
+		// one prov:used, one prov:wasGeneratedBy per entity and one marker
+		assertEquals(6001, monitor.getAuditStatementCount());
+		assertEquals(3000, con.getStatements(null, USED, null, false).asList().size());
+		assertEquals(3000, con.getStatements(null, GENERATED_BY, null, false).asList().size());
+	}
+
+	public void testMonitor() throws Exception {
+		AuditingRepositoryMonitor monitor = repo.getMonitor();
+		begin(con);
+		con.add(carmichael, knows, harris);
+		con.add(carmichael, knows, jackson);
+		con = commit(repo, con);
+		assertEquals(1, monitor.getCommitCount());
+		assertEquals(1, monitor.getActivityCount());
+		assertEquals(2, monitor.getUserStatementCount());
+		assertTrue(monitor.getAuditStatementCount() > 0);
+		assertTrue(monitor.getAuditOverhead() > 0);
+		monitor.resetCounters();
+		assertEquals(0, monitor.getCommitCount());
+	}
 }
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.auditing;
+
+import info.aduna.iteration.CloseableIteration;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailException;
+
+/**
+ * Keeps purged transaction graphs in compressed, append-only segment files,
+ * one per month of commit time. Each transaction is a separate gzip member
+ * holding a TriG document, located by an append-only index of transaction
+ * URIs, segment names, offsets and lengths. Only recently used index entries
+ * are kept in memory; others are read from the index file when needed.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class AuditArchive {
+	private static final String INDEX = "index";
+	private static final String SUFFIX = ".trig.gz";
+	private static final int MAX_CACHED = 1024;
+
+	private static class Entry {
+		final String segment;
+		final long offset;
+		final long length;
+
+		Entry(String segment, long offset, long length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	private final File dir;
+	private final File indexFile;
+	/** recently archived or looked up entries */
+	private final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(
+			MAX_CACHED, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+	private final SimpleDateFormat month = new SimpleDateFormat("yyyy-MM");
+	private int size;
+	private FileOutputStream indexOut;
+	private Writer indexWriter;
+
+	public AuditArchive(File dir) throws IOException {
+		this.dir = dir;
+		month.setTimeZone(TimeZone.getTimeZone("UTC"));
+		dir.mkdirs();
+		indexFile = new File(dir, INDEX);
+		if (indexFile.exists()) {
+			size = countEntries();
+		}
+		indexOut = new FileOutputStream(indexFile, true);
+		indexWriter = new OutputStreamWriter(indexOut);
+	}
+
+	public File getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * The number of transaction graphs written to this archive.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized boolean contains(Resource trx) throws IOException {
+		return getEntry(trx.stringValue()) != null;
+	}
+
+	/**
+	 * The URIs of the archived transactions in the order they were archived.
+	 */
+	public synchronized List<String> getTransactions() throws IOException {
+		final Set<String> transactions = new LinkedHashSet<String>();
+		readIndex(new IndexReader() {
+			public void entry(String trx, Entry entry) {
+				transactions.add(trx);
+			}
+		});
+		return new ArrayList<String>(transactions);
+	}
+
+	/**
+	 * Appends the statements of this transaction graph to the segment of the
+	 * month it was committed in. Both the segment and the index are synced
+	 * to disk before this method returns, so the graph can then be removed
+	 * from the store.
+	 */
+	public synchronized void archive(Resource trx, long committed,
+			SailConnection con) throws SailException {
+		String segment = month.format(new Date(Math.max(0, committed)))
+				+ SUFFIX;
+		File file = new File(dir, segment);
+		long offset = file.length();
+		try {
+			FileOutputStream out = new FileOutputStream(file, true);
+			try {
+				GZIPOutputStream gz = new GZIPOutputStream(
+						new BufferedOutputStream(out, 65536));
+				RDFWriter writer = Rio.createWriter(RDFFormat.TRIG, gz);
+				writer.startRDF();
+				CloseableIteration<? extends Statement, SailException> stmts;
+				stmts = con.getStatements(null, null, null, false, trx);
+				try {
+					while (stmts.hasNext()) {
+						writer.handleStatement(stmts.next());
+					}
+				} finally {
+					stmts.close();
+				}
+				writer.endRDF();
+				gz.finish();
+				gz.flush();
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			long length = file.length() - offset;
+			indexWriter.write(trx.stringValue() + " " + segment + " "
+					+ offset + " " + length + "\n");
+			indexWriter.flush();
+			indexOut.getFD().sync();
+			cache.put(trx.stringValue(), new Entry(segment, offset, length));
+			size++;
+		} catch (IOException e) {
+			throw new SailException(e);
+		} catch (RDFHandlerException e) {
+			throw new SailException(e);
+		}
+	}
+
+	/**
+	 * The statements of an archived transaction or <code>null</code> if it
+	 * is not archived.
+	 */
+	public Model lookup(Resource trx) throws IOException, RDFParseException {
+		Model model = new LinkedHashModel();
+		try {
+			if (!replay(trx, new StatementCollector(model)))
+				return null;
+		} catch (RDFHandlerException e) {
+			throw new AssertionError(e);
+		}
+		return model;
+	}
+
+	/**
+	 * Adds the statements of an archived transaction back into the store.
+	 * 
+	 * @return <code>false</code> if the transaction is not archived
+	 */
+	public boolean restore(Resource trx, final SailConnection con)
+			throws IOException, RDFParseException, SailException {
+		try {
+			return replay(trx, new RDFHandlerBase() {
+				public void handleStatement(Statement st)
+						throws RDFHandlerException {
+					try {
+						con.addStatement(st.getSubject(), st.getPredicate(),
+								st.getObject(), st.getContext());
+					} catch (SailException e) {
+						throw new RDFHandlerException(e);
+					}
+				}
+			});
+		} catch (RDFHandlerException e) {
+			if (e.getCause() instanceof SailException)
+				throw (SailException) e.getCause();
+			throw new SailException(e);
+		}
+	}
+
+	/**
+	 * Reports the statements of an archived transaction to the handler.
+	 * 
+	 * @return <code>false</code> if the transaction is not archived
+	 */
+	public boolean replay(Resource trx, RDFHandler handler)
+			throws IOException, RDFParseException, RDFHandlerException {
+		Entry entry;
+		synchronized (this) {
+			entry = getEntry(trx.stringValue());
+		}
+		if (entry == null)
+			return false;
+		InputStream in = open(entry);
+		try {
+			RDFParser parser = Rio.createParser(RDFFormat.TRIG);
+			parser.setRDFHandler(handler);
+			parser.parse(new GZIPInputStream(in), trx.stringValue());
+		} finally {
+			in.close();
+		}
+		return true;
+	}
+
+	public synchronized void close() throws IOException {
+		if (indexWriter != null) {
+			indexWriter.close();
+			indexWriter = null;
+			indexOut = null;
+		}
+	}
+
+	public String toString() {
+		return dir.toString();
+	}
+
+	private interface IndexReader {
+		void entry(String trx, Entry entry);
+	}
+
+	/** locked by this */
+	private Entry getEntry(final String trx) throws IOException {
+		Entry entry = cache.get(trx);
+		if (entry != null)
+			return entry;
+		final Entry[] found = new Entry[1];
+		readIndex(new IndexReader() {
+			public void entry(String uri, Entry entry) {
+				if (uri.equals(trx)) {
+					// later entries replace earlier ones
+					found[0] = entry;
+				}
+			}
+		});
+		if (found[0] != null) {
+			cache.put(trx, found[0]);
+		}
+		return found[0];
+	}
+
+	private int countEntries() throws IOException {
+		final int[] count = new int[1];
+		readIndex(new IndexReader() {
+			public void entry(String trx, Entry entry) {
+				count[0]++;
+			}
+		});
+		return count[0];
+	}
+
+	private void readIndex(IndexReader handler) throws IOException {
+		if (!indexFile.exists())
+			return;
+		BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] split = line.split(" ");
+				if (split.length == 4) {
+					long offset = Long.parseLong(split[2]);
+					long length = Long.parseLong(split[3]);
+					handler.entry(split[0], new Entry(split[1], offset, length));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private InputStream open(Entry entry) throws IOException {
+		File file = new File(dir, entry.segment);
+		if (!file.exists())
+			throw new FileNotFoundException(file.getAbsolutePath());
+		FileInputStream in = new FileInputStream(file);
+		long skip = entry.offset;
+		while (skip > 0) {
+			long skipped = in.skip(skip);
+			if (skipped <= 0) {
+				in.close();
+				throw new IOException("Truncated segment " + file);
+			}
+			skip -= skipped;
+		}
+		final long length = entry.length;
+		return new FilterInputStream(in) {
+			private long remaining = length;
+
+			public int read() throws IOException {
+				if (remaining <= 0)
+					return -1;
+				int read = super.read();
+				if (read >= 0) {
+					remaining--;
+				}
+				return read;
+			}
+
+			public int available() throws IOException {
+				return (int) Math.min(remaining, super.available());
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (remaining <= 0)
+					return -1;
+				int read = super.read(b, off, (int) Math.min(len, remaining));
+				if (read > 0) {
+					remaining -= read;
+				}
+				return read;
+			}
+		};
+	}
+}
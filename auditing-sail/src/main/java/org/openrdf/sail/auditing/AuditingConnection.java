@@ -42,11 +42,10 @@ import info.aduna.iteration.CloseableIteration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import javax.xml.datatype.DatatypeConfigurationException;
@@ -64,8 +63,11 @@ import org.openrdf.model.impl.MemoryOverflowModel;
 import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.DeleteData;
 import org.openrdf.query.algebra.Modify;
 import org.openrdf.query.algebra.QueryModelNode;
+import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.algebra.UpdateExpr;
 import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailException;
@@ -86,24 +88,31 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 	private static final String ENTITY = PROV + "entity";
 	private static final String GENERATED_BY = PROV + "wasGeneratedBy";
 	private static final String CHANGED = AUDIT_2012 + "changed";
-	private static int MAX_REVISED = 1024;
 	private final AuditingSail sail;
 	private URI trx;
 	private final DatatypeFactory factory;
 	private final ValueFactory vf;
-	private final Map<Resource, Boolean> revised = new LinkedHashMap<Resource, Boolean>(
-			128, 0.75f, true) {
-		private static final long serialVersionUID = 1863694012435196527L;
-
-		protected boolean removeEldestEntry(Entry<Resource, Boolean> eldest) {
-			return size() > MAX_REVISED;
-		}
-	};
+	private final RevisedResources revised;
 	private final Set<Resource> modified = new HashSet<Resource>();
-	private final MemoryOverflowModel metadata = new MemoryOverflowModel();
+	/** change in the number of non-audit statements of each graph */
+	private final Map<Resource, Long> liveDeltas = new HashMap<Resource, Long>();
+	private final Map<Resource, Long> liveCounts = new HashMap<Resource, Long>();
+	/** live sequence of the sail when this transaction could first read */
+	private long liveSequence;
+	private MemoryOverflowModel metadata = new MemoryOverflowModel();
+	/** reified removals and activity usage, written before the next read */
+	private MemoryOverflowModel provenance = new MemoryOverflowModel();
 	private final List<Statement> arch = new ArrayList<Statement>();
+	private final AuditingMonitor monitor;
+	/** statements added and removal operations requested in this transaction */
+	private long userStatements;
+	/** statements written in this transaction for auditing */
+	private long auditStatements;
+	/** if metadata or provenance was moved to disk in this transaction */
+	private boolean metadataSpilled;
 	private final OperationEntityResolver entityResolver;
-	private Set<? extends Resource> predecessors;
+	/** the version of committed transactions this transaction has seen */
+	private Frontier frontier;
 	private final URI currentTrx;
 	private final URI informedBy;
 	private final URI qualifiedUsage;
@@ -114,14 +123,16 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 	private final URI object;
 
 	public AuditingConnection(AuditingSail sail, SailConnection wrappedCon,
-			Set<Resource> predecessors) throws DatatypeConfigurationException {
+			Frontier frontier) throws DatatypeConfigurationException {
 		super(wrappedCon);
 		this.sail = sail;
+		monitor = sail.getMonitor();
 		factory = DatatypeFactory.newInstance();
 		vf = sail.getValueFactory();
+		revised = new RevisedResources(vf);
 		entityResolver = new OperationEntityResolver(vf);
 		currentTrx = vf.createURI(CURRENT_TRX.stringValue());
-		this.predecessors = predecessors;
+		this.frontier = frontier;
 		informedBy = vf.createURI(WAS_INFORMED_BY);
 		qualifiedUsage = vf.createURI(QUALIFIED_USAGE);
 		usedEntity = vf.createURI(ENTITY);
@@ -129,6 +140,7 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 		subject = vf.createURI(RDF.SUBJECT.stringValue());
 		predicate = vf.createURI(RDF.PREDICATE.stringValue());
 		object = vf.createURI(RDF.OBJECT.stringValue());
+		liveSequence = sail.getLiveSequence();
 	}
 
 	@Override
@@ -140,6 +152,35 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 		return getTrx();
 	}
 
+	@Override
+	public synchronized CloseableIteration<? extends BindingSet, QueryEvaluationException> evaluate(
+			TupleExpr tupleExpr, Dataset dataset, BindingSet bindings,
+			boolean includeInferred) throws SailException {
+		flushProvenance();
+		return super.evaluate(tupleExpr, dataset, bindings, includeInferred);
+	}
+
+	@Override
+	public synchronized CloseableIteration<? extends Resource, SailException> getContextIDs()
+			throws SailException {
+		flushProvenance();
+		return super.getContextIDs();
+	}
+
+	@Override
+	public synchronized CloseableIteration<? extends Statement, SailException> getStatements(
+			Resource subj, URI pred, Value obj, boolean includeInferred,
+			Resource... contexts) throws SailException {
+		flushProvenance();
+		return super.getStatements(subj, pred, obj, includeInferred, contexts);
+	}
+
+	@Override
+	public synchronized long size(Resource... contexts) throws SailException {
+		flushProvenance();
+		return super.size(contexts);
+	}
+
 	@Override
 	public void executeUpdate(UpdateExpr updateExpr, Dataset ds,
 			BindingSet bindings, boolean includeInferred) throws SailException {
@@ -151,10 +192,17 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 				node = ((Modify) updateExpr).getDeleteExpr();
 			}
 			final URI entity = entityResolver.getEntity(node, ds, bindings);
+			// statements of a batch may each belong to a different entity
+			final Dataset dataset = entity == null
+					&& updateExpr instanceof DeleteData ? ds : null;
 			remover = new SailConnectionWrapper(this) {
 				public void removeStatements(Resource subj, URI pred,
 						Value obj, Resource... ctx) throws SailException {
-					removeInforming(activity, entity, subj, pred, obj, ctx);
+					URI e = entity;
+					if (dataset != null) {
+						e = entityResolver.getEntity(subj, dataset);
+					}
+					removeInforming(activity, e, subj, pred, obj, ctx);
 				}
 			};
 		}
@@ -186,6 +234,8 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 	public synchronized void addStatement(Resource subj, URI pred, Value obj,
 			Resource... contexts) throws SailException {
 		flushArchive();
+		userStatements += contexts == null || contexts.length == 0 ? 1
+				: contexts.length;
 		if (subj.equals(currentTrx) || obj.equals(currentTrx) && !Audit.REVISION.equals(pred)) {
 			if (contexts == null) {
 				addMetadata(subj, pred, obj, null);
@@ -204,6 +254,8 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 	@Override
 	public synchronized void removeStatements(Resource subj, URI pred,
 			Value obj, Resource... contexts) throws SailException {
+		flushProvenance();
+		userStatements++;
 		if (sail.isArchiving()) {
 			CloseableIteration<? extends Statement, SailException> stmts;
 			stmts = super.getStatements(subj, pred, obj, false, contexts);
@@ -214,17 +266,26 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 					URI p = st.getPredicate();
 					Value o = st.getObject();
 					Resource ctx = st.getContext();
-					removeRevision(s, p);
-					if (ctx instanceof URI && !ctx.equals(trx)) {
+					AuditLevel level = getAuditLevel(ctx);
+					if (level.includes(AuditLevel.ENTITY)) {
+						removeRevision(s, p);
+					}
+					if (ctx != null && isLive(p, o)) {
+						addLive(ctx, -1);
+					}
+					if (ctx instanceof URI && !ctx.equals(trx)
+							&& level.includes(AuditLevel.TRANSACTION)) {
+						URI trx = getTrx();
 						if (modified.add(ctx)) {
-							super.addStatement(getTrx(), MODIFIED, ctx,
-									getTrx());
+							provenance.add(trx, MODIFIED, ctx, trx);
+						}
+						if (level.includes(AuditLevel.STATEMENT)) {
+							BNode node = vf.createBNode();
+							provenance.add(ctx, CONTAINED, node, trx);
+							provenance.add(node, RDF.SUBJECT, s, trx);
+							provenance.add(node, RDF.PREDICATE, p, trx);
+							provenance.add(node, RDF.OBJECT, o, trx);
 						}
-						BNode node = vf.createBNode();
-						super.addStatement(ctx, CONTAINED, node, getTrx());
-						super.addStatement(node, RDF.SUBJECT, s, getTrx());
-						super.addStatement(node, RDF.PREDICATE, p, getTrx());
-						super.addStatement(node, RDF.OBJECT, o, getTrx());
 					}
 				}
 			} finally {
@@ -240,7 +301,8 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 					while (stmts.hasNext() && arch.size() <= maxArchive) {
 						Statement st = stmts.next();
 						Resource ctx = st.getContext();
-						if (ctx instanceof URI && !ctx.equals(trx)) {
+						if (ctx instanceof URI && !ctx.equals(trx)
+								&& getAuditLevel(ctx).includes(AuditLevel.STATEMENT)) {
 							arch.add(st);
 						}
 					}
@@ -248,21 +310,35 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 					stmts.close();
 				}
 			}
+			removedLive(subj, pred, obj, contexts);
 			super.removeStatements(subj, pred, obj, contexts);
-			removeRevision(subj, pred);
+			if (getMaximumAuditLevel(contexts).includes(AuditLevel.ENTITY)) {
+				removeRevision(subj, pred);
+			}
 			if (contexts != null && contexts.length > 0) {
 				for (Resource ctx : contexts) {
-					if (ctx != null && modified.add(ctx)) {
-						addMetadata(currentTrx, MODIFIED, ctx, currentTrx);
+					if (ctx != null
+							&& getAuditLevel(ctx).includes(AuditLevel.TRANSACTION)
+							&& modified.add(ctx)) {
+						auditMetadata(currentTrx, MODIFIED, ctx, currentTrx);
 					}
 				}
 			}
 		}
 	}
 
+	@Override
+	public synchronized void clear(Resource... contexts) throws SailException {
+		flushProvenance();
+		super.clear(contexts);
+	}
+
 	@Override
 	public synchronized void commit() throws SailException {
+		long auditStart = System.nanoTime();
+		List<Frontier> merges = Collections.emptyList();
 		flushArchive();
+		flushProvenance();
 		if (trx != null) {
 			for (Statement st : arch) {
 				Resource ctx = st.getContext();
@@ -272,27 +348,59 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 			}
 			for (Resource ctx : modified) {
 				if (isObsolete(ctx)) {
-					super.addStatement(ctx, RDF.TYPE, Audit.OBSOLETE, trx);
+					audit(ctx, RDF.TYPE, Audit.OBSOLETE, trx);
 				}
 			}
+			Long added = liveDeltas.get(trx);
+			liveCounts.put(trx, added == null ? 0 : added);
 			GregorianCalendar cal = new GregorianCalendar();
 			XMLGregorianCalendar xgc = factory.newXMLGregorianCalendar(cal);
 			Literal now = vf.createLiteral(xgc);
-			super.addStatement(trx, RDF.TYPE, TRANSACTION, trx);
-			super.addStatement(trx, COMMITTED_ON, now, trx);
-			for (Resource predecessor : predecessors) {
-				super.addStatement(trx, PREDECESSOR, predecessor, trx);
+			audit(trx, RDF.TYPE, TRANSACTION, trx);
+			audit(trx, COMMITTED_ON, now, trx);
+			if (frontier.getNode() != null) {
+				audit(trx, PREDECESSOR, frontier.getNode(), trx);
+			}
+			// merges of concurrent transactions are linked once
+			merges = frontier.getUnrecorded();
+			for (Frontier merge : merges) {
+				Frontier[] merged = merge.getMerged();
+				if (merged != null) {
+					for (Frontier predecessor : merged) {
+						audit(merge.getNode(), PREDECESSOR,
+								predecessor.getNode(), trx);
+					}
+				}
 			}
 			sail.recent(trx, getWrappedConnection());
 		}
+		if (metadataSpilled || metadata.isOverflowed()
+				|| provenance.isOverflowed()) {
+			monitor.metadataSpilled();
+		}
+		boolean audited = trx != null;
+		long storeStart = System.nanoTime();
 		super.commit();
-		metadata.clear();
+		for (Frontier merge : merges) {
+			merge.recorded();
+		}
+		if (audited) {
+			monitor.committed(userStatements, auditStatements, auditStart,
+					storeStart);
+		}
+		userStatements = 0;
+		auditStatements = 0;
+		metadataSpilled = false;
+		sail.liveCounted(liveDeltas, liveCounts, liveSequence);
+		liveSequence = sail.getLiveSequence();
+		metadata = reset(metadata);
 		revised.clear();
 		modified.clear();
 		arch.clear();
+		liveDeltas.clear();
+		liveCounts.clear();
 		if (trx != null) {
-			sail.committed(trx, predecessors);
-			predecessors = Collections.singleton(trx);
+			frontier = sail.committed(trx, frontier);
 			trx = null;
 		}
 	}
@@ -300,11 +408,18 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 	@Override
 	public synchronized void rollback() throws SailException {
 		trx = null;
-		metadata.clear();
+		userStatements = 0;
+		auditStatements = 0;
+		metadataSpilled = false;
+		metadata = reset(metadata);
 		revised.clear();
 		modified.clear();
 		arch.clear();
+		provenance = reset(provenance);
+		liveDeltas.clear();
+		liveCounts.clear();
 		super.rollback();
+		liveSequence = sail.getLiveSequence();
 	}
 
 	public String toString() {
@@ -321,33 +436,72 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 					storeStatement(st.getSubject(), st.getPredicate(), st
 							.getObject(), st.getContext());
 				}
-				metadata.clear();
+				if (metadata.isOverflowed()) {
+					metadataSpilled = true;
+				}
+				metadata = reset(metadata);
 			}
 		}
 		return trx;
 	}
 
 	private void flushArchive() throws SailException {
-		if (arch.size() <= sail.getMaxArchive()) {
+		if (!arch.isEmpty() && arch.size() <= sail.getMaxArchive()) {
+			long start = System.nanoTime();
 			for (Statement st : arch) {
 				Resource s = st.getSubject();
 				URI p = st.getPredicate();
 				Value o = st.getObject();
 				Resource ctx = st.getContext();
 				removeRevision(s, p);
+				URI trx = getTrx();
 				BNode node = vf.createBNode();
-				super.addStatement(ctx, CONTAINED, node, getTrx());
-				super.addStatement(node, RDF.SUBJECT, s, getTrx());
-				super.addStatement(node, RDF.PREDICATE, p, getTrx());
-				super.addStatement(node, RDF.OBJECT, o, getTrx());
+				provenance.add(ctx, CONTAINED, node, trx);
+				provenance.add(node, RDF.SUBJECT, s, trx);
+				provenance.add(node, RDF.PREDICATE, p, trx);
+				provenance.add(node, RDF.OBJECT, o, trx);
 				if (ctx instanceof URI && modified.add(ctx)) {
-					super.addStatement(getTrx(), MODIFIED, ctx, getTrx());
+					provenance.add(trx, MODIFIED, ctx, trx);
 				}
 			}
 			arch.clear();
+			monitor.archived(start);
 		}
 	}
 
+	private void flushProvenance() throws SailException {
+		if (!provenance.isEmpty()) {
+			for (Statement st : provenance) {
+				audit(st.getSubject(), st.getPredicate(), st
+						.getObject(), st.getContext());
+			}
+			if (provenance.isOverflowed()) {
+				metadataSpilled = true;
+			}
+			provenance = reset(provenance);
+		}
+	}
+
+	/**
+	 * Empties the model, or replaces it if it has moved to disk, so the next
+	 * transaction starts in memory.
+	 */
+	private MemoryOverflowModel reset(MemoryOverflowModel model) {
+		if (model.isOverflowed())
+			return new MemoryOverflowModel();
+		model.clear();
+		return model;
+	}
+
+	/**
+	 * Adds transaction metadata that was not requested by the user.
+	 */
+	private void auditMetadata(Resource subj, URI pred, Value obj,
+			Resource context) throws SailException {
+		auditStatements++;
+		addMetadata(subj, pred, obj, context);
+	}
+
 	private void addMetadata(Resource subj, URI pred, Value obj,
 			Resource context) throws SailException {
 		if (trx == null) {
@@ -380,33 +534,76 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 		}
 		if (contexts == null || contexts.length == 0 || contexts.length == 1
 				&& contexts[0] == null) {
-			addRevision(subj);
-			super.addStatement(subj, pred, obj, getTrx());
-		} else if (contexts.length == 1) {
-			if (contexts[0].equals(trx)) {
+			AuditLevel level = sail.getAuditLevel();
+			if (level == AuditLevel.OFF) {
+				write(subj, pred, obj);
+				return;
+			}
+			if (level.includes(AuditLevel.ENTITY)) {
 				addRevision(subj);
 			}
-			super.addStatement(subj, pred, obj, contexts);
+			addedLive(subj, pred, obj, getTrx());
+			write(subj, pred, obj, getTrx());
+		} else if (contexts.length == 1) {
 			Resource ctx = contexts[0];
-			if (isURI(ctx) && !ctx.equals(trx) && modified.add(ctx)) {
-				addMetadata(currentTrx, MODIFIED, ctx, currentTrx);
+			AuditLevel level = getAuditLevel(ctx);
+			if (ctx.equals(trx) && level.includes(AuditLevel.ENTITY)) {
+				addRevision(subj);
+			}
+			if (level != AuditLevel.OFF) {
+				addedLive(subj, pred, obj, contexts);
+			}
+			write(subj, pred, obj, contexts);
+			if (isURI(ctx) && !ctx.equals(trx)
+					&& level.includes(AuditLevel.TRANSACTION)
+					&& modified.add(ctx)) {
+				auditMetadata(currentTrx, MODIFIED, ctx, currentTrx);
 			}
 		} else {
 			for (Resource ctx : contexts) {
-				if (ctx == null || ctx.equals(trx)) {
+				if ((ctx == null || ctx.equals(trx))
+						&& sail.getAuditLevel().includes(AuditLevel.ENTITY)) {
 					addRevision(subj);
 					break;
 				}
 			}
-			super.addStatement(subj, pred, obj, contexts);
+			addedLive(subj, pred, obj, contexts);
+			write(subj, pred, obj, contexts);
 			for (Resource ctx : contexts) {
-				if (isURI(ctx) && !ctx.equals(trx) && modified.add(ctx)) {
-					addMetadata(currentTrx, MODIFIED, ctx, currentTrx);
+				if (isURI(ctx) && !ctx.equals(trx)
+						&& getAuditLevel(ctx).includes(AuditLevel.TRANSACTION)
+						&& modified.add(ctx)) {
+					auditMetadata(currentTrx, MODIFIED, ctx, currentTrx);
 				}
 			}
 		}
 	}
 
+	private AuditLevel getAuditLevel(Resource ctx) {
+		if (ctx == null || ctx.equals(trx) || ctx.equals(currentTrx))
+			return sail.getAuditLevel();
+		return sail.getAuditLevel(ctx);
+	}
+
+	/**
+	 * The highest audit level of the given graphs, or of any graph if none
+	 * are given.
+	 */
+	private AuditLevel getMaximumAuditLevel(Resource... contexts) {
+		if (contexts == null)
+			return sail.getAuditLevel();
+		if (contexts.length == 0)
+			return sail.getMaximumAuditLevel();
+		AuditLevel max = AuditLevel.OFF;
+		for (Resource ctx : contexts) {
+			AuditLevel level = getAuditLevel(ctx);
+			if (level.includes(max)) {
+				max = level;
+			}
+		}
+		return max;
+	}
+
 	private boolean addRevision(Resource subj) throws SailException {
 		if (subj instanceof URI) {
 			Resource h = getContainerURI(subj);
@@ -416,9 +613,9 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 			revised.put(h, Boolean.TRUE);
 			if (!subj.equals(trx)) {
 				removeAllRevisions(subj);
-				super.addStatement(h, REVISION, getTrx(), getTrx());
+				audit(h, REVISION, getTrx(), getTrx());
 				if (b == null) {
-					super.addStatement(getTrx(), CONTRIBUTED, h, getTrx());
+					audit(getTrx(), CONTRIBUTED, h, getTrx());
 				}
 				return true;
 			}
@@ -434,7 +631,7 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 			revised.put(h, Boolean.TRUE);
 			if (pred != null && !REVISION.equals(pred)) {
 				removeAllRevisions(subj);
-				addMetadata(h, REVISION, currentTrx, currentTrx);
+				auditMetadata(h, REVISION, currentTrx, currentTrx);
 			} else {
 				URI uri = (URI) subj;
 				String ns = uri.getNamespace();
@@ -445,13 +642,14 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 					revised.put(subj, Boolean.FALSE);
 				}
 			}
-			addMetadata(currentTrx, CONTRIBUTED, h, currentTrx);
+			auditMetadata(currentTrx, CONTRIBUTED, h, currentTrx);
 			return true;
 		}
 		return false;
 	}
 
 	private void removeAllRevisions(Resource subj) throws SailException {
+		long start = System.nanoTime();
 		CloseableIteration<? extends Statement, SailException> stmts;
 		Resource s = getContainerURI(subj);
 		stmts = super.getStatements(s, REVISION, null, true);
@@ -460,12 +658,13 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 				Statement st = stmts.next();
 				Value ctx = st.getObject();
 				if (ctx instanceof URI && modified.add((URI) ctx)) {
-					addMetadata(getTrx(), MODIFIED, ctx, getTrx());
+					auditMetadata(getTrx(), MODIFIED, ctx, getTrx());
 				}
 				super.removeStatements(s, REVISION, ctx);
 			}
 		} finally {
 			stmts.close();
+			monitor.revisionsRemoved(start);
 		}
 	}
 
@@ -483,38 +682,115 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 		return subj;
 	}
 
+	/**
+	 * If the graph has no non-audit statements, using the committed count and
+	 * the changes in this transaction when known. A graph is only scanned if
+	 * its count is not known or would drop to zero.
+	 */
 	private boolean isObsolete(Resource ctx) throws SailException {
+		long start = System.nanoTime();
+		try {
+			Long count = sail.getLiveCount(ctx);
+			Long delta = liveDeltas.get(ctx);
+			if (count != null && count + (delta == null ? 0 : delta) > 0)
+				return false;
+			long live = countLive(ctx);
+			liveCounts.put(ctx, live);
+			return live == 0;
+		} finally {
+			monitor.obsoleteChecked(start);
+		}
+	}
+
+	private long countLive(Resource ctx) throws SailException {
+		long count = 0;
 		CloseableIteration<? extends Statement, SailException> stmts;
 		stmts = super.getStatements(null, null, null, true, ctx);
 		try {
 			while (stmts.hasNext()) {
 				Statement st = stmts.next();
-				URI pred = st.getPredicate();
-				Value obj = st.getObject();
-				String ns = pred.getNamespace();
-				if (Audit.NAMESPACE.equals(ns) || PROV.equals(ns)
-						|| AUDIT_2012.equals(ns))
-					continue;
-				if (RDF.SUBJECT.equals(pred) || RDF.PREDICATE.equals(pred)
-						|| RDF.OBJECT.equals(pred))
-					continue;
-				if (RDF.TYPE.equals(pred) && obj instanceof URI) {
-					ns = ((URI) obj).getNamespace();
-					if (Audit.NAMESPACE.equals(ns) || PROV.equals(ns)
-							|| AUDIT_2012.equals(ns)
-							|| RDF.NAMESPACE.equals(ns))
-						continue;
+				if (isLive(st.getPredicate(), st.getObject())) {
+					count++;
 				}
-				return false;
 			}
 		} finally {
 			stmts.close();
 		}
+		return count;
+	}
+
+	private boolean isLive(URI pred, Value obj) {
+		String ns = pred.getNamespace();
+		if (Audit.NAMESPACE.equals(ns) || PROV.equals(ns)
+				|| AUDIT_2012.equals(ns))
+			return false;
+		if (RDF.SUBJECT.equals(pred) || RDF.PREDICATE.equals(pred)
+				|| RDF.OBJECT.equals(pred))
+			return false;
+		if (RDF.TYPE.equals(pred) && obj instanceof URI) {
+			ns = ((URI) obj).getNamespace();
+			if (Audit.NAMESPACE.equals(ns) || PROV.equals(ns)
+					|| AUDIT_2012.equals(ns) || RDF.NAMESPACE.equals(ns))
+				return false;
+		}
 		return true;
 	}
 
+	private void addedLive(Resource subj, URI pred, Value obj,
+			Resource... contexts) throws SailException {
+		if (isLive(pred, obj)) {
+			for (Resource ctx : contexts) {
+				if (ctx != null && !contains(subj, pred, obj, ctx)) {
+					addLive(ctx, 1);
+				}
+			}
+		}
+	}
+
+	private void removedLive(Resource subj, URI pred, Value obj,
+			Resource... contexts) throws SailException {
+		if (pred != null && obj != null && !isLive(pred, obj))
+			return;
+		CloseableIteration<? extends Statement, SailException> stmts;
+		stmts = super.getStatements(subj, pred, obj, false, contexts);
+		try {
+			while (stmts.hasNext()) {
+				Statement st = stmts.next();
+				Resource ctx = st.getContext();
+				if (ctx != null && isLive(st.getPredicate(), st.getObject())) {
+					addLive(ctx, -1);
+				}
+			}
+		} finally {
+			stmts.close();
+		}
+	}
+
+	private boolean contains(Resource subj, URI pred, Value obj, Resource ctx)
+			throws SailException {
+		CloseableIteration<? extends Statement, SailException> stmts;
+		stmts = super.getStatements(subj, pred, obj, false, ctx);
+		try {
+			return stmts.hasNext();
+		} finally {
+			stmts.close();
+		}
+	}
+
+	/**
+	 * Graphs that are not audited are not counted.
+	 */
+	private void addLive(Resource ctx, long delta) {
+		if (getAuditLevel(ctx) == AuditLevel.OFF)
+			return;
+		Long count = liveDeltas.get(ctx);
+		liveDeltas.put(ctx, count == null ? delta : count + delta);
+	}
+
 	private void removeInforming(URI activity, URI entity, Resource subj, URI pred,
 			Value obj, Resource... contexts) throws SailException {
+		flushProvenance();
+		userStatements++;
 		if (contexts != null && contexts.length == 0) {
 			CloseableIteration<? extends Statement, SailException> stmts;
 			stmts = super.getStatements(subj, pred, obj, false, contexts);
@@ -522,14 +798,17 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 				while (stmts.hasNext()) {
 					Statement st = stmts.next();
 					Resource ctx = st.getContext();
-					subj = st.getSubject();
-					pred = st.getPredicate();
-					obj = st.getObject();
-					removeInformingGraph(activity, entity, subj, pred, obj, ctx);
+					URI p = st.getPredicate();
+					Value o = st.getObject();
+					reify(activity, entity, st.getSubject(), p, o, ctx);
+					if (ctx != null && isLive(p, o)) {
+						addLive(ctx, -1);
+					}
 				}
 			} finally {
 				stmts.close();
 			}
+			super.removeStatements(subj, pred, obj, contexts);
 		} else if (contexts == null) {
 			removeInformingGraph(activity, entity, subj, pred, obj, null);
 		} else {
@@ -542,31 +821,52 @@ public class AuditingConnection extends TransactionalSailConnectionWrapper {
 	private void removeInformingGraph(URI activity, URI entity, Resource subj,
 			URI pred, Value obj, Resource ctx) throws SailException {
 		reify(activity, entity, subj, pred, obj, ctx);
+		removedLive(subj, pred, obj, ctx);
 		super.removeStatements(subj, pred, obj, ctx);
 	}
 
 	private void reify(URI activity, URI entity, Resource subj, URI pred,
-			Value obj, Resource ctx) throws SailException {
+			Value obj, Resource ctx) {
 		String ns = activity.stringValue();
+		AuditLevel level = getAuditLevel(ctx);
+		if (level == AuditLevel.OFF)
+			return;
 		if (ctx instanceof URI) {
-			super.addStatement(activity, informedBy, ctx, activity);
+			provenance.add(activity, informedBy, ctx, activity);
 		}
-		if (entity == null || GENERATED_BY.equals(pred.stringValue()))
+		if (entity == null || GENERATED_BY.equals(pred.stringValue())
+				|| !level.includes(AuditLevel.ENTITY))
 			return;
 		URI operation = vf.createURI(ns + "#" + hash(ctx, entity));
 		if (ctx instanceof URI) {
-			super.addStatement(ctx, qualifiedUsage, operation, activity);
+			provenance.add(ctx, qualifiedUsage, operation, activity);
 		}
-		super.addStatement(activity, qualifiedUsage, operation, activity);
-		super.addStatement(operation, usedEntity, entity, activity);
+		provenance.add(activity, qualifiedUsage, operation, activity);
+		provenance.add(operation, usedEntity, entity, activity);
+		if (!level.includes(AuditLevel.STATEMENT))
+			return;
 		Resource node = vf.createBNode();
-		super.addStatement(operation, changed, node, activity);
-		super.addStatement(node, subject, subj, activity);
-		super.addStatement(node, predicate, pred, activity);
-		super.addStatement(node, object, obj, activity);
+		provenance.add(operation, changed, node, activity);
+		provenance.add(node, subject, subj, activity);
+		provenance.add(node, predicate, pred, activity);
+		provenance.add(node, object, obj, activity);
 	}
 
 	private String hash(Resource ctx, Resource entity) {
 		return Integer.toHexString(31 * ctx.hashCode() + entity.hashCode());
 	}
+
+	/**
+	 * Writes a statement that was not requested by the user.
+	 */
+	private void audit(Resource subj, URI pred, Value obj, Resource ctx)
+			throws SailException {
+		auditStatements++;
+		super.addStatement(subj, pred, obj, ctx);
+	}
+
+	private void write(Resource subj, URI pred, Value obj,
+			Resource... contexts) throws SailException {
+		super.addStatement(subj, pred, obj, contexts);
+	}
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.auditing;
+
+/**
+ * Management interface of an {@link AuditingSail} that is registered with the
+ * platform MBeanServer when the sail is initialized.
+ * 
+ * @author James Leigh
+ * 
+ */
+public interface AuditingMXBean {
+
+	/**
+	 * Number of audited transactions that have been committed.
+	 */
+	long getCommitCount();
+
+	/**
+	 * Number of statements added and removal operations requested by users.
+	 */
+	long getUserStatementCount();
+
+	/**
+	 * Number of statements written to record the provenance of user changes.
+	 */
+	long getAuditStatementCount();
+
+	/**
+	 * Ratio of audit statements to user statements, or zero if no user
+	 * statement has been recorded.
+	 */
+	double getAuditOverhead();
+
+	/**
+	 * Total milliseconds spent committing the audit metadata of transactions,
+	 * before the underlying store commits.
+	 */
+	long getAuditCommitTime();
+
+	/**
+	 * Total milliseconds the underlying store spent committing transactions.
+	 */
+	long getStoreCommitTime();
+
+	/**
+	 * Total milliseconds spent recording removed statements of a transaction
+	 * when the number of them is within maxArchive.
+	 */
+	long getArchiveTime();
+
+	/**
+	 * Number of times a modified graph was checked for live statements.
+	 */
+	long getObsoleteCheckCount();
+
+	/**
+	 * Total milliseconds spent checking if modified graphs are obsolete.
+	 */
+	long getObsoleteCheckTime();
+
+	/**
+	 * Total milliseconds spent removing the previous revisions of resources.
+	 */
+	long getRevisionRemovalTime();
+
+	/**
+	 * Number of times the buffered audit metadata of a connection overflowed
+	 * to disk.
+	 */
+	long getMetadataSpillCount();
+
+	long getPurgedTransactions();
+
+	long getTrimmedTransactions();
+
+	/**
+	 * Total milliseconds spent purging obsolete transactions.
+	 */
+	long getPurgeTime();
+
+	/**
+	 * Total milliseconds spent trimming recent transaction markers.
+	 */
+	long getTrimTime();
+
+	/**
+	 * Number of recent transaction markers waiting to be trimmed.
+	 */
+	int getPendingTrims();
+
+	/**
+	 * Resets all counters to zero. The purge and trim totals are not affected.
+	 */
+	void resetCounters();
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.auditing;
+
+import info.aduna.iteration.CloseableIteration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.sail.Sail;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.auditing.vocabulary.Audit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Purges obsolete transactions and trims recent transaction markers on a
+ * background thread using its own connection, committing in batches.
+ * 
+ * @author James Leigh
+ * 
+ */
+class AuditingMaintenance {
+	private static final int PROGRESS_BATCHES = 64;
+	private final Logger logger = LoggerFactory
+			.getLogger(AuditingMaintenance.class);
+	private final Queue<Resource> trimming = new ConcurrentLinkedQueue<Resource>();
+	private final AtomicBoolean trimScheduled = new AtomicBoolean();
+	private final AtomicBoolean purgeScheduled = new AtomicBoolean();
+	private final AtomicLong purgeBefore = new AtomicLong(Long.MIN_VALUE);
+	private final AtomicLong trimmed = new AtomicLong();
+	private final AtomicLong purged = new AtomicLong();
+	private final AtomicLong trimTime = new AtomicLong();
+	private final AtomicLong purgeTime = new AtomicLong();
+	private final Sail store;
+	private volatile int batchSize = 256;
+	private volatile long batchPause;
+	private volatile long lastPurgeDuration;
+	private volatile boolean stopping;
+	private volatile AuditArchive archive;
+	private ExecutorService executor;
+
+	public AuditingMaintenance(Sail store) {
+		this.store = store;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	public long getBatchPause() {
+		return batchPause;
+	}
+
+	public void setBatchPause(long batchPause) {
+		this.batchPause = Math.max(0, batchPause);
+	}
+
+	public AuditArchive getArchive() {
+		return archive;
+	}
+
+	/**
+	 * Where obsolete transactions are written before they are purged.
+	 */
+	public void setArchive(AuditArchive archive) {
+		this.archive = archive;
+	}
+
+	public long getTrimmedTransactions() {
+		return trimmed.get();
+	}
+
+	public long getPurgedTransactions() {
+		return purged.get();
+	}
+
+	public long getTrimTime() {
+		return trimTime.get();
+	}
+
+	public long getPurgeTime() {
+		return purgeTime.get();
+	}
+
+	public long getLastPurgeDuration() {
+		return lastPurgeDuration;
+	}
+
+	public int getPendingTrims() {
+		return trimming.size();
+	}
+
+	public boolean isPurging() {
+		return purgeScheduled.get();
+	}
+
+	public synchronized void start() {
+		if (executor == null) {
+			stopping = false;
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Auditing Maintenance "
+							+ store);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stops any purge in progress at the end of its current batch and waits
+	 * for the pending trims to be written.
+	 */
+	public void stop() throws SailException {
+		ExecutorService shutdown;
+		synchronized (this) {
+			shutdown = executor;
+			executor = null;
+			stopping = true;
+		}
+		if (shutdown != null) {
+			shutdown.shutdown();
+			try {
+				while (!shutdown.awaitTermination(10, TimeUnit.SECONDS)) {
+					logger.warn("Waiting for auditing maintenance of {}", store);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SailException(e);
+			}
+		}
+		if (!trimming.isEmpty()) {
+			trimRecent();
+		}
+	}
+
+	/**
+	 * Waits for the maintenance scheduled before this call to complete.
+	 * 
+	 * @return <code>false</code> if the timeout elapsed first
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws SailException {
+		Future<?> future;
+		synchronized (this) {
+			if (executor == null)
+				return true;
+			future = executor.submit(new Runnable() {
+				public void run() {
+					// all previously submitted tasks have completed
+				}
+			});
+		}
+		try {
+			future.get(timeout, unit);
+			return true;
+		} catch (TimeoutException e) {
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SailException(e);
+		} catch (ExecutionException e) {
+			throw new SailException(e.getCause());
+		}
+	}
+
+	/**
+	 * Removes the audit:RecentTransaction marker of this transaction in the
+	 * background.
+	 */
+	public void trim(Resource trx) {
+		trimming.add(trx);
+		if (trimScheduled.compareAndSet(false, true)) {
+			boolean submitted = submit(new Runnable() {
+				public void run() {
+					try {
+						do {
+							try {
+								trimRecent();
+							} finally {
+								trimScheduled.set(false);
+							}
+						} while (!trimming.isEmpty()
+								&& trimScheduled.compareAndSet(false, true));
+					} catch (SailException e) {
+						logger.error(e.toString(), e);
+					} catch (RuntimeException e) {
+						logger.error(e.toString(), e);
+					}
+				}
+			});
+			if (!submitted) {
+				// written when stopped
+				trimScheduled.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Removes, in the background, the obsolete transactions that were
+	 * committed before the given time. Requests made while a purge is running
+	 * are combined into a single purge that follows it.
+	 */
+	public void purge(long earlier) {
+		long before = purgeBefore.get();
+		while (before < earlier && !purgeBefore.compareAndSet(before, earlier)) {
+			before = purgeBefore.get();
+		}
+		if (purgeScheduled.compareAndSet(false, true)) {
+			boolean submitted = submit(new Runnable() {
+				public void run() {
+					try {
+						do {
+							try {
+								long earlier = purgeBefore.getAndSet(Long.MIN_VALUE);
+								if (earlier > Long.MIN_VALUE) {
+									purgeEarlier(earlier);
+								}
+							} finally {
+								purgeScheduled.set(false);
+							}
+						} while (purgeBefore.get() > Long.MIN_VALUE && !stopping
+								&& purgeScheduled.compareAndSet(false, true));
+					} catch (SailException e) {
+						logger.error(e.toString(), e);
+					} catch (RuntimeException e) {
+						logger.error(e.toString(), e);
+					}
+				}
+			});
+			if (!submitted) {
+				purgeScheduled.set(false);
+			}
+		}
+	}
+
+	private synchronized boolean submit(Runnable task) {
+		if (executor == null)
+			return false;
+		executor.execute(task);
+		return true;
+	}
+
+	private void trimRecent() throws SailException {
+		long start = System.currentTimeMillis();
+		SailConnection con = store.getConnection();
+		try {
+			int count = 0;
+			Resource trx;
+			while ((trx = trimming.poll()) != null) {
+				con.removeStatements(trx, RDF.TYPE, Audit.RECENT);
+				if (++count >= batchSize) {
+					con.commit();
+					trimmed.addAndGet(count);
+					count = 0;
+					pause();
+				}
+			}
+			con.commit();
+			trimmed.addAndGet(count);
+		} finally {
+			con.close();
+			trimTime.addAndGet(System.currentTimeMillis() - start);
+		}
+	}
+
+	private void purgeEarlier(long earlier) throws SailException {
+		long start = System.currentTimeMillis();
+		SailConnection con = store.getConnection();
+		try {
+			List<Resource> obsolete = loadObsolete(con);
+			long count = 0;
+			int batch = 0;
+			long batches = 0;
+			for (Resource trx : obsolete) {
+				if (stopping)
+					break;
+				long time = getCommitTime(trx, con);
+				if (time < earlier) {
+					AuditArchive archive = this.archive;
+					if (archive != null) {
+						archive.archive(trx, time, con);
+					}
+					con.removeStatements(null, null, null, trx);
+					con.removeStatements(trx, RDF.TYPE, Audit.OBSOLETE);
+					count++;
+					if (++batch >= batchSize) {
+						con.commit();
+						purged.addAndGet(batch);
+						batch = 0;
+						if (++batches % PROGRESS_BATCHES == 0) {
+							logger.info("Purged {} of {} obsolete transactions",
+									count, obsolete.size());
+						}
+						pause();
+					}
+				}
+			}
+			con.commit();
+			purged.addAndGet(batch);
+			if (count > 0) {
+				long duration = System.currentTimeMillis() - start;
+				logger.info("Purged {} obsolete transactions in {} ms",
+						count, duration);
+			}
+		} finally {
+			con.close();
+			lastPurgeDuration = System.currentTimeMillis() - start;
+			purgeTime.addAndGet(lastPurgeDuration);
+		}
+	}
+
+	private List<Resource> loadObsolete(SailConnection con)
+			throws SailException {
+		List<Resource> list = new ArrayList<Resource>();
+		CloseableIteration<? extends Statement, SailException> stmts;
+		stmts = con.getStatements(null, RDF.TYPE, Audit.OBSOLETE, true);
+		try {
+			while (stmts.hasNext()) {
+				list.add(stmts.next().getSubject());
+			}
+		} finally {
+			stmts.close();
+		}
+		return list;
+	}
+
+	private long getCommitTime(Resource trx, SailConnection con)
+			throws SailException {
+		CloseableIteration<? extends Statement, SailException> c;
+		c = con.getStatements(trx, Audit.COMMITTED_ON, null, false);
+		try {
+			if (c.hasNext()) {
+				Value lit = c.next().getObject();
+				if (lit instanceof Literal) {
+					return ((Literal) lit).calendarValue().toGregorianCalendar().getTimeInMillis();
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			// bad data
+			return -1;
+		} finally {
+			c.close();
+		}
+		return -1;
+	}
+
+	private void pause() throws SailException {
+		long pause = batchPause;
+		if (pause > 0 && !stopping) {
+			try {
+				Thread.sleep(pause);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SailException(e);
+			}
+		}
+	}
+
+}
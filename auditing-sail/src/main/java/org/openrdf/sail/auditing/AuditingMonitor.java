@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.auditing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the cost of auditing the transactions of an {@link AuditingSail}.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class AuditingMonitor implements AuditingMXBean {
+	private final AuditingSail sail;
+	private final AtomicLong commits = new AtomicLong();
+	private final AtomicLong userStatements = new AtomicLong();
+	private final AtomicLong auditStatements = new AtomicLong();
+	private final AtomicLong auditCommit = new AtomicLong();
+	private final AtomicLong storeCommit = new AtomicLong();
+	private final AtomicLong archive = new AtomicLong();
+	private final AtomicLong obsoleteChecks = new AtomicLong();
+	private final AtomicLong obsoleteCheck = new AtomicLong();
+	private final AtomicLong revisionRemoval = new AtomicLong();
+	private final AtomicLong metadataSpills = new AtomicLong();
+
+	public AuditingMonitor(AuditingSail sail) {
+		this.sail = sail;
+	}
+
+	public long getCommitCount() {
+		return commits.get();
+	}
+
+	public long getUserStatementCount() {
+		return userStatements.get();
+	}
+
+	public long getAuditStatementCount() {
+		return auditStatements.get();
+	}
+
+	public double getAuditOverhead() {
+		long user = userStatements.get();
+		if (user == 0)
+			return 0;
+		return (double) auditStatements.get() / user;
+	}
+
+	public long getAuditCommitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(auditCommit.get());
+	}
+
+	public long getStoreCommitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(storeCommit.get());
+	}
+
+	public long getArchiveTime() {
+		return TimeUnit.NANOSECONDS.toMillis(archive.get());
+	}
+
+	public long getObsoleteCheckCount() {
+		return obsoleteChecks.get();
+	}
+
+	public long getObsoleteCheckTime() {
+		return TimeUnit.NANOSECONDS.toMillis(obsoleteCheck.get());
+	}
+
+	public long getRevisionRemovalTime() {
+		return TimeUnit.NANOSECONDS.toMillis(revisionRemoval.get());
+	}
+
+	public long getMetadataSpillCount() {
+		return metadataSpills.get();
+	}
+
+	public long getPurgedTransactions() {
+		return sail.getPurgedTransactions();
+	}
+
+	public long getTrimmedTransactions() {
+		return sail.getTrimmedTransactions();
+	}
+
+	public long getPurgeTime() {
+		return sail.getPurgeTime();
+	}
+
+	public long getTrimTime() {
+		return sail.getTrimTime();
+	}
+
+	public int getPendingTrims() {
+		return sail.getPendingTrims();
+	}
+
+	public void resetCounters() {
+		commits.set(0);
+		userStatements.set(0);
+		auditStatements.set(0);
+		auditCommit.set(0);
+		storeCommit.set(0);
+		archive.set(0);
+		obsoleteChecks.set(0);
+		obsoleteCheck.set(0);
+		revisionRemoval.set(0);
+		metadataSpills.set(0);
+	}
+
+	/**
+	 * Records a committed transaction, where the audit work started at the
+	 * given {@link System#nanoTime()} and the store commit at the second.
+	 */
+	public void committed(long user, long audit, long auditStart,
+			long storeStart) {
+		long end = System.nanoTime();
+		commits.incrementAndGet();
+		userStatements.addAndGet(user);
+		auditStatements.addAndGet(audit);
+		auditCommit.addAndGet(storeStart - auditStart);
+		storeCommit.addAndGet(end - storeStart);
+	}
+
+	/**
+	 * Records the time spent archiving removed statements since the given
+	 * {@link System#nanoTime()}.
+	 */
+	public void archived(long start) {
+		archive.addAndGet(System.nanoTime() - start);
+	}
+
+	public void obsoleteChecked(long start) {
+		obsoleteChecks.incrementAndGet();
+		obsoleteCheck.addAndGet(System.nanoTime() - start);
+	}
+
+	public void revisionsRemoved(long start) {
+		revisionRemoval.addAndGet(System.nanoTime() - start);
+	}
+
+	public void metadataSpilled() {
+		metadataSpills.incrementAndGet();
+	}
+}
@@ -31,20 +31,33 @@ package org.openrdf.sail.auditing;
 
 import info.aduna.iteration.CloseableIteration;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.Duration;
 
-import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
@@ -55,6 +68,8 @@ import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.auditing.vocabulary.Audit;
 import org.openrdf.sail.helpers.SailWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Saves triples to a unique graph when no graph is specified.
@@ -63,15 +78,47 @@ public class AuditingSail extends SailWrapper {
 	private static final String prefix = "t"
 			+ Long.toHexString(System.currentTimeMillis()) + "x";
 	private static final AtomicLong seq = new AtomicLong(0);
+	private static final int MAX_LIVE_COUNTS = 65536;
+	private static final String MBEAN_DOMAIN = "org.openrdf.sail.auditing";
+	private final Logger logger = LoggerFactory.getLogger(AuditingSail.class);
+	private final AuditingMonitor monitor = new AuditingMonitor(this);
+	private ObjectName mbean;
 	private String ns;
+	private AuditLevel auditLevel = AuditLevel.STATEMENT;
+	private final Map<Resource, AuditLevel> graphAuditLevels = new ConcurrentHashMap<Resource, AuditLevel>();
 	private boolean archiving;
 	private int maxArchive;
 	private int minRecent;
 	private int maxRecent;
 	private Duration purgeAfter;
 	private Queue<Resource> recent = null;
-	private final Set<Resource> predecessors = new HashSet<Resource>();
-	private long nextPurge = Long.MAX_VALUE;
+	/** latest version of the committed transactions not yet succeeded */
+	private final AtomicReference<Frontier> frontier = new AtomicReference<Frontier>(
+			new Frontier(null, 0, 0, null));
+	/** committed transactions by sequence, pruned once they are succeeded */
+	private final ConcurrentNavigableMap<Long, Resource> unsucceeded = new ConcurrentSkipListMap<Long, Resource>();
+	/** number of non-audit statements in recently modified graphs */
+	private final Map<Resource, LiveCount> liveCounts = new LinkedHashMap<Resource, LiveCount>(
+			1024, 0.75f, true) {
+		private static final long serialVersionUID = -2580468296823541633L;
+
+		protected boolean removeEldestEntry(Entry<Resource, LiveCount> eldest) {
+			if (size() <= MAX_LIVE_COUNTS)
+				return false;
+			liveEvicted = Math.max(liveEvicted, eldest.getValue().sequence);
+			return true;
+		}
+	};
+	/** number of commits recorded in liveCounts */
+	private long liveSequence;
+	/** the latest sequence of the graphs no longer in liveCounts */
+	private long liveEvicted;
+	private volatile long nextPurge = Long.MAX_VALUE;
+	private int maintenanceBatchSize = 256;
+	private long maintenancePause;
+	private AuditingMaintenance maintenance;
+	private File archiveDir;
+	private AuditArchive archive;
 
 	public AuditingSail() {
 		super();
@@ -89,6 +136,58 @@ public class AuditingSail extends SailWrapper {
 		this.ns = ns;
 	}
 
+	/**
+	 * The audit level of changes to graphs without their own level, including
+	 * statements added without a graph.
+	 */
+	public AuditLevel getAuditLevel() {
+		return auditLevel;
+	}
+
+	public void setAuditLevel(AuditLevel auditLevel) {
+		if (auditLevel == null)
+			throw new IllegalArgumentException("No audit level");
+		this.auditLevel = auditLevel;
+	}
+
+	public AuditLevel getAuditLevel(Resource graph) {
+		if (graph == null)
+			return auditLevel;
+		AuditLevel level = graphAuditLevels.get(graph);
+		if (level == null)
+			return auditLevel;
+		return level;
+	}
+
+	/**
+	 * Sets the audit level of changes to the given named graph, or reverts it
+	 * to the default if level is <code>null</code>.
+	 */
+	public void setAuditLevel(Resource graph, AuditLevel level) {
+		if (level == null) {
+			graphAuditLevels.remove(graph);
+		} else {
+			graphAuditLevels.put(graph, level);
+		}
+	}
+
+	public Map<Resource, AuditLevel> getGraphAuditLevels() {
+		return new HashMap<Resource, AuditLevel>(graphAuditLevels);
+	}
+
+	/**
+	 * The highest audit level of any graph.
+	 */
+	AuditLevel getMaximumAuditLevel() {
+		AuditLevel max = auditLevel;
+		for (AuditLevel level : graphAuditLevels.values()) {
+			if (level.includes(max)) {
+				max = level;
+			}
+		}
+		return max;
+	}
+
 	public boolean isArchiving() {
 		return archiving;
 	}
@@ -134,6 +233,121 @@ public class AuditingSail extends SailWrapper {
 		this.purgeAfter = purgeAfter;
 	}
 
+	/**
+	 * Number of transactions purged or trimmed by the background maintenance
+	 * before it commits.
+	 */
+	public int getMaintenanceBatchSize() {
+		return maintenanceBatchSize;
+	}
+
+	public void setMaintenanceBatchSize(int maintenanceBatchSize) {
+		this.maintenanceBatchSize = maintenanceBatchSize;
+		if (maintenance != null) {
+			maintenance.setBatchSize(maintenanceBatchSize);
+		}
+	}
+
+	/**
+	 * Milliseconds the background maintenance sleeps between batches to limit
+	 * its load on the store.
+	 */
+	public long getMaintenancePause() {
+		return maintenancePause;
+	}
+
+	public void setMaintenancePause(long maintenancePause) {
+		this.maintenancePause = maintenancePause;
+		if (maintenance != null) {
+			maintenance.setBatchPause(maintenancePause);
+		}
+	}
+
+	/**
+	 * Directory where obsolete transactions are archived before they are
+	 * purged, relative to the data directory, or <code>null</code> to discard
+	 * them.
+	 */
+	public File getArchiveDir() {
+		return archiveDir;
+	}
+
+	public void setArchiveDir(File archiveDir) {
+		this.archiveDir = archiveDir;
+	}
+
+	/**
+	 * The purged transactions or <code>null</code> if they are not archived.
+	 */
+	public AuditArchive getArchive() {
+		return archive;
+	}
+
+	/**
+	 * The cost of auditing transactions, which is also exposed via JMX.
+	 */
+	public AuditingMonitor getMonitor() {
+		return monitor;
+	}
+
+	public long getPurgedTransactions() {
+		if (maintenance == null)
+			return 0;
+		return maintenance.getPurgedTransactions();
+	}
+
+	public long getTrimmedTransactions() {
+		if (maintenance == null)
+			return 0;
+		return maintenance.getTrimmedTransactions();
+	}
+
+	/**
+	 * Total milliseconds spent purging obsolete transactions.
+	 */
+	public long getPurgeTime() {
+		if (maintenance == null)
+			return 0;
+		return maintenance.getPurgeTime();
+	}
+
+	/**
+	 * Total milliseconds spent trimming recent transaction markers.
+	 */
+	public long getTrimTime() {
+		if (maintenance == null)
+			return 0;
+		return maintenance.getTrimTime();
+	}
+
+	public long getLastPurgeDuration() {
+		if (maintenance == null)
+			return 0;
+		return maintenance.getLastPurgeDuration();
+	}
+
+	public int getPendingTrims() {
+		if (maintenance == null)
+			return 0;
+		return maintenance.getPendingTrims();
+	}
+
+	public boolean isPurging() {
+		return maintenance != null && maintenance.isPurging();
+	}
+
+	/**
+	 * Waits for the purge and trimming scheduled so far to complete.
+	 * 
+	 * @return <code>false</code> if the timeout elapsed first
+	 */
+	public boolean awaitMaintenance(long timeout, TimeUnit unit)
+			throws SailException {
+		if (maintenance == null)
+			return true;
+		return maintenance.await(timeout, unit);
+	}
+
 	@Override
 	public void initialize() throws SailException {
 		super.initialize();
@@ -147,26 +361,55 @@ public class AuditingSail extends SailWrapper {
 			if (recent != null) {
 				recent.addAll(set);
 			}
-			removePredecessorsFrom(set, con);
-			this.predecessors.addAll(set);
-			if (purgeAfter != null) {
-				long now = System.currentTimeMillis();
-				purgeObsolete(now, con);
-			}
-			con.commit();
+			Set<Resource> members = new HashSet<Resource>(set);
+			removePredecessorsFrom(members, con);
+			this.frontier.set(createFrontier(members));
 		} finally {
 			con.close();
 		}
+		maintenance = new AuditingMaintenance(getBaseSail());
+		maintenance.setBatchSize(maintenanceBatchSize);
+		maintenance.setBatchPause(maintenancePause);
+		if (archiveDir != null) {
+			File dir = archiveDir;
+			if (!dir.isAbsolute() && getDataDir() != null) {
+				dir = new File(getDataDir(), dir.getPath());
+			}
+			try {
+				archive = new AuditArchive(dir);
+			} catch (IOException e) {
+				throw new SailException(e);
+			}
+			maintenance.setArchive(archive);
+		}
+		maintenance.start();
+		mbean = registerMBean();
+		if (purgeAfter != null) {
+			purgeObsolete(System.currentTimeMillis());
+		}
 	}
 
 	@Override
 	public void shutDown() throws SailException {
-		if (recent == null && !predecessors.isEmpty()) {
+		unregisterMBean(mbean);
+		mbean = null;
+		if (maintenance != null) {
+			maintenance.stop();
+		}
+		if (archive != null) {
+			try {
+				archive.close();
+			} catch (IOException e) {
+				throw new SailException(e);
+			}
+		}
+		Collection<Resource> members = getUnsucceeded(frontier.get());
+		if (recent == null && !members.isEmpty()) {
 			SailConnection con = super.getConnection();
 			try {
 				// record predecessors
 				con.removeStatements(null, RDF.TYPE, Audit.RECENT);
-				for (Resource trx : predecessors) {
+				for (Resource trx : members) {
 					con.addStatement(trx, RDF.TYPE, Audit.RECENT);
 				}
 				con.commit();
@@ -180,7 +423,7 @@ public class AuditingSail extends SailWrapper {
 	@Override
 	public SailConnection getConnection() throws SailException {
 		try {
-			return new AuditingConnection(this, super.getConnection(), getPredecessors());
+			return new AuditingConnection(this, super.getConnection(), frontier.get());
 		} catch (DatatypeConfigurationException e) {
 			throw new SailException(e);
 		}
@@ -194,27 +437,29 @@ public class AuditingSail extends SailWrapper {
 		return String.valueOf(getDataDir());
 	}
 
-	protected Set<Resource> getPredecessors() {
-		synchronized (predecessors) {
-			return new HashSet<Resource>(predecessors);
-		}
+	/**
+	 * The committed transactions that have not yet been succeeded.
+	 */
+	protected Collection<Resource> getPredecessors() {
+		return getUnsucceeded(frontier.get());
 	}
 
 	void recent(URI trx, SailConnection con) throws SailException {
 		if (recent != null) {
-			synchronized (this.predecessors) {
-				int size = predecessors.size();
+			synchronized (recent) {
+				Frontier current = frontier.get();
+				int size = current.size();
 				if (recent.size() >= maxRecent && recent.size() > size) {
 					while ((recent.size() >= minRecent || recent.size() >= maxRecent)
 							&& recent.size() > size) {
 						Resource old = recent.poll();
 						if (old == null)
 							break;
-						if (predecessors.contains(old)) {
+						if (getUnsucceeded(current).contains(old)) {
 							// old has not yet been succeeded
 							recent.add(old);
 						} else {
-							con.removeStatements(old, RDF.TYPE, Audit.RECENT);
+							maintenance.trim(old);
 						}
 					}
 				}
@@ -224,21 +469,96 @@ public class AuditingSail extends SailWrapper {
 		}
 	}
 
-	void committed(URI trx, Set<? extends Resource> set) throws SailException {
-		synchronized (this.predecessors) {
-			this.predecessors.removeAll(set);
-			this.predecessors.add(trx);
+	/**
+	 * Records a committed transaction that had seen the given version.
+	 * 
+	 * @return the version that includes this transaction
+	 */
+	Frontier committed(URI trx, Frontier seen) throws SailException {
+		Frontier after;
+		URI merge = null;
+		while (true) {
+			Frontier before = frontier.get();
+			long sequence = before.getSequence() + 1;
+			long succeeded = Math.max(before.getSucceeded(), seen.getSequence());
+			if (succeeded == sequence - 1) {
+				// no other transaction has committed since this one started
+				after = new Frontier(trx, sequence, succeeded, null);
+			} else {
+				if (merge == null) {
+					merge = nextTransaction();
+				}
+				Frontier committed = new Frontier(trx, sequence, sequence - 1, null);
+				Frontier[] merged = new Frontier[] { before, committed };
+				after = new Frontier(merge, sequence, succeeded, merged);
+			}
+			if (frontier.compareAndSet(before, after))
+				break;
 		}
+		unsucceeded.put(after.getSequence(), trx);
+		unsucceeded.headMap(after.getSucceeded(), true).clear();
 		if (purgeAfter != null && nextPurge < Long.MAX_VALUE) {
 			long now = System.currentTimeMillis();
 			if (now >= nextPurge) {
-				SailConnection con = super.getConnection();
-				try {
-					purgeObsolete(now, con);
-					con.commit();
-				} finally {
-					con.close();
+				purgeObsolete(now);
+			}
+		}
+		return after;
+	}
+
+	/**
+	 * The committed number of non-audit statements in this graph or
+	 * <code>null</code> if it is not known.
+	 */
+	Long getLiveCount(Resource ctx) {
+		synchronized (liveCounts) {
+			LiveCount live = liveCounts.get(ctx);
+			return live == null ? null : live.count;
+		}
+	}
+
+	/**
+	 * The number of commits that have been recorded in the live counts. Every
+	 * commit with a smaller or equal sequence is visible to new reads.
+	 */
+	long getLiveSequence() {
+		synchronized (liveCounts) {
+			return liveSequence;
+		}
+	}
+
+	/**
+	 * Records the changes in the number of non-audit statements of graphs in
+	 * a committed transaction. A graph that another transaction changed since
+	 * the given sequence is no longer counted, as this transaction did not
+	 * see that change.
+	 * 
+	 * @param deltas
+	 *            changes to graphs whose count may be known
+	 * @param counts
+	 *            graphs whose count was computed in the transaction
+	 * @param sequence
+	 *            the live sequence before the transaction read anything
+	 */
+	void liveCounted(Map<Resource, Long> deltas, Map<Resource, Long> counts,
+			long sequence) {
+		if (deltas.isEmpty() && counts.isEmpty())
+			return;
+		synchronized (liveCounts) {
+			long seq = ++liveSequence;
+			Set<Resource> graphs = new HashSet<Resource>(deltas.keySet());
+			graphs.addAll(counts.keySet());
+			for (Resource ctx : graphs) {
+				LiveCount live = liveCounts.get(ctx);
+				long changed = live == null ? liveEvicted : live.sequence;
+				Long count = null;
+				if (changed <= sequence && counts.containsKey(ctx)) {
+					count = counts.get(ctx);
+				} else if (changed <= sequence && live != null
+						&& live.count != null) {
+					count = live.count + deltas.get(ctx);
 				}
+				liveCounts.put(ctx, new LiveCount(count, seq));
 			}
 		}
 	}
@@ -257,67 +577,95 @@ public class AuditingSail extends SailWrapper {
 		return set;
 	}
 
-	private void removePredecessorsFrom(Set<Resource> set, SailConnection con) throws SailException {
-		CloseableIteration<? extends Statement, SailException> stmts;
-		// trim predecessors to a minimal set
-		for (Resource predecessor : new ArrayList<Resource>(set)) {
-			stmts = con.getStatements(predecessor, Audit.PREDECESSOR, null, true);
-			try {
-				while (stmts.hasNext()) {
-					Value trx = stmts.next().getObject();
-					set.remove(trx);
-				}
-			} finally {
-				stmts.close();
-			}
+	private Frontier createFrontier(Set<Resource> members) {
+		if (members.isEmpty())
+			return new Frontier(null, 0, 0, null);
+		int size = members.size();
+		long sequence = 1 - size;
+		Frontier[] merged = new Frontier[size];
+		for (Resource trx : members) {
+			unsucceeded.put(sequence, trx);
+			merged[(int) (sequence + size - 1)] = new Frontier(trx, sequence,
+					sequence - 1, null);
+			sequence++;
 		}
+		if (size == 1)
+			return merged[0];
+		return new Frontier(nextTransaction(), 0, -size, merged);
 	}
 
-	private void purgeObsolete(long now, SailConnection con)
-			throws SailException {
-		Date earlier = new Date(now);
-		purgeAfter.negate().addTo(earlier);
-		purgeEarlier(earlier.getTime(), con);
-		Date next = new Date(now);
-		purgeAfter.addTo(next);
-		nextPurge = next.getTime();
+	private Collection<Resource> getUnsucceeded(Frontier current) {
+		return unsucceeded.tailMap(current.getSucceeded(), false).values();
 	}
 
-	private void purgeEarlier(long earlier, SailConnection con)
-			throws SailException {
+	private void removePredecessorsFrom(Set<Resource> set, SailConnection con) throws SailException {
+		if (set.isEmpty())
+			return;
 		CloseableIteration<? extends Statement, SailException> stmts;
-		stmts = con.getStatements(null, RDF.TYPE, Audit.OBSOLETE, true);
+		// trim predecessors to a minimal set, reading only their own graphs
+		Resource[] graphs = set.toArray(new Resource[set.size()]);
+		stmts = con.getStatements(null, Audit.PREDECESSOR, null, true, graphs);
 		try {
 			while (stmts.hasNext()) {
-				Resource trx = stmts.next().getSubject();
-				long time = getCommitTime(trx, con);
-				if (time < earlier) {
-					con.removeStatements(null, null, null, trx);
-					con.removeStatements(trx, RDF.TYPE, Audit.OBSOLETE);
-				}
+				Value trx = stmts.next().getObject();
+				set.remove(trx);
 			}
 		} finally {
 			stmts.close();
 		}
 	}
 
-	private long getCommitTime(Resource trx, SailConnection con)
-			throws SailException {
-		CloseableIteration<? extends Statement, SailException> c;
-		c = con.getStatements(trx, Audit.COMMITTED_ON, null, false);
+	private ObjectName registerMBean() {
 		try {
-			if (c.hasNext()) {
-				Value lit = c.next().getObject();
-				if (lit instanceof Literal) {
-					return ((Literal) lit).calendarValue().toGregorianCalendar().getTimeInMillis();
-				}
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			String id = Integer.toHexString(System.identityHashCode(this));
+			ObjectName name = new ObjectName(MBEAN_DOMAIN
+					+ ":type=AuditingSail,dataDir="
+					+ ObjectName.quote(String.valueOf(getDataDir())) + ",id="
+					+ id);
+			server.registerMBean(monitor, name);
+			return name;
+		} catch (JMException e) {
+			logger.warn(e.toString(), e);
+			return null;
+		}
+	}
+
+	private void unregisterMBean(ObjectName name) {
+		if (name == null)
+			return;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
 			}
-		} catch (IllegalArgumentException e) {
-			// bad data
-			return -1;
-		} finally {
-			c.close();
+		} catch (JMException e) {
+			logger.warn(e.toString(), e);
+		}
+	}
+
+	private synchronized void purgeObsolete(long now) {
+		if (nextPurge == Long.MAX_VALUE || now >= nextPurge) {
+			Date earlier = new Date(now);
+			purgeAfter.negate().addTo(earlier);
+			maintenance.purge(earlier.getTime());
+			Date next = new Date(now);
+			purgeAfter.addTo(next);
+			nextPurge = next.getTime();
+		}
+	}
+
+	/**
+	 * The number of live statements of a graph, or <code>null</code> if not
+	 * known, and the sequence of the commit that last changed it.
+	 */
+	private static class LiveCount {
+		final Long count;
+		final long sequence;
+
+		LiveCount(Long count, long sequence) {
+			this.count = count;
+			this.sequence = sequence;
 		}
-		return -1;
 	}
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.auditing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openrdf.model.Resource;
+
+/**
+ * An immutable version of the committed transactions that have not yet been
+ * succeeded. A transaction that has seen this version succeeds its node
+ * alone. When transactions commit concurrently the node is a merge of the
+ * previous version and the committed transaction, so every commit adds at
+ * most two links, written by the first transaction that succeeds the merge.
+ * 
+ * @author James Leigh
+ * 
+ */
+class Frontier {
+	private final Resource node;
+	private final long sequence;
+	private final long succeeded;
+	/** versions the node succeeds, until its links have been committed */
+	private volatile Frontier[] merged;
+
+	/**
+	 * @param node
+	 *            a committed transaction or a merge node, if
+	 *            <code>merged</code> is not <code>null</code>
+	 * @param sequence
+	 *            the number of transactions committed in this version
+	 * @param succeeded
+	 *            the greatest sequence seen by a committed transaction; every
+	 *            transaction committed after it has not yet been succeeded
+	 * @param merged
+	 *            the versions a merge node succeeds or <code>null</code>
+	 */
+	Frontier(Resource node, long sequence, long succeeded, Frontier[] merged) {
+		this.node = node;
+		this.sequence = sequence;
+		this.succeeded = succeeded;
+		this.merged = merged;
+	}
+
+	/**
+	 * The resource a transaction that has seen this version succeeds or
+	 * <code>null</code> if there are no committed transactions.
+	 */
+	Resource getNode() {
+		return node;
+	}
+
+	long getSequence() {
+		return sequence;
+	}
+
+	long getSucceeded() {
+		return succeeded;
+	}
+
+	/** The number of committed transactions that have not been succeeded */
+	int size() {
+		return (int) (sequence - succeeded);
+	}
+
+	/**
+	 * The versions the merge node succeeds or <code>null</code> if this node
+	 * is a transaction or its links have already been committed.
+	 */
+	Frontier[] getMerged() {
+		return merged;
+	}
+
+	/**
+	 * This merge node and the merge nodes it succeeds whose links have not
+	 * yet been committed.
+	 */
+	List<Frontier> getUnrecorded() {
+		List<Frontier> list = new ArrayList<Frontier>();
+		List<Frontier> stack = new ArrayList<Frontier>();
+		stack.add(this);
+		while (!stack.isEmpty()) {
+			Frontier f = stack.remove(stack.size() - 1);
+			Frontier[] merged = f.merged;
+			if (merged != null) {
+				list.add(f);
+				for (Frontier m : merged) {
+					stack.add(m);
+				}
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * The links of this merge node have been committed and need not be
+	 * written again.
+	 */
+	void recorded() {
+		merged = null;
+	}
+
+	public String toString() {
+		return String.valueOf(node);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.auditing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.MemoryOverflowModel;
+import org.openrdf.model.vocabulary.RDF;
+
+/**
+ * Remembers which resources have had their revision updated in a
+ * transaction. The most recently used resources are kept in a small map and
+ * the rest in a model that overflows to disk, so every resource is only
+ * revised once regardless of the size of the transaction.
+ * 
+ * @author James Leigh
+ * 
+ */
+class RevisedResources {
+	private static final int MAX_RECENT = 1024;
+	private final Map<Resource, Boolean> recent = new LinkedHashMap<Resource, Boolean>(
+			128, 0.75f, true) {
+		private static final long serialVersionUID = 1863694012435196527L;
+
+		protected boolean removeEldestEntry(Entry<Resource, Boolean> eldest) {
+			if (size() <= MAX_RECENT)
+				return false;
+			Boolean value = eldest.getValue();
+			overflow.add(eldest.getKey(), RDF.VALUE, value ? revised : touched);
+			return true;
+		}
+	};
+	private final MemoryOverflowModel overflow = new MemoryOverflowModel();
+	private final Literal revised;
+	private final Literal touched;
+
+	public RevisedResources(ValueFactory vf) {
+		revised = vf.createLiteral(true);
+		touched = vf.createLiteral(false);
+	}
+
+	public boolean containsKey(Resource resource) {
+		return get(resource) != null;
+	}
+
+	/**
+	 * @return {@link Boolean#TRUE} if a revision was recorded,
+	 *         {@link Boolean#FALSE} if only touched or <code>null</code>
+	 */
+	public Boolean get(Resource resource) {
+		Boolean value = recent.get(resource);
+		if (value != null || overflow.isEmpty())
+			return value;
+		if (overflow.contains(resource, RDF.VALUE, revised))
+			return Boolean.TRUE;
+		if (overflow.contains(resource, RDF.VALUE, touched))
+			return Boolean.FALSE;
+		return null;
+	}
+
+	public void put(Resource resource, Boolean value) {
+		if (recent.put(resource, value) == null && !overflow.isEmpty()) {
+			overflow.remove(resource, RDF.VALUE, null);
+		}
+	}
+
+	public void clear() {
+		recent.clear();
+		overflow.clear();
+	}
+}
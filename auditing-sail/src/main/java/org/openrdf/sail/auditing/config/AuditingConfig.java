@@ -30,25 +30,38 @@
  */
 package org.openrdf.sail.auditing.config;
 
+import static org.openrdf.sail.auditing.config.AuditingSchema.ARCHIVE_DIR;
 import static org.openrdf.sail.auditing.config.AuditingSchema.ARCHIVING;
+import static org.openrdf.sail.auditing.config.AuditingSchema.AUDIT_LEVEL;
+import static org.openrdf.sail.auditing.config.AuditingSchema.GRAPH;
+import static org.openrdf.sail.auditing.config.AuditingSchema.GRAPH_AUDIT_LEVEL;
+import static org.openrdf.sail.auditing.config.AuditingSchema.MAINTENANCE_BATCH_SIZE;
+import static org.openrdf.sail.auditing.config.AuditingSchema.MAINTENANCE_PAUSE;
 import static org.openrdf.sail.auditing.config.AuditingSchema.MAX_ARCHIVE;
 import static org.openrdf.sail.auditing.config.AuditingSchema.MAX_RECENT;
 import static org.openrdf.sail.auditing.config.AuditingSchema.MIN_RECENT;
 import static org.openrdf.sail.auditing.config.AuditingSchema.PURGE_AFTER;
 import static org.openrdf.sail.auditing.config.AuditingSchema.TRX_NAMESPACE;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.Duration;
 
+import org.openrdf.model.BNode;
 import org.openrdf.model.Graph;
 import org.openrdf.model.Literal;
 import org.openrdf.model.Model;
 import org.openrdf.model.Resource;
+import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.impl.LinkedHashModel;
 import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.sail.auditing.AuditLevel;
 import org.openrdf.sail.config.DelegatingSailImplConfigBase;
 import org.openrdf.sail.config.SailConfigException;
 import org.openrdf.sail.config.SailImplConfig;
@@ -67,11 +80,16 @@ public class AuditingConfig extends DelegatingSailImplConfigBase {
 	}
 
 	private String ns;
+	private AuditLevel auditLevel = AuditLevel.STATEMENT;
+	private final Map<Resource, AuditLevel> graphAuditLevels = new LinkedHashMap<Resource, AuditLevel>();
 	private boolean archiving;
 	private int maxArchive;
 	private int minRecent;
 	private int maxRecent;
 	private Duration purgeAfter;
+	private int maintenanceBatchSize = 256;
+	private long maintenancePause;
+	private String archiveDir;
 
 	public String getNamespace() {
 		return ns;
@@ -81,6 +99,26 @@ public class AuditingConfig extends DelegatingSailImplConfigBase {
 		this.ns = ns;
 	}
 
+	public AuditLevel getAuditLevel() {
+		return auditLevel;
+	}
+
+	public void setAuditLevel(AuditLevel auditLevel) {
+		this.auditLevel = auditLevel;
+	}
+
+	public Map<Resource, AuditLevel> getGraphAuditLevels() {
+		return graphAuditLevels;
+	}
+
+	public void setAuditLevel(Resource graph, AuditLevel level) {
+		if (level == null) {
+			graphAuditLevels.remove(graph);
+		} else {
+			graphAuditLevels.put(graph, level);
+		}
+	}
+
 	public boolean isArchiving() {
 		return archiving;
 	}
@@ -121,6 +159,33 @@ public class AuditingConfig extends DelegatingSailImplConfigBase {
 		this.purgeAfter = purgeAfter;
 	}
 
+	public int getMaintenanceBatchSize() {
+		return maintenanceBatchSize;
+	}
+
+	public void setMaintenanceBatchSize(int maintenanceBatchSize) {
+		this.maintenanceBatchSize = maintenanceBatchSize;
+	}
+
+	public long getMaintenancePause() {
+		return maintenancePause;
+	}
+
+	public void setMaintenancePause(long maintenancePause) {
+		this.maintenancePause = maintenancePause;
+	}
+
+	/**
+	 * Directory of archived transactions, relative to the data directory.
+	 */
+	public String getArchiveDir() {
+		return archiveDir;
+	}
+
+	public void setArchiveDir(String archiveDir) {
+		this.archiveDir = archiveDir;
+	}
+
 	@Override
 	public Resource export(Graph model) {
 		ValueFactory vf = ValueFactoryImpl.getInstance();
@@ -128,6 +193,13 @@ public class AuditingConfig extends DelegatingSailImplConfigBase {
 		if (ns != null) {
 			model.add(self, TRX_NAMESPACE, vf.createLiteral(ns));
 		}
+		model.add(self, AUDIT_LEVEL, vf.createLiteral(auditLevel.name().toLowerCase()));
+		for (Entry<Resource, AuditLevel> e : graphAuditLevels.entrySet()) {
+			BNode node = vf.createBNode();
+			model.add(self, GRAPH_AUDIT_LEVEL, node);
+			model.add(node, GRAPH, e.getKey());
+			model.add(node, AUDIT_LEVEL, vf.createLiteral(e.getValue().name().toLowerCase()));
+		}
 		model.add(self, ARCHIVING, vf.createLiteral(archiving));
 		model.add(self, MAX_ARCHIVE, vf.createLiteral(maxArchive));
 		model.add(self, MIN_RECENT, vf.createLiteral(minRecent));
@@ -135,6 +207,11 @@ public class AuditingConfig extends DelegatingSailImplConfigBase {
 		if (purgeAfter != null) {
 			model.add(self, PURGE_AFTER, vf.createLiteral(purgeAfter.toString(), XMLSchema.DURATION));
 		}
+		if (archiveDir != null) {
+			model.add(self, ARCHIVE_DIR, vf.createLiteral(archiveDir));
+		}
+		model.add(self, MAINTENANCE_BATCH_SIZE, vf.createLiteral(maintenanceBatchSize));
+		model.add(self, MAINTENANCE_PAUSE, vf.createLiteral(maintenancePause));
 		return self;
 	}
 
@@ -144,7 +221,21 @@ public class AuditingConfig extends DelegatingSailImplConfigBase {
 		super.parse(graph, implNode);
 		Model model = new LinkedHashModel(graph);
 		setNamespace(model.filter(implNode, TRX_NAMESPACE, null).objectString());
-		Literal lit = model.filter(implNode, ARCHIVING, null).objectLiteral();
+		Literal lit = model.filter(implNode, AUDIT_LEVEL, null).objectLiteral();
+		if (lit != null) {
+			setAuditLevel(parseAuditLevel(lit));
+		}
+		for (Value node : model.filter(implNode, GRAPH_AUDIT_LEVEL, null).objects()) {
+			if (node instanceof Resource) {
+				Model levelModel = model.filter((Resource) node, null, null);
+				Resource g = levelModel.filter(null, GRAPH, null).objectResource();
+				lit = levelModel.filter(null, AUDIT_LEVEL, null).objectLiteral();
+				if (g == null || lit == null)
+					throw new SailConfigException("Graph audit level requires a graph and level");
+				setAuditLevel(g, parseAuditLevel(lit));
+			}
+		}
+		lit = model.filter(implNode, ARCHIVING, null).objectLiteral();
 		if (lit != null) {
 			setArchiving(lit.booleanValue());
 		}
@@ -169,6 +260,23 @@ public class AuditingConfig extends DelegatingSailImplConfigBase {
 				throw new SailConfigException(e);
 			}
 		}
+		setArchiveDir(model.filter(implNode, ARCHIVE_DIR, null).objectString());
+		lit = model.filter(implNode, MAINTENANCE_BATCH_SIZE, null).objectLiteral();
+		if (lit != null) {
+			setMaintenanceBatchSize(lit.intValue());
+		}
+		lit = model.filter(implNode, MAINTENANCE_PAUSE, null).objectLiteral();
+		if (lit != null) {
+			setMaintenancePause(lit.longValue());
+		}
+	}
+
+	private AuditLevel parseAuditLevel(Literal lit) throws SailConfigException {
+		try {
+			return AuditLevel.valueOf(lit.stringValue().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new SailConfigException("Unknown audit level: " + lit.stringValue());
+		}
 	}
 
 }
@@ -29,7 +29,12 @@
  */
 package org.openrdf.sail.auditing.config;
 
+import java.io.File;
+import java.util.Map;
+
+import org.openrdf.model.Resource;
 import org.openrdf.sail.Sail;
+import org.openrdf.sail.auditing.AuditLevel;
 import org.openrdf.sail.auditing.AuditingSail;
 import org.openrdf.sail.config.SailConfigException;
 import org.openrdf.sail.config.SailFactory;
@@ -69,11 +74,20 @@ public class AuditingFactory implements SailFactory {
 		AuditingConfig cfg = (AuditingConfig) config;
 		AuditingSail sail = new AuditingSail();
 		sail.setNamespace(cfg.getNamespace());
+		sail.setAuditLevel(cfg.getAuditLevel());
+		for (Map.Entry<Resource, AuditLevel> e : cfg.getGraphAuditLevels().entrySet()) {
+			sail.setAuditLevel(e.getKey(), e.getValue());
+		}
 		sail.setArchiving(cfg.isArchiving());
 		sail.setMaxArchive(cfg.getMaxArchive());
 		sail.setMinRecent(cfg.getMinRecent());
 		sail.setMaxRecent(cfg.getMaxRecent());
 		sail.setPurgeAfter(cfg.getPurgeAfter());
+		sail.setMaintenanceBatchSize(cfg.getMaintenanceBatchSize());
+		sail.setMaintenancePause(cfg.getMaintenancePause());
+		if (cfg.getArchiveDir() != null) {
+			sail.setArchiveDir(new File(cfg.getArchiveDir()));
+		}
 		return sail;
 	}
 }
@@ -45,11 +45,17 @@ public class AuditingSchema {
 
 	public static final URI TRX_NAMESPACE = new URIImpl(NAMESPACE
 			+ "trxNamespace");
+	public static final URI AUDIT_LEVEL = new URIImpl(NAMESPACE + "auditLevel");
+	public static final URI GRAPH_AUDIT_LEVEL = new URIImpl(NAMESPACE + "graphAuditLevel");
+	public static final URI GRAPH = new URIImpl(NAMESPACE + "graph");
 	public static final URI ARCHIVING = new URIImpl(NAMESPACE + "archiving");
 	public static final URI MAX_ARCHIVE = new URIImpl(NAMESPACE + "maximumArchiveTriples");
 	public static final URI MIN_RECENT = new URIImpl(NAMESPACE + "minimumRecentTransactions");
 	public static final URI MAX_RECENT = new URIImpl(NAMESPACE + "maximumRecentTransactions");
 	public static final URI PURGE_AFTER = new URIImpl(NAMESPACE + "purgeObsoleteTransactionsAfter");
+	public static final URI ARCHIVE_DIR = new URIImpl(NAMESPACE + "purgedArchiveDirectory");
+	public static final URI MAINTENANCE_BATCH_SIZE = new URIImpl(NAMESPACE + "maintenanceBatchSize");
+	public static final URI MAINTENANCE_PAUSE = new URIImpl(NAMESPACE + "maintenancePauseMillis");
 
 	private AuditingSchema() {
 		// no constructor
@@ -3,6 +3,7 @@ package org.openrdf.sail.auditing.helpers;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.openrdf.model.Resource;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
@@ -25,7 +26,7 @@ public class OperationEntityResolver {
 	}
 
 	public synchronized URI getEntity(QueryModelNode node, Dataset dataset, BindingSet bindings) {
-		if (dataset == null)
+		if (node == null || dataset == null)
 			return null;
 		URI activity = dataset.getDefaultInsertGraph();
 		if (activity == null || activity.stringValue().indexOf('#') >= 0)
@@ -67,6 +68,19 @@ public class OperationEntityResolver {
 		return entity;
 	}
 
+	/**
+	 * The entity of a single statement of the given operation, for data
+	 * operations that change more than one entity.
+	 */
+	public URI getEntity(Resource subject, Dataset dataset) {
+		if (!(subject instanceof URI) || dataset == null)
+			return null;
+		URI activity = dataset.getDefaultInsertGraph();
+		if (activity == null || activity.stringValue().indexOf('#') >= 0)
+			return null;
+		return entity((URI) subject);
+	}
+
 	private URI entity(URI subject) {
 		URI entity = subject;
 		int hash = entity.stringValue().indexOf('#');
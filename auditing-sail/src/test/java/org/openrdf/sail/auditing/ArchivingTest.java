@@ -1,6 +1,8 @@
 package org.openrdf.sail.auditing;
 
 
+import java.util.concurrent.TimeUnit;
+
 import junit.framework.TestCase;
 
 import org.openrdf.model.Resource;
@@ -33,6 +35,7 @@ public class ArchivingTest extends TestCase {
 	private URI knows = vf.createURI("http://xmlns.com/foaf/0.1/knows");
 	private RepositoryConnection con;
 	private Repository repo;
+	private AuditingSail sail;
 
 	private RepositoryConnection reopen(Repository repo,
 			RepositoryConnection con) throws RepositoryException {
@@ -44,7 +47,7 @@ public class ArchivingTest extends TestCase {
 	}
 
 	public void setUp() throws Exception {
-		AuditingSail sail = new AuditingSail(new MemoryStore());
+		sail = new AuditingSail(new MemoryStore());
 		sail.setArchiving(true);
 		sail.setMinRecent(2);
 		sail.setMaxRecent(2);
@@ -63,6 +66,7 @@ public class ArchivingTest extends TestCase {
 		assertTrue(con.isEmpty());
 		con.add(carmichael, knows, harris);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -93,6 +97,7 @@ public class ArchivingTest extends TestCase {
 		con = reopen(repo, con);
 		con.add(varley, knows, thomson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -114,6 +119,7 @@ public class ArchivingTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove(carmichael, knows, harris);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -139,6 +145,7 @@ public class ArchivingTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove((Resource)null, knows, null);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -161,6 +168,7 @@ public class ArchivingTest extends TestCase {
 		con = reopen(repo, con);
 		con.add(carmichael, knows, jackson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
@@ -182,6 +190,7 @@ public class ArchivingTest extends TestCase {
 		con.remove(carmichael, knows, harris);
 		con.add(carmichael, knows, jackson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
@@ -206,6 +215,7 @@ public class ArchivingTest extends TestCase {
 		}
 		stmts.close();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, null, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
 		assertTrue(con.hasStatement(null, RDF.TYPE, Audit.TRANSACTION, false));
@@ -224,6 +234,7 @@ public class ArchivingTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove(carmichael, Audit.REVISION, null);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertFalse(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -246,6 +257,7 @@ public class ArchivingTest extends TestCase {
 		stmts.close();
 		con.remove(carmichael, Audit.REVISION, revision);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertFalse(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -266,6 +278,7 @@ public class ArchivingTest extends TestCase {
 		con.remove(carmichael, Audit.REVISION, null);
 		con.add(carmichael, Audit.REVISION, Audit.CURRENT_TRX);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -289,6 +302,7 @@ public class ArchivingTest extends TestCase {
 		con.remove(carmichael, Audit.REVISION, null);
 		con.add(carmichael, Audit.REVISION, Audit.CURRENT_TRX);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(3, con.getContextIDs().asList().size());
@@ -309,6 +323,7 @@ public class ArchivingTest extends TestCase {
 		con.remove(carmichael, null, null);
 		con.add(carmichael, knows, jackson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -328,6 +343,7 @@ public class ArchivingTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove(carmichael, null, null);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, null, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
 		assertTrue(con.hasStatement(null, RDF.TYPE, Audit.TRANSACTION, false));
@@ -339,11 +355,61 @@ public class ArchivingTest extends TestCase {
 		assertTrue(con.hasStatement(null, Audit.CONTAINED, null, false));
 	}
 
+	public void testRemoveProvenance() throws Exception {
+		con.setAutoCommit(false);
+		con.add(carmichael, knows, harris);
+		con = reopen(repo, con);
+		con.remove(carmichael, knows, harris);
+		con.remove((Resource) null, Audit.CONTAINED, null);
+		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
+		assertFalse(con.hasStatement(carmichael, knows, harris, false));
+		assertFalse(con.hasStatement(null, Audit.CONTAINED, null, false));
+	}
+
+	public void testRemoveReadRemoveProvenance() throws Exception {
+		con.setAutoCommit(false);
+		con.add(carmichael, knows, harris);
+		con.add(carmichael, knows, jackson);
+		con.add(jackson, knows, johnston);
+		con = reopen(repo, con);
+		con.remove(carmichael, knows, harris);
+		assertTrue(con.hasStatement(null, Audit.CONTAINED, null, false));
+		assertTrue(con.hasStatement(null, RDF.OBJECT, harris, false));
+		assertEquals(1, con.getStatements(null, RDF.SUBJECT, carmichael, false).asList().size());
+		con.remove(carmichael, knows, jackson);
+		con.remove((Resource) null, RDF.OBJECT, jackson);
+		assertEquals(2, con.getStatements(null, RDF.SUBJECT, carmichael, false).asList().size());
+		con.remove(jackson, knows, johnston);
+		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
+		assertFalse(con.hasStatement(null, knows, null, false));
+		assertEquals(3, con.getStatements(null, Audit.CONTAINED, null, false).asList().size());
+		assertTrue(con.hasStatement(null, RDF.OBJECT, harris, false));
+		assertFalse(con.hasStatement(null, RDF.OBJECT, jackson, false));
+		assertTrue(con.hasStatement(null, RDF.OBJECT, johnston, false));
+		assertEquals(2, con.getStatements(null, RDF.SUBJECT, carmichael, false).asList().size());
+		assertTrue(con.hasStatement(null, Audit.MODIFIED, null, false));
+	}
+
+	public void testClearProvenance() throws Exception {
+		con.setAutoCommit(false);
+		con.add(carmichael, knows, harris);
+		con = reopen(repo, con);
+		con.remove(carmichael, knows, harris);
+		con.clear();
+		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
+		assertFalse(con.hasStatement(null, Audit.CONTAINED, null, false));
+		assertFalse(con.hasStatement(null, RDF.SUBJECT, carmichael, false));
+	}
+
 	public void testInsertData() throws Exception {
 		con.setAutoCommit(false);
 		assertTrue(con.isEmpty());
 		con.prepareUpdate(QueryLanguage.SPARQL, "INSERT DATA { <carmichael> <http://xmlns.com/foaf/0.1/knows> <harris> } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -364,6 +430,7 @@ public class ArchivingTest extends TestCase {
 		con = reopen(repo, con);
 		con.prepareUpdate(QueryLanguage.SPARQL, "DELETE DATA { <carmichael> <http://xmlns.com/foaf/0.1/knows> <harris> } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -384,6 +451,7 @@ public class ArchivingTest extends TestCase {
 		con.prepareUpdate(QueryLanguage.SPARQL, "DELETE { <carmichael> ?p ?o }\n" +
 				"WHERE { <carmichael> ?p ?o } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, null, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
 		assertTrue(con.hasStatement(null, RDF.TYPE, Audit.TRANSACTION, false));
@@ -404,6 +472,7 @@ public class ArchivingTest extends TestCase {
 				"INSERT { <carmichael> <http://xmlns.com/foaf/0.1/knows> <jackson> }\n" +
 				"WHERE { <carmichael> ?p ?o } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
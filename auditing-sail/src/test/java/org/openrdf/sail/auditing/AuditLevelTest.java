@@ -0,0 +1,123 @@
+package org.openrdf.sail.auditing;
+
+import junit.framework.TestCase;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.GraphImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.auditing.config.AuditingConfig;
+import org.openrdf.sail.auditing.vocabulary.Audit;
+import org.openrdf.sail.memory.MemoryStore;
+
+public class AuditLevelTest extends TestCase {
+	private ValueFactory vf = ValueFactoryImpl.getInstance();
+	private String NS = "http://example.com/";
+	private URI carmichael = vf.createURI(NS, "carmichael");
+	private URI harris = vf.createURI(NS, "harris");
+	private URI jackson = vf.createURI(NS, "jackson");
+	private URI knows = vf.createURI("http://xmlns.com/foaf/0.1/knows");
+	private URI bulk = vf.createURI(NS, "bulk");
+	private URI audited = vf.createURI(NS, "audited");
+	private AuditingSail sail;
+	private RepositoryConnection con;
+	private Repository repo;
+
+	private RepositoryConnection reopen(Repository repo,
+			RepositoryConnection con) throws RepositoryException {
+		con.setAutoCommit(true);
+		con.close();
+		con = repo.getConnection();
+		con.setAutoCommit(false);
+		return con;
+	}
+
+	public void setUp() throws Exception {
+		sail = new AuditingSail(new MemoryStore());
+		sail.setArchiving(true);
+		repo = new SailRepository(sail);
+		repo.initialize();
+		con = repo.getConnection();
+	}
+
+	public void tearDown() throws Exception {
+		con.close();
+		repo.shutDown();
+	}
+
+	public void testOff() throws Exception {
+		sail.setAuditLevel(AuditLevel.OFF);
+		con.setAutoCommit(false);
+		con.add(carmichael, knows, harris);
+		con.setAutoCommit(true);
+		assertTrue(con.hasStatement(carmichael, knows, harris, false, new Resource[]{null}));
+		assertFalse(con.hasStatement(carmichael, Audit.REVISION, null, false));
+		assertFalse(con.hasStatement(null, RDF.TYPE, Audit.TRANSACTION, false));
+	}
+
+	public void testTransaction() throws Exception {
+		sail.setAuditLevel(AuditLevel.TRANSACTION);
+		con.setAutoCommit(false);
+		con.add(carmichael, knows, harris);
+		con = reopen(repo, con);
+		con.remove(carmichael, knows, harris);
+		con.add(carmichael, knows, jackson);
+		con.setAutoCommit(true);
+		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
+		assertTrue(con.hasStatement(null, RDF.TYPE, Audit.TRANSACTION, false));
+		assertTrue(con.hasStatement(null, Audit.PREDECESSOR, null, false));
+		assertTrue(con.hasStatement(null, Audit.MODIFIED, null, false));
+		assertFalse(con.hasStatement(null, Audit.REVISION, null, false));
+		assertFalse(con.hasStatement(null, Audit.CONTRIBUTED, null, false));
+		assertFalse(con.hasStatement(null, Audit.CONTAINED, null, false));
+	}
+
+	public void testEntity() throws Exception {
+		sail.setAuditLevel(AuditLevel.ENTITY);
+		con.setAutoCommit(false);
+		con.add(carmichael, knows, harris);
+		con = reopen(repo, con);
+		con.remove(carmichael, knows, harris);
+		con.add(carmichael, knows, jackson);
+		con.setAutoCommit(true);
+		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
+		assertTrue(con.hasStatement(null, Audit.MODIFIED, null, false));
+		assertFalse(con.hasStatement(null, Audit.CONTAINED, null, false));
+	}
+
+	public void testGraphLevel() throws Exception {
+		sail.setAuditLevel(AuditLevel.STATEMENT);
+		sail.setAuditLevel(bulk, AuditLevel.OFF);
+		con.setAutoCommit(false);
+		con.add(carmichael, knows, harris, bulk);
+		con.add(carmichael, knows, jackson, audited);
+		con = reopen(repo, con);
+		con.remove(carmichael, knows, harris, bulk);
+		con.setAutoCommit(true);
+		assertFalse(con.hasStatement(null, Audit.MODIFIED, bulk, false));
+		assertFalse(con.hasStatement(null, Audit.CONTAINED, null, false));
+		con.setAutoCommit(false);
+		con.remove(carmichael, knows, jackson, audited);
+		con.setAutoCommit(true);
+		assertTrue(con.hasStatement(null, Audit.MODIFIED, audited, false));
+		assertTrue(con.hasStatement(audited, Audit.CONTAINED, null, false));
+	}
+
+	public void testConfig() throws Exception {
+		AuditingConfig config = new AuditingConfig();
+		config.setAuditLevel(AuditLevel.ENTITY);
+		config.setAuditLevel(bulk, AuditLevel.OFF);
+		GraphImpl model = new GraphImpl();
+		Resource node = config.export(model);
+		AuditingConfig parsed = new AuditingConfig();
+		parsed.parse(model, node);
+		assertEquals(AuditLevel.ENTITY, parsed.getAuditLevel());
+		assertEquals(AuditLevel.OFF, parsed.getGraphAuditLevels().get(bulk));
+	}
+}
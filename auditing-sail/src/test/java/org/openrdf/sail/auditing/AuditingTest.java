@@ -1,6 +1,11 @@
 package org.openrdf.sail.auditing;
 
 
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.ObjectName;
+
 import junit.framework.TestCase;
 
 import org.openrdf.model.Resource;
@@ -413,4 +418,113 @@ public class AuditingTest extends TestCase {
 		assertTrue(con.hasStatement(null, Audit.PREDECESSOR, null, false));
 		assertFalse(con.hasStatement(null, Audit.CONTAINED, null, false));
 	}
+
+	public void testReviseMany() throws Exception {
+		con.setAutoCommit(false);
+		for (int i = 0; i < 3000; i++) {
+			con.add(vf.createURI(NS, "p" + i), knows, carmichael);
+		}
+		con = reopen(repo, con);
+		for (int i = 0; i < 3000; i++) {
+			con.add(vf.createURI(NS, "p" + i), knows, harris);
+		}
+		for (int i = 0; i < 3000; i++) {
+			con.add(vf.createURI(NS, "p" + i), knows, jackson);
+		}
+		con.setAutoCommit(true);
+		Value trx = con.getStatements(null, knows, jackson, false).next()
+				.getContext();
+		assertEquals(3000, con.getStatements(null, Audit.REVISION, trx, false)
+				.asList().size());
+		assertEquals(3000, con.getStatements(null, Audit.REVISION, null, false)
+				.asList().size());
+		assertEquals(3000, con.getStatements(null, Audit.CONTRIBUTED, null,
+				false, (Resource) trx).asList().size());
+	}
+
+	public void testConcurrentPredecessors() throws Exception {
+		RepositoryConnection con1 = repo.getConnection();
+		RepositoryConnection con2 = repo.getConnection();
+		try {
+			con1.setAutoCommit(false);
+			con1.add(carmichael, knows, harris);
+			con1.setAutoCommit(true);
+			con2.setAutoCommit(false);
+			con2.add(jackson, knows, johnston);
+			con2.setAutoCommit(true);
+		} finally {
+			con1.close();
+			con2.close();
+		}
+		Resource trx1 = (Resource) con.getStatements(carmichael, knows, harris, false).next().getContext();
+		Resource trx2 = (Resource) con.getStatements(jackson, knows, johnston, false).next().getContext();
+		con = reopen(repo, con);
+		RepositoryConnection con5 = repo.getConnection();
+		try {
+			con.add(lismer, knows, macDonald);
+			con.setAutoCommit(true);
+			Resource trx3 = (Resource) con.getStatements(lismer, knows, macDonald, false).next().getContext();
+			// concurrent transactions are succeeded through a single merge node
+			List<Statement> links = con.getStatements(trx3, Audit.PREDECESSOR, null, false).asList();
+			assertEquals(1, links.size());
+			Resource merge = (Resource) links.get(0).getObject();
+			assertTrue(con.hasStatement(merge, Audit.PREDECESSOR, trx1, false, trx3));
+			assertTrue(con.hasStatement(merge, Audit.PREDECESSOR, trx2, false, trx3));
+			con.setAutoCommit(false);
+			con.add(varley, knows, thomson);
+			con.setAutoCommit(true);
+			Resource trx4 = (Resource) con.getStatements(varley, knows, thomson, false).next().getContext();
+			assertEquals(1, con.getStatements(trx4, Audit.PREDECESSOR, null, false).asList().size());
+			assertTrue(con.hasStatement(trx4, Audit.PREDECESSOR, trx3, false, trx4));
+			// the links of the merge node are only written once
+			con5.add(harris, knows, jackson);
+			Resource trx5 = (Resource) con.getStatements(harris, knows, jackson, false).next().getContext();
+			assertTrue(con.hasStatement(trx5, Audit.PREDECESSOR, merge, false, trx5));
+			assertEquals(1, con.getStatements(null, Audit.PREDECESSOR, null, false, trx5).asList().size());
+		} finally {
+			con5.close();
+		}
+	}
+
+	public void testMonitor() throws Exception {
+		AuditingSail sail = (AuditingSail) ((SailRepository) repo).getSail();
+		AuditingMonitor monitor = sail.getMonitor();
+		con.setAutoCommit(false);
+		con.add(carmichael, knows, harris);
+		con.add(carmichael, knows, jackson);
+		con.setAutoCommit(true);
+		con.setAutoCommit(false);
+		con.remove(carmichael, knows, harris);
+		con.setAutoCommit(true);
+		assertEquals(2, monitor.getCommitCount());
+		assertEquals(3, monitor.getUserStatementCount());
+		assertTrue(monitor.getAuditStatementCount() > 0);
+		assertTrue(monitor.getAuditOverhead() > 0);
+		assertEquals(1, monitor.getObsoleteCheckCount());
+		ObjectName pattern = new ObjectName("org.openrdf.sail.auditing:type=AuditingSail,*");
+		assertFalse(ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).isEmpty());
+		monitor.resetCounters();
+		assertEquals(0, monitor.getCommitCount());
+	}
+
+	public void testMonitorRemovals() throws Exception {
+		AuditingSail sail = (AuditingSail) ((SailRepository) repo).getSail();
+		AuditingMonitor monitor = sail.getMonitor();
+		con.setAutoCommit(false);
+		for (int i = 0; i < 10; i++) {
+			con.add(carmichael, knows, vf.createURI(NS, "friend" + i));
+		}
+		con.setAutoCommit(true);
+		monitor.resetCounters();
+		con.setAutoCommit(false);
+		for (int i = 0; i < 10; i++) {
+			con.remove(carmichael, knows, vf.createURI(NS, "friend" + i));
+		}
+		con.setAutoCommit(true);
+		assertEquals(1, monitor.getCommitCount());
+		assertEquals(10, monitor.getUserStatementCount());
+		// type, committed on and predecessor of the transaction at least
+		assertTrue(monitor.getAuditStatementCount() >= 3);
+	}
+
 }
@@ -1,6 +1,10 @@
 package org.openrdf.sail.auditing;
 
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import javax.xml.datatype.DatatypeFactory;
 
 import junit.framework.TestCase;
@@ -35,6 +39,7 @@ public class ObsoleteTest extends TestCase {
 	private URI knows = vf.createURI("http://xmlns.com/foaf/0.1/knows");
 	private RepositoryConnection con;
 	private Repository repo;
+	private AuditingSail sail;
 
 	private RepositoryConnection reopen(Repository repo,
 			RepositoryConnection con) throws RepositoryException {
@@ -46,7 +51,7 @@ public class ObsoleteTest extends TestCase {
 	}
 
 	public void setUp() throws Exception {
-		AuditingSail sail = new AuditingSail(new MemoryStore());
+		sail = new AuditingSail(new MemoryStore());
 		sail.setMaxArchive(2);
 		sail.setMinRecent(2);
 		sail.setMaxRecent(2);
@@ -66,6 +71,7 @@ public class ObsoleteTest extends TestCase {
 		assertTrue(con.isEmpty());
 		con.add(carmichael, knows, harris);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -96,6 +102,7 @@ public class ObsoleteTest extends TestCase {
 		con = reopen(repo, con);
 		con.add(varley, knows, thomson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -117,6 +124,7 @@ public class ObsoleteTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove(carmichael, knows, harris);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -142,6 +150,7 @@ public class ObsoleteTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove((Resource)null, knows, null);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -164,6 +173,7 @@ public class ObsoleteTest extends TestCase {
 		con = reopen(repo, con);
 		con.add(carmichael, knows, jackson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
@@ -185,6 +195,7 @@ public class ObsoleteTest extends TestCase {
 		con.remove(carmichael, knows, harris);
 		con.add(carmichael, knows, jackson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
@@ -209,6 +220,7 @@ public class ObsoleteTest extends TestCase {
 		}
 		stmts.close();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, null, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
 		assertTrue(con.hasStatement(null, RDF.TYPE, Audit.TRANSACTION, false));
@@ -227,6 +239,7 @@ public class ObsoleteTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove(carmichael, Audit.REVISION, null);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertFalse(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -249,6 +262,7 @@ public class ObsoleteTest extends TestCase {
 		stmts.close();
 		con.remove(carmichael, Audit.REVISION, revision);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertFalse(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -269,6 +283,7 @@ public class ObsoleteTest extends TestCase {
 		con.remove(carmichael, Audit.REVISION, null);
 		con.add(carmichael, Audit.REVISION, Audit.CURRENT_TRX);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -292,6 +307,7 @@ public class ObsoleteTest extends TestCase {
 		con.remove(carmichael, Audit.REVISION, null);
 		con.add(carmichael, Audit.REVISION, Audit.CURRENT_TRX);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(3, con.getContextIDs().asList().size());
@@ -312,6 +328,7 @@ public class ObsoleteTest extends TestCase {
 		con.remove(carmichael, null, null);
 		con.add(carmichael, knows, jackson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -331,6 +348,7 @@ public class ObsoleteTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove(carmichael, null, null);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, null, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
 		assertTrue(con.hasStatement(null, RDF.TYPE, Audit.TRANSACTION, false));
@@ -347,6 +365,7 @@ public class ObsoleteTest extends TestCase {
 		assertTrue(con.isEmpty());
 		con.prepareUpdate(QueryLanguage.SPARQL, "INSERT DATA { <carmichael> <http://xmlns.com/foaf/0.1/knows> <harris> } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -367,6 +386,7 @@ public class ObsoleteTest extends TestCase {
 		con = reopen(repo, con);
 		con.prepareUpdate(QueryLanguage.SPARQL, "DELETE DATA { <carmichael> <http://xmlns.com/foaf/0.1/knows> <harris> } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -387,6 +407,7 @@ public class ObsoleteTest extends TestCase {
 		con.prepareUpdate(QueryLanguage.SPARQL, "DELETE { <carmichael> ?p ?o }\n" +
 				"WHERE { <carmichael> ?p ?o } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, null, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
 		assertTrue(con.hasStatement(null, RDF.TYPE, Audit.TRANSACTION, false));
@@ -407,6 +428,7 @@ public class ObsoleteTest extends TestCase {
 				"INSERT { <carmichael> <http://xmlns.com/foaf/0.1/knows> <jackson> }\n" +
 				"WHERE { <carmichael> ?p ?o } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -419,4 +441,41 @@ public class ObsoleteTest extends TestCase {
 		assertTrue(con.hasStatement(null, Audit.CONTAINED, null, false));
 	}
 
+	public void testRemoveOneAtATime() throws Exception {
+		con.setAutoCommit(false);
+		con.add(carmichael, knows, harris);
+		con.add(carmichael, knows, jackson);
+		con.add(carmichael, knows, jackson);
+		con.add(carmichael, knows, johnston);
+		con = reopen(repo, con);
+		Resource trx = con.getStatements(carmichael, knows, johnston, false)
+				.asList().get(0).getContext();
+		con.remove(carmichael, knows, harris);
+		con = reopen(repo, con);
+		con.add(carmichael, knows, harris);
+		con.remove(carmichael, knows, jackson);
+		con = reopen(repo, con);
+		assertFalse(con.hasStatement(trx, RDF.TYPE, Audit.OBSOLETE, false));
+		con.remove(carmichael, knows, johnston);
+		con.setAutoCommit(true);
+		assertTrue(con.hasStatement(trx, RDF.TYPE, Audit.OBSOLETE, false));
+	}
+
+	public void testStaleLiveCount() throws Exception {
+		URI graph = vf.createURI(NS, "graph");
+		Map<Resource, Long> removed = Collections.<Resource, Long> singletonMap(graph, -1L);
+		Map<Resource, Long> counted = Collections.<Resource, Long> singletonMap(graph, 1L);
+		long before = sail.getLiveSequence();
+		// another transaction counted the graph and committed first
+		sail.liveCounted(removed, counted, before);
+		assertEquals(Long.valueOf(1), sail.getLiveCount(graph));
+		// this transaction counted the graph before that commit
+		sail.liveCounted(removed, counted, before);
+		assertNull(sail.getLiveCount(graph));
+		Map<Resource, Long> none = Collections.emptyMap();
+		sail.liveCounted(none, Collections.<Resource, Long> singletonMap(graph, 0L),
+				sail.getLiveSequence());
+		assertEquals(Long.valueOf(0), sail.getLiveCount(graph));
+	}
+
 }
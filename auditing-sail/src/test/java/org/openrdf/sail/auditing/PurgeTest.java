@@ -1,10 +1,15 @@
 package org.openrdf.sail.auditing;
 
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 import javax.xml.datatype.DatatypeFactory;
 
 import junit.framework.TestCase;
 
+import org.openrdf.model.Model;
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
@@ -34,6 +39,7 @@ public class PurgeTest extends TestCase {
 	private URI knows = vf.createURI("http://xmlns.com/foaf/0.1/knows");
 	private RepositoryConnection con;
 	private Repository repo;
+	private AuditingSail sail;
 
 	private RepositoryConnection reopen(Repository repo,
 			RepositoryConnection con) throws Exception {
@@ -46,7 +52,7 @@ public class PurgeTest extends TestCase {
 	}
 
 	public void setUp() throws Exception {
-		AuditingSail sail = new AuditingSail(new MemoryStore());
+		sail = new AuditingSail(new MemoryStore());
 		sail.setMaxArchive(2);
 		sail.setMinRecent(2);
 		sail.setMaxRecent(2);
@@ -67,6 +73,7 @@ public class PurgeTest extends TestCase {
 		assertTrue(con.isEmpty());
 		con.add(carmichael, knows, harris);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -97,6 +104,7 @@ public class PurgeTest extends TestCase {
 		con = reopen(repo, con);
 		con.add(varley, knows, thomson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -118,6 +126,7 @@ public class PurgeTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove(carmichael, knows, harris);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(1, con.getContextIDs().asList().size());
@@ -143,6 +152,7 @@ public class PurgeTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove((Resource)null, knows, null);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -165,6 +175,7 @@ public class PurgeTest extends TestCase {
 		con = reopen(repo, con);
 		con.add(carmichael, knows, jackson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
@@ -186,6 +197,7 @@ public class PurgeTest extends TestCase {
 		con.remove(carmichael, knows, harris);
 		con.add(carmichael, knows, jackson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
@@ -210,6 +222,7 @@ public class PurgeTest extends TestCase {
 		}
 		stmts.close();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, null, null, false));
 		assertEquals(1, con.getContextIDs().asList().size());
 		assertTrue(con.hasStatement(null, RDF.TYPE, Audit.TRANSACTION, false));
@@ -228,6 +241,7 @@ public class PurgeTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove(carmichael, Audit.REVISION, null);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertFalse(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -250,6 +264,7 @@ public class PurgeTest extends TestCase {
 		stmts.close();
 		con.remove(carmichael, Audit.REVISION, revision);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertFalse(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -270,6 +285,7 @@ public class PurgeTest extends TestCase {
 		con.remove(carmichael, Audit.REVISION, null);
 		con.add(carmichael, Audit.REVISION, Audit.CURRENT_TRX);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -293,6 +309,7 @@ public class PurgeTest extends TestCase {
 		con.remove(carmichael, Audit.REVISION, null);
 		con.add(carmichael, Audit.REVISION, Audit.CURRENT_TRX);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(2, con.getContextIDs().asList().size());
@@ -313,6 +330,7 @@ public class PurgeTest extends TestCase {
 		con.remove(carmichael, null, null);
 		con.add(carmichael, knows, jackson);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(1, con.getContextIDs().asList().size());
@@ -332,6 +350,7 @@ public class PurgeTest extends TestCase {
 		con = reopen(repo, con);
 		con.remove(carmichael, null, null);
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, null, null, false));
 		assertEquals(1, con.getContextIDs().asList().size());
 		assertTrue(con.hasStatement(null, RDF.TYPE, Audit.TRANSACTION, false));
@@ -348,6 +367,7 @@ public class PurgeTest extends TestCase {
 		assertTrue(con.isEmpty());
 		con.prepareUpdate(QueryLanguage.SPARQL, "INSERT DATA { <carmichael> <http://xmlns.com/foaf/0.1/knows> <harris> } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertFalse(con.hasStatement(null, null, null, false, new Resource[]{null}));
@@ -368,6 +388,7 @@ public class PurgeTest extends TestCase {
 		con = reopen(repo, con);
 		con.prepareUpdate(QueryLanguage.SPARQL, "DELETE DATA { <carmichael> <http://xmlns.com/foaf/0.1/knows> <harris> } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, knows, harris, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(1, con.getContextIDs().asList().size());
@@ -388,6 +409,7 @@ public class PurgeTest extends TestCase {
 		con.prepareUpdate(QueryLanguage.SPARQL, "DELETE { <carmichael> ?p ?o }\n" +
 				"WHERE { <carmichael> ?p ?o } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertFalse(con.hasStatement(carmichael, null, null, false));
 		assertEquals(1, con.getContextIDs().asList().size());
 		assertTrue(con.hasStatement(null, RDF.TYPE, Audit.TRANSACTION, false));
@@ -408,6 +430,7 @@ public class PurgeTest extends TestCase {
 				"INSERT { <carmichael> <http://xmlns.com/foaf/0.1/knows> <jackson> }\n" +
 				"WHERE { <carmichael> ?p ?o } ", "http://example.com/").execute();
 		con.setAutoCommit(true);
+		sail.awaitMaintenance(1, TimeUnit.MINUTES);
 		assertTrue(con.hasStatement(carmichael, knows, jackson, false));
 		assertTrue(con.hasStatement(carmichael, Audit.REVISION, null, false));
 		assertEquals(1, con.getContextIDs().asList().size());
@@ -420,4 +443,66 @@ public class PurgeTest extends TestCase {
 		assertTrue(con.hasStatement(null, Audit.CONTAINED, null, false));
 	}
 
+	public void testBackgroundMaintenance() throws Exception {
+		sail.setMaintenanceBatchSize(1);
+		con.setAutoCommit(false);
+		con.add(carmichael, knows, harris);
+		con = reopen(repo, con);
+		con.remove(carmichael, knows, harris);
+		con.add(harris, knows, jackson);
+		con = reopen(repo, con);
+		con.remove(harris, knows, jackson);
+		con.add(jackson, knows, johnston);
+		con = reopen(repo, con);
+		con.add(johnston, knows, lismer);
+		con.setAutoCommit(true);
+		assertTrue(sail.awaitMaintenance(1, TimeUnit.MINUTES));
+		assertTrue(sail.getPurgedTransactions() > 0);
+		assertTrue(sail.getTrimmedTransactions() > 0);
+		assertEquals(0, sail.getPendingTrims());
+		assertFalse(sail.isPurging());
+		assertFalse(con.hasStatement(null, RDF.TYPE, Audit.OBSOLETE, false));
+		assertEquals(2, con.getStatements(null, RDF.TYPE, Audit.RECENT, false).asList().size());
+	}
+
+	public void testArchivePurged() throws Exception {
+		con.close();
+		repo.shutDown();
+		File dir = File.createTempFile("archive", "");
+		dir.delete();
+		sail = new AuditingSail(new MemoryStore());
+		sail.setPurgeAfter(DatatypeFactory.newInstance().newDuration("P0D"));
+		sail.setArchiveDir(dir);
+		repo = new SailRepository(sail);
+		repo.initialize();
+		con = repo.getConnection();
+		con.setAutoCommit(false);
+		con.add(carmichael, knows, harris);
+		con = reopen(repo, con);
+		Resource trx = con.getStatements(carmichael, knows, harris, false)
+				.next().getContext();
+		con.remove(carmichael, knows, harris);
+		con = reopen(repo, con);
+		con.add(harris, knows, jackson);
+		con.setAutoCommit(true);
+		assertTrue(sail.awaitMaintenance(1, TimeUnit.MINUTES));
+		assertFalse(con.hasStatement(null, null, null, false, trx));
+		AuditArchive archive = sail.getArchive();
+		assertTrue(archive.contains(trx));
+		Model model = archive.lookup(trx);
+		assertTrue(model.contains(trx, Audit.COMMITTED_ON, null, trx));
+		assertTrue(model.contains(trx, RDF.TYPE, Audit.TRANSACTION, trx));
+		repo.shutDown();
+		archive = new AuditArchive(dir);
+		try {
+			assertEquals(1, archive.size());
+			assertEquals(Arrays.asList(trx.stringValue()), archive.getTransactions());
+			assertEquals(model, archive.lookup(trx));
+		} finally {
+			archive.close();
+		}
+		repo.initialize();
+		con = repo.getConnection();
+	}
+
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.benchmark.blob;
+
+import java.util.Random;
+
+/**
+ * Generates reproducible blob content for a given seed. Text content is made
+ * of words from a small vocabulary and compresses well, while binary content
+ * is random and does not compress.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class BlobGenerator {
+	public static final long DEFAULT_SEED = 20120101L;
+	private static final String[] WORDS = { "alibaba", "blob", "store",
+			"version", "journal", "commit", "prepare", "resource", "graph",
+			"statement", "subject", "object", "literal", "context", "index",
+			"stream" };
+
+	private final long seed;
+
+	public BlobGenerator() {
+		this(DEFAULT_SEED);
+	}
+
+	public BlobGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	public byte[] generate(int size, boolean compressible) {
+		Random random = new Random(seed + size);
+		byte[] data = new byte[size];
+		if (!compressible) {
+			random.nextBytes(data);
+			return data;
+		}
+		int i = 0;
+		while (i < size) {
+			String word = WORDS[random.nextInt(WORDS.length)];
+			for (int j = 0; j < word.length() && i < size; j++) {
+				data[i++] = (byte) word.charAt(j);
+			}
+			if (i < size) {
+				data[i++] = (byte) ' ';
+			}
+		}
+		return data;
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.benchmark.blob;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openrdf.store.blob.BlobObject;
+import org.openrdf.store.blob.BlobStore;
+import org.openrdf.store.blob.BlobVersion;
+
+/**
+ * Measures opening, reading, writing and committing blobs of various sizes
+ * with a given number of previous versions. Each invocation performs one
+ * operation on each of <code>threads</code> concurrent workers and waits for
+ * all of them. Each worker writes to its own blobs, so concurrent writes
+ * contend only on the store's disk lock. The store and its history are
+ * rebuilt for every iteration, so written versions do not accumulate beyond
+ * one iteration.
+ * 
+ * @author James Leigh
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlobStoreBenchmark {
+	private static final String NS = "http://example.com/benchmark/blob/";
+	private static final int MAX_BLOBS = 64;
+	/** upper bound on the bytes written to populate the history */
+	private static final long HISTORY_BYTES = 64L * 1024 * 1024;
+	private static final int VERSION_SIZE = 8;
+
+	private interface Operation {
+		long perform(int worker, byte[] buf) throws IOException;
+	}
+
+	@Param
+	private BlobStoreImplementation implementation;
+	@Param( { "512", "65536", "4194304" })
+	private int blobSize;
+	@Param( { "0", "10", "100" })
+	private int historyDepth;
+	@Param( { "true", "false" })
+	private boolean compressible;
+	@Param( { "1", "4" })
+	private int threads;
+
+	private final AtomicInteger next = new AtomicInteger();
+	private int blobs;
+	private byte[] data;
+	private byte[][] buffers;
+	private ExecutorService executor;
+	private File dir;
+	private BlobStore store;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		data = new BlobGenerator().generate(blobSize, compressible);
+		long versionBytes = (long) blobSize * (historyDepth + 1);
+		blobs = (int) Math.max(1, Math.min(MAX_BLOBS, HISTORY_BYTES
+				/ versionBytes));
+		buffers = new byte[threads][8192];
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	@TearDown(Level.Trial)
+	public void shutDown() {
+		executor.shutdownNow();
+	}
+
+	@Setup(Level.Iteration)
+	public void populate() throws IOException {
+		dir = File.createTempFile("blobs", "");
+		dir.delete();
+		dir.mkdirs();
+		store = implementation.create(dir);
+		for (int v = 0; v <= historyDepth; v++) {
+			BlobVersion version = store.newVersion();
+			for (int i = 0; i < blobs; i++) {
+				write(version.open(NS + i));
+			}
+			version.commit();
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void erase() throws IOException {
+		store.erase();
+		dir.delete();
+	}
+
+	@Benchmark
+	public long open() throws Exception {
+		return run(new Operation() {
+			public long perform(int worker, byte[] buf) throws IOException {
+				return store.newVersion().open(nextReadUri()).getLength();
+			}
+		});
+	}
+
+	@Benchmark
+	public long read() throws Exception {
+		return run(new Operation() {
+			public long perform(int worker, byte[] buf) throws IOException {
+				BlobObject blob = store.newVersion().open(nextReadUri());
+				InputStream in = blob.openInputStream();
+				try {
+					long total = 0;
+					int read;
+					while ((read = in.read(buf)) >= 0) {
+						total += read;
+					}
+					return total;
+				} finally {
+					in.close();
+				}
+			}
+		});
+	}
+
+	@Benchmark
+	public long writeCommit() throws Exception {
+		return run(new Operation() {
+			public long perform(int worker, byte[] buf) throws IOException {
+				BlobVersion version = store.newVersion();
+				write(version.open(nextWriteUri(worker)));
+				version.commit();
+				return data.length;
+			}
+		});
+	}
+
+	@Benchmark
+	public long writeCommitMany() throws Exception {
+		return run(new Operation() {
+			public long perform(int worker, byte[] buf) throws IOException {
+				BlobVersion version = store.newVersion();
+				for (int i = 0; i < VERSION_SIZE; i++) {
+					write(version.open(nextWriteUri(worker)));
+				}
+				version.commit();
+				return (long) data.length * VERSION_SIZE;
+			}
+		});
+	}
+
+	private long run(final Operation op) throws Exception {
+		if (threads == 1)
+			return op.perform(0, buffers[0]);
+		List<Future<Long>> futures = new ArrayList<Future<Long>>(threads);
+		for (int i = 0; i < threads; i++) {
+			final int worker = i;
+			futures.add(executor.submit(new Callable<Long>() {
+				public Long call() throws IOException {
+					return op.perform(worker, buffers[worker]);
+				}
+			}));
+		}
+		long total = 0;
+		for (Future<Long> future : futures) {
+			try {
+				total += future.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception)
+					throw (Exception) e.getCause();
+				throw e;
+			}
+		}
+		return total;
+	}
+
+	private String nextReadUri() {
+		return NS + (next.getAndIncrement() & Integer.MAX_VALUE) % blobs;
+	}
+
+	private String nextWriteUri(int worker) {
+		int n = next.getAndIncrement() & Integer.MAX_VALUE;
+		return NS + "worker/" + worker + "/" + n % blobs;
+	}
+
+	private void write(BlobObject blob) throws IOException {
+		OutputStream out = blob.openOutputStream();
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.benchmark.model;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+
+/**
+ * Measures filtering and iterating a populated model.
+ * 
+ * @author James Leigh
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ModelReadBenchmark {
+	@Param( { "10000", "100000", "1000000", "10000000" })
+	private int size;
+	@Param
+	private ModelImplementation implementation;
+
+	private Model model;
+	private Resource[] subjects;
+	private URI[] predicates;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void populate() {
+		StatementGenerator generator = new StatementGenerator();
+		model = implementation.create();
+		for (Statement st : generator.generate(size)) {
+			model.add(st);
+		}
+		subjects = generator.subjects(size);
+		predicates = generator.predicates();
+	}
+
+	@TearDown(Level.Trial)
+	public void clearModel() {
+		model.clear();
+		model = null;
+		subjects = null;
+	}
+
+	@Benchmark
+	public void filterSubject(Blackhole bh) {
+		Resource subj = subjects[next++ % subjects.length];
+		for (Statement st : model.filter(subj, null, null)) {
+			bh.consume(st);
+		}
+	}
+
+	@Benchmark
+	public void filterSubjectPredicate(Blackhole bh) {
+		int i = next++;
+		Resource subj = subjects[i % subjects.length];
+		URI pred = predicates[i % predicates.length];
+		for (Statement st : model.filter(subj, pred, null)) {
+			bh.consume(st);
+		}
+	}
+
+	@Benchmark
+	public boolean contains() {
+		int i = next++;
+		Resource subj = subjects[i % subjects.length];
+		URI pred = predicates[i % predicates.length];
+		return model.contains(subj, pred, null);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Measurement(iterations = 5)
+	public void iterate(Blackhole bh) {
+		for (Statement st : model) {
+			bh.consume(st);
+		}
+	}
+}
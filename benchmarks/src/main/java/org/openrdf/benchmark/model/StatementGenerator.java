@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.benchmark.model;
+
+import java.util.Random;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+/**
+ * Generates a reproducible sequence of statements for a given seed. About
+ * eight statements share each subject, predicates are drawn from a small
+ * vocabulary and half of the objects are references to other subjects.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class StatementGenerator {
+	public static final long DEFAULT_SEED = 20120101L;
+	private static final String NS = "http://example.com/benchmark/";
+	private static final int PREDICATES = 16;
+	private static final int CONTEXTS = 4;
+	private static final int STATEMENTS_PER_SUBJECT = 8;
+
+	private final ValueFactory vf = ValueFactoryImpl.getInstance();
+	private final long seed;
+	private final URI[] predicates = new URI[PREDICATES];
+	private final Resource[] contexts = new Resource[CONTEXTS];
+
+	public StatementGenerator() {
+		this(DEFAULT_SEED);
+	}
+
+	public StatementGenerator(long seed) {
+		this.seed = seed;
+		for (int i = 0; i < PREDICATES; i++) {
+			predicates[i] = vf.createURI(NS, "p" + i);
+		}
+		for (int i = 0; i < CONTEXTS; i++) {
+			contexts[i] = vf.createURI(NS, "g" + i);
+		}
+	}
+
+	/**
+	 * Number of distinct subjects in a generated set of this size.
+	 */
+	public int getSubjectCount(int size) {
+		return Math.max(1, size / STATEMENTS_PER_SUBJECT);
+	}
+
+	/**
+	 * The subjects used in a generated set of this size.
+	 */
+	public Resource[] subjects(int size) {
+		Resource[] subjects = new Resource[getSubjectCount(size)];
+		for (int i = 0; i < subjects.length; i++) {
+			subjects[i] = vf.createURI(NS, "s" + i);
+		}
+		return subjects;
+	}
+
+	public URI[] predicates() {
+		return predicates.clone();
+	}
+
+	/**
+	 * Generates <code>size</code> statements, which are identical for every
+	 * call with the same seed and size.
+	 */
+	public Statement[] generate(int size) {
+		Random random = new Random(seed);
+		Resource[] subjects = subjects(size);
+		Statement[] statements = new Statement[size];
+		for (int i = 0; i < size; i++) {
+			Resource subj = subjects[random.nextInt(subjects.length)];
+			URI pred = predicates[random.nextInt(PREDICATES)];
+			Value obj;
+			if (random.nextBoolean()) {
+				obj = subjects[random.nextInt(subjects.length)];
+			} else {
+				obj = literal(random, i);
+			}
+			Resource ctx = contexts[random.nextInt(CONTEXTS)];
+			statements[i] = vf.createStatement(subj, pred, obj, ctx);
+		}
+		return statements;
+	}
+
+	private Literal literal(Random random, int i) {
+		switch (random.nextInt(3)) {
+		case 0:
+			return vf.createLiteral(random.nextInt());
+		case 1:
+			return vf.createLiteral("label " + i, "en");
+		default:
+			return vf.createLiteral("value " + Long.toHexString(random.nextLong()));
+		}
+	}
+}
@@ -30,12 +30,17 @@ package org.openrdf.store.blob;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.ServiceLoader;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,6 +52,7 @@ import org.slf4j.LoggerFactory;
  */
 public class BlobStoreFactory {
 	private static final String URL_KEY = "_url";
+	private static final String MBEAN_DOMAIN = "org.openrdf.store.blob";
 	private static BlobStoreFactory instance = new BlobStoreFactory();
 
 	public static BlobStoreFactory newInstance() {
@@ -56,6 +62,7 @@ public class BlobStoreFactory {
 	private final Logger logger = LoggerFactory
 			.getLogger(BlobStoreFactory.class);
 	private final Map<Map<String, String>, WeakReference<BlobStore>> stores = new HashMap<Map<String, String>, WeakReference<BlobStore>>();
+	private final Map<Map<String, String>, ObjectName> mbeans = new HashMap<Map<String, String>, ObjectName>();
 
 	private BlobStoreFactory() {
 		super();
@@ -76,10 +83,13 @@ public class BlobStoreFactory {
 		}
 		key.put(URL_KEY, url);
 		synchronized (stores) {
-			Iterator<WeakReference<BlobStore>> iter = stores.values().iterator();
+			Iterator<Map.Entry<Map<String, String>, WeakReference<BlobStore>>> iter;
+			iter = stores.entrySet().iterator();
 			while (iter.hasNext()) {
-				if (iter.next().get() == null) {
+				Map.Entry<Map<String, String>, WeakReference<BlobStore>> e = iter.next();
+				if (e.getValue().get() == null) {
 					iter.remove();
+					unregisterMBean(mbeans.remove(e.getKey()));
 				}
 			}
 			WeakReference<BlobStore> ref = stores.get(key);
@@ -95,6 +105,14 @@ public class BlobStoreFactory {
 					"No blob store provider is available for: " + url);
 		synchronized (stores) {
 			stores.put(key, new WeakReference<BlobStore>(store));
+			if (store instanceof MonitoredBlobStore) {
+				unregisterMBean(mbeans.remove(key));
+				BlobStoreMonitor monitor = ((MonitoredBlobStore) store).getMonitor();
+				ObjectName name = registerMBean(url, monitor);
+				if (name != null) {
+					mbeans.put(key, name);
+				}
+			}
 		}
 		return store;
 	}
@@ -113,6 +131,35 @@ public class BlobStoreFactory {
 		return openBlobStore(dir.toURI().toString());
 	}
 
+	private ObjectName registerMBean(String url, BlobStoreMXBean mbean) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_DOMAIN + ":type=BlobStore,url="
+					+ ObjectName.quote(url));
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(mbean, name);
+			return name;
+		} catch (JMException e) {
+			logger.warn(e.toString(), e);
+			return null;
+		}
+	}
+
+	private void unregisterMBean(ObjectName name) {
+		if (name == null)
+			return;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			logger.warn(e.toString(), e);
+		}
+	}
+
 	private BlobStore getBlobStoreProvider(String url,
 			Map<String, String> parameters) {
 		ClassLoader ccl = getClass().getClassLoader();
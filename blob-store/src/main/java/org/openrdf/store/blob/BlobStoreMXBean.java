@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.store.blob;
+
+/**
+ * Management interface of a {@link BlobStore} that is registered by the
+ * {@link BlobStoreFactory} with the platform MBeanServer.
+ * 
+ * @author James Leigh
+ * 
+ */
+public interface BlobStoreMXBean {
+
+	/**
+	 * Number of uncompressed bytes that have been read from blobs.
+	 */
+	long getBytesRead();
+
+	/**
+	 * Number of uncompressed bytes that have been written to blobs.
+	 */
+	long getBytesWritten();
+
+	/**
+	 * Ratio of uncompressed bytes to stored bytes of compressed blobs that
+	 * have been written, or zero if no compressed blob has been written.
+	 */
+	double getCompressionRatio();
+
+	/**
+	 * Number of blob input streams that have not yet been closed.
+	 */
+	int getOpenInputStreams();
+
+	/**
+	 * Number of blob output streams that have not yet been closed.
+	 */
+	int getOpenOutputStreams();
+
+	/**
+	 * Total number of milliseconds spent waiting to acquire the store's disk
+	 * lock.
+	 */
+	long getLockWaitTime();
+
+	/**
+	 * Number of times the store's disk lock has been acquired.
+	 */
+	long getLockCount();
+
+	/**
+	 * Upper bounds, in milliseconds, of each bucket in the latency histograms.
+	 * The last bucket has no upper bound.
+	 */
+	long[] getLatencyBuckets();
+
+	/**
+	 * Number of prepared blob versions within each latency bucket.
+	 */
+	long[] getPrepareLatencyHistogram();
+
+	/**
+	 * Number of committed blob versions within each latency bucket.
+	 */
+	long[] getCommitLatencyHistogram();
+
+	/**
+	 * Number of times a blob version failed to prepare because a blob had
+	 * since been modified.
+	 */
+	long getConflictCount();
+
+	/**
+	 * Number of bytes in the store's version journal index.
+	 */
+	long getJournalSize();
+
+	/**
+	 * Number of times the version journal index was read.
+	 */
+	long getJournalScanCount();
+
+	/**
+	 * Number of times a blob's version index was read.
+	 */
+	long getBlobIndexScanCount();
+
+	/**
+	 * Number of interrupted blob versions that were completed when the store
+	 * was opened.
+	 */
+	int getRecoveredVersionCount();
+
+	/**
+	 * Number of interrupted blob versions that were rolled back when the store
+	 * was opened.
+	 */
+	int getRolledBackVersionCount();
+
+	/**
+	 * Number of milliseconds spent recovering interrupted blob versions when
+	 * the store was opened.
+	 */
+	long getRecoveryTime();
+
+	/**
+	 * Resets all counters and histograms to zero. The recovery summary is not
+	 * affected.
+	 */
+	void resetCounters();
+}
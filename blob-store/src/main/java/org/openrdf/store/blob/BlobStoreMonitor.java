@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.store.blob;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the I/O, locking and transaction metrics of a {@link BlobStore}.
+ * Individual stream and version activity is logged at the trace level.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class BlobStoreMonitor implements BlobStoreMXBean {
+	private static final long[] BUCKETS = { 1, 2, 4, 8, 16, 32, 64, 128, 256,
+			512, 1024, 2048, 4096, 8192, 16384 };
+
+	private final Logger logger = LoggerFactory
+			.getLogger(BlobStoreMonitor.class);
+	private final File journal;
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final AtomicLong compressedBytes = new AtomicLong();
+	private final AtomicLong storedBytes = new AtomicLong();
+	private final AtomicInteger openInputStreams = new AtomicInteger();
+	private final AtomicInteger openOutputStreams = new AtomicInteger();
+	private final AtomicLong lockWait = new AtomicLong();
+	private final AtomicLong lockCount = new AtomicLong();
+	private final AtomicLongArray prepareLatency = new AtomicLongArray(
+			BUCKETS.length + 1);
+	private final AtomicLongArray commitLatency = new AtomicLongArray(
+			BUCKETS.length + 1);
+	private final AtomicLong conflicts = new AtomicLong();
+	private final AtomicLong journalScans = new AtomicLong();
+	private final AtomicLong blobIndexScans = new AtomicLong();
+	private volatile int recoveredVersions;
+	private volatile int rolledBackVersions;
+	private volatile long recoveryTime;
+
+	/**
+	 * @param journal
+	 *            the version journal index file or <code>null</code> if the
+	 *            store does not keep a journal
+	 */
+	public BlobStoreMonitor(File journal) {
+		this.journal = journal;
+	}
+
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	public double getCompressionRatio() {
+		long stored = storedBytes.get();
+		if (stored == 0)
+			return 0;
+		return (double) compressedBytes.get() / stored;
+	}
+
+	public int getOpenInputStreams() {
+		return openInputStreams.get();
+	}
+
+	public int getOpenOutputStreams() {
+		return openOutputStreams.get();
+	}
+
+	public long getLockWaitTime() {
+		return TimeUnit.NANOSECONDS.toMillis(lockWait.get());
+	}
+
+	public long getLockCount() {
+		return lockCount.get();
+	}
+
+	public long[] getLatencyBuckets() {
+		long[] buckets = new long[BUCKETS.length];
+		System.arraycopy(BUCKETS, 0, buckets, 0, BUCKETS.length);
+		return buckets;
+	}
+
+	public long[] getPrepareLatencyHistogram() {
+		return toArray(prepareLatency);
+	}
+
+	public long[] getCommitLatencyHistogram() {
+		return toArray(commitLatency);
+	}
+
+	public long getConflictCount() {
+		return conflicts.get();
+	}
+
+	public long getJournalSize() {
+		if (journal == null)
+			return 0;
+		return journal.length();
+	}
+
+	public long getJournalScanCount() {
+		return journalScans.get();
+	}
+
+	public long getBlobIndexScanCount() {
+		return blobIndexScans.get();
+	}
+
+	public int getRecoveredVersionCount() {
+		return recoveredVersions;
+	}
+
+	public int getRolledBackVersionCount() {
+		return rolledBackVersions;
+	}
+
+	public long getRecoveryTime() {
+		return recoveryTime;
+	}
+
+	public void resetCounters() {
+		bytesRead.set(0);
+		bytesWritten.set(0);
+		compressedBytes.set(0);
+		storedBytes.set(0);
+		lockWait.set(0);
+		lockCount.set(0);
+		for (int i = 0, n = prepareLatency.length(); i < n; i++) {
+			prepareLatency.set(i, 0);
+			commitLatency.set(i, 0);
+		}
+		conflicts.set(0);
+		journalScans.set(0);
+		blobIndexScans.set(0);
+	}
+
+	/**
+	 * Wraps the given lock to record the time spent waiting for it.
+	 */
+	public Lock timed(final Lock lock) {
+		return new Lock() {
+			public void lock() {
+				long start = System.nanoTime();
+				lock.lock();
+				locked(start);
+			}
+
+			public void lockInterruptibly() throws InterruptedException {
+				long start = System.nanoTime();
+				lock.lockInterruptibly();
+				locked(start);
+			}
+
+			public boolean tryLock() {
+				if (!lock.tryLock())
+					return false;
+				lockCount.incrementAndGet();
+				return true;
+			}
+
+			public boolean tryLock(long time, TimeUnit unit)
+					throws InterruptedException {
+				long start = System.nanoTime();
+				if (!lock.tryLock(time, unit))
+					return false;
+				locked(start);
+				return true;
+			}
+
+			public void unlock() {
+				lock.unlock();
+			}
+
+			public Condition newCondition() {
+				return lock.newCondition();
+			}
+		};
+	}
+
+	/**
+	 * Counts the bytes read from the given stream until it is closed.
+	 */
+	public InputStream openedInputStream(final String uri, InputStream in) {
+		if (in == null)
+			return null;
+		openInputStreams.incrementAndGet();
+		return new FilterInputStream(in) {
+			private long size;
+			private boolean closed;
+
+			public int read() throws IOException {
+				int read = super.read();
+				if (read >= 0) {
+					size++;
+				}
+				return read;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read > 0) {
+					size += read;
+				}
+				return read;
+			}
+
+			public long skip(long n) throws IOException {
+				long skipped = super.skip(n);
+				size += skipped;
+				return skipped;
+			}
+
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					if (!closed) {
+						closed = true;
+						closedInputStream(uri, size);
+					}
+				}
+			}
+		};
+	}
+
+	public void openedOutputStream() {
+		openOutputStreams.incrementAndGet();
+	}
+
+	public void closedOutputStream(String uri, long size) {
+		openOutputStreams.decrementAndGet();
+		bytesWritten.addAndGet(size);
+		logger.trace("Wrote {} bytes to {}", size, uri);
+	}
+
+	/**
+	 * Records the stored size of a compressed blob.
+	 */
+	public void compressed(long size, long stored) {
+		compressedBytes.addAndGet(size);
+		storedBytes.addAndGet(stored);
+	}
+
+	public void conflict(String uri) {
+		conflicts.incrementAndGet();
+		logger.trace("Conflicting modification of {}", uri);
+	}
+
+	/**
+	 * Records the latency of a prepare that started at the given
+	 * {@link System#nanoTime()}.
+	 */
+	public void prepared(String version, long start) {
+		long ms = record(prepareLatency, start);
+		logger.trace("Prepared {} in {} ms", version, ms);
+	}
+
+	/**
+	 * Records the latency of a commit that started at the given
+	 * {@link System#nanoTime()}.
+	 */
+	public void committed(String version, long start) {
+		long ms = record(commitLatency, start);
+		logger.trace("Committed {} in {} ms", version, ms);
+	}
+
+	/**
+	 * Records the summary of a recovery that started at the given
+	 * {@link System#nanoTime()}.
+	 */
+	public void recovered(int completed, int rolledBack, long start) {
+		recoveredVersions = completed;
+		rolledBackVersions = rolledBack;
+		recoveryTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	public void journalScanned() {
+		journalScans.incrementAndGet();
+	}
+
+	public void blobIndexScanned() {
+		blobIndexScans.incrementAndGet();
+	}
+
+	void locked(long start) {
+		lockWait.addAndGet(System.nanoTime() - start);
+		lockCount.incrementAndGet();
+	}
+
+	void closedInputStream(String uri, long size) {
+		openInputStreams.decrementAndGet();
+		bytesRead.addAndGet(size);
+		logger.trace("Read {} bytes from {}", size, uri);
+	}
+
+	private long record(AtomicLongArray histogram, long start) {
+		long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		int i = 0;
+		while (i < BUCKETS.length && ms >= BUCKETS[i]) {
+			i++;
+		}
+		histogram.incrementAndGet(i);
+		return ms;
+	}
+
+	private long[] toArray(AtomicLongArray histogram) {
+		long[] array = new long[histogram.length()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = histogram.get(i);
+		}
+		return array;
+	}
+}
@@ -51,6 +51,7 @@ import java.util.zip.GZIPOutputStream;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.openrdf.store.blob.BlobObject;
+import org.openrdf.store.blob.BlobStoreMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -198,19 +199,22 @@ public class DiskBlob extends BlobObject implements DiskListener {
 		init(false);
 		if (deleted)
 			return null;
+		BlobStoreMonitor monitor = disk.getMonitor();
 		if (writeFile != null && writeCompressed)
-			return new GZIPInputStream(new FileInputStream(writeFile));
+			return monitor.openedInputStream(uri, new GZIPInputStream(
+					new FileInputStream(writeFile)));
 		if (writeFile != null)
-			return new FileInputStream(writeFile);
+			return monitor.openedInputStream(uri, new FileInputStream(writeFile));
 		if (readFile == null)
 			return null;
 		Lock read = disk.readLock();
 		try {
 			read.lock();
-			FileInputStream fin = new FileInputStream(readFile);
-			if (readCompressed)
-				return new GZIPInputStream(fin);
-			return fin;
+			InputStream fin = new FileInputStream(readFile);
+			if (readCompressed) {
+				fin = new GZIPInputStream(fin);
+			}
+			return monitor.openedInputStream(uri, fin);
 		} finally {
 			read.unlock();
 		}
@@ -238,9 +242,12 @@ public class DiskBlob extends BlobObject implements DiskListener {
 		} catch (NoSuchAlgorithmException exc) {
 			throw new AssertionError(exc);
 		}
+		final BlobStoreMonitor monitor = disk.getMonitor();
+		monitor.openedOutputStream();
 		return writeStream = new FilterOutputStream(out) {
 			private long size = 0;
 			private IOException fatal;
+			private boolean closed;
 
 			public void write(int b) throws IOException {
 				try {
@@ -265,7 +272,14 @@ public class DiskBlob extends BlobObject implements DiskListener {
 			}
 
 			public void close() throws IOException {
-				super.close();
+				try {
+					super.close();
+				} finally {
+					if (!closed) {
+						closed = true;
+						monitor.closedOutputStream(uri, size);
+					}
+				}
 				written(fatal == null, size, md.digest(), this);
 			}
 		};
@@ -294,25 +308,44 @@ public class DiskBlob extends BlobObject implements DiskListener {
 		return sync();
 	}
 
-	protected synchronized boolean sync() throws IOException {
+	/**
+	 * Completes any pending change to this blob, without making it visible.
+	 * 
+	 * @return the entry that {@link #sync()} will append to this blob's index
+	 *         or <code>null</code> if there is no change to sync
+	 */
+	protected synchronized String getPendingEntry() throws IOException {
 		if (!open)
-			return false;
+			return null;
 		if (writeStream != null) {
 			// write stream was aborted
 			deleteWriteFile();
 		}
+		String iri = disk.getVersion();
+		if (deleted) {
+			return formatIndexEntry(null, 0, EMPTY_SHA1, iri);
+		} else if (writeFile != null) {
+			if (writeCompressed && writeFile.length() >= writeLength / 2) {
+				uncompress(writeFile);
+				writeCompressed = false;
+			}
+			return formatIndexEntry(writeFile, writeLength, writeDigest, iri);
+		}
+		return null;
+	}
+
+	protected synchronized boolean sync() throws IOException {
+		if (!open)
+			return false;
 		try {
+			String entry = getPendingEntry();
 			String iri = disk.getVersion();
 			if (deleted) {
-				appendIndexFile(null, 0, EMPTY_SHA1, iri);
+				appendIndexEntry(entry);
 				readVersion = iri;
 				return true;
 			} else if (writeFile != null) {
-				if (writeCompressed && writeFile.length() >= writeLength / 2) {
-					uncompress(writeFile);
-					writeCompressed = false;
-				}
-				appendIndexFile(writeFile, writeLength, writeDigest, iri);
+				appendIndexEntry(entry);
 				readVersion = iri;
 				readFile = writeFile;
 				readCompressed = writeCompressed;
@@ -370,6 +403,52 @@ public class DiskBlob extends BlobObject implements DiskListener {
 		});
 	}
 
+	/**
+	 * Appends the given entry to this blob's index, unless it is already
+	 * present.
+	 * 
+	 * @return <code>false</code> if the entry's file is missing
+	 */
+	protected synchronized boolean recover(String entry) throws IOException {
+		final String[] split = entry.split("\\s+", 4);
+		if (split[0].length() > 0 && !new File(dir, split[0]).isFile())
+			return false;
+		Boolean present = eachVersion(new Closure<Boolean>() {
+			public Boolean call(String name, long length, byte[] sha1,
+					String iri) {
+				if (name.equals(split[0]) && iri.equals(split[3]))
+					return Boolean.TRUE;
+				return null;
+			}
+		});
+		if (present == null) {
+			dir.mkdirs();
+			appendIndexEntry(entry);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the given entry from this blob's index and deletes its file.
+	 */
+	protected synchronized void rollback(String entry) throws IOException {
+		final String[] split = entry.split("\\s+", 4);
+		filterVersion(new Closure<Boolean>() {
+			public Boolean call(String name, long length, byte[] sha1,
+					String iri) {
+				return !name.equals(split[0]) || !iri.equals(split[3]);
+			}
+		});
+		if (split[0].length() > 0) {
+			File file = new File(dir, split[0]);
+			file.delete();
+			File d = file.getParentFile();
+			while (!d.equals(disk.getDirectory()) && d.delete()) {
+				d = d.getParentFile();
+			}
+		}
+	}
+
 	private synchronized boolean filterVersion(final Closure<Boolean> closure) throws IOException {
 		final AtomicBoolean erased = new AtomicBoolean(false);
 		final File rest = new File(dir, getIndexFileName(disk.getVersion()
@@ -451,6 +530,9 @@ public class DiskBlob extends BlobObject implements DiskListener {
 			deleted = false;
 			writeLength = size;
 			writeDigest = digest;
+			if (writeCompressed && writeFile != null) {
+				disk.getMonitor().compressed(size, writeFile.length());
+			}
 		} else {
 			deleteWriteFile();
 		}
@@ -541,6 +623,7 @@ public class DiskBlob extends BlobObject implements DiskListener {
 			File index = new File(dir, getIndexFileName(null));
 			if (!index.exists())
 				return null;
+			disk.getMonitor().blobIndexScanned();
 			BufferedReader reader = new BufferedReader(new FileReader(index));
 			try {
 				String line;
@@ -571,29 +654,35 @@ public class DiskBlob extends BlobObject implements DiskListener {
 		return null;
 	}
 
-	private void appendIndexFile(File file, long length, byte[] sha1, String iri)
-			throws IOException {
+	private String formatIndexEntry(File file, long length, byte[] sha1,
+			String iri) {
 		assert sha1 != null && sha1.length > 0;
+		StringBuilder sb = new StringBuilder();
+		if (file != null) {
+			String jpath = dir.getAbsolutePath();
+			String path = file.getAbsolutePath();
+			if (path.startsWith(jpath)
+					&& path.charAt(jpath.length()) == File.separatorChar) {
+				path = path.substring(jpath.length() + 1);
+			} else {
+				throw new AssertionError("Invalid blob entry path: " + path);
+			}
+			sb.append(path.replace(File.separatorChar, '/'));
+		}
+		sb.append(' ');
+		sb.append(Long.toString(length));
+		sb.append(' ');
+		sb.append(Hex.encodeHex(sha1));
+		sb.append(' ');
+		sb.append(iri);
+		return sb.toString();
+	}
+
+	private void appendIndexEntry(String entry) throws IOException {
 		File index = new File(dir, getIndexFileName(null));
 		PrintWriter writer = new PrintWriter(new FileWriter(index, true));
 		try {
-			if (file != null) {
-				String jpath = dir.getAbsolutePath();
-				String path = file.getAbsolutePath();
-				if (path.startsWith(jpath)
-						&& path.charAt(jpath.length()) == File.separatorChar) {
-					path = path.substring(jpath.length() + 1);
-				} else {
-					throw new AssertionError("Invalid blob entry path: " + path);
-				}
-				writer.print(path.replace(File.separatorChar, '/'));
-			}
-			writer.print(' ');
-			writer.print(Long.toString(length));
-			writer.print(' ');
-			writer.print(Hex.encodeHex(sha1));
-			writer.print(' ');
-			writer.println(iri);
+			writer.println(entry);
 		} finally {
 			writer.close();
 		}
@@ -48,20 +48,28 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.openrdf.store.blob.BlobObject;
-import org.openrdf.store.blob.BlobStore;
+import org.openrdf.store.blob.BlobStoreMonitor;
+import org.openrdf.store.blob.MonitoredBlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class DiskBlobStore implements BlobStore {
+public class DiskBlobStore implements MonitoredBlobStore {
 	private static final int MAX_HISTORY = 1000;
 
 	private interface Closure<V> {
 		V call(String name, String iri) throws IOException;
 	};
 
+	private final Logger logger = LoggerFactory.getLogger(DiskBlobStore.class);
 	private final File dir;
 	private final File journal;
+	private final File pending;
 	private final String prefix;
 	private final AtomicLong seq = new AtomicLong(0);
 	private final ReentrantReadWriteLock diskLock = new ReentrantReadWriteLock();
+	private final BlobStoreMonitor monitor;
+	private final Lock readLock;
+	private final Lock writeLock;
 	private final Map<String, Set<DiskListener>> listeners = new HashMap<String, Set<DiskListener>>();
 	/** version -> open DiskTransaction */
 	private final Map<String, WeakReference<DiskBlobVersion>> transactions;
@@ -70,6 +78,10 @@ public class DiskBlobStore implements BlobStore {
 		assert dir != null;
 		this.dir = dir;
 		this.journal = new File(dir, "$versions");
+		this.pending = new File(journal, "pending");
+		this.monitor = new BlobStoreMonitor(new File(journal, "index"));
+		this.readLock = monitor.timed(diskLock.readLock());
+		this.writeLock = monitor.timed(diskLock.writeLock());
 		this.transactions = new WeakHashMap<String, WeakReference<DiskBlobVersion>>();
 		this.prefix = new File(getDirectory(), "trx").toURI().toString();
 		eachEntry(new Closure<Void>() {
@@ -85,6 +97,7 @@ public class DiskBlobStore implements BlobStore {
 				return null;
 			}
 		});
+		recover();
 	}
 
 	public String toString() {
@@ -108,6 +121,10 @@ public class DiskBlobStore implements BlobStore {
 		return true;
 	}
 
+	public BlobStoreMonitor getMonitor() {
+		return monitor;
+	}
+
 	public BlobObject open(String uri) throws IOException {
 		return new LiveDiskBlob(this, uri);
 	}
@@ -132,13 +149,7 @@ public class DiskBlobStore implements BlobStore {
 	}
 
 	public DiskBlobVersion openVersion(final String version) throws IOException {
-		File entry = eachEntry(new Closure<File>() {
-			public File call(String name, String id) {
-				if (id.equals(version))
-					return new File(journal, name);
-				return null;
-			}
-		});
+		File entry = findEntry(version);
 		if (entry == null)
 			throw new IllegalArgumentException("Unknown blob version: " + version);
 		synchronized (transactions) {
@@ -240,15 +251,15 @@ public class DiskBlobStore implements BlobStore {
 	}
 
 	protected Lock readLock() {
-		return diskLock.readLock();
+		return readLock;
 	}
 
 	protected void lock() {
-		diskLock.writeLock().lock();
+		writeLock.lock();
 	}
 
 	protected void unlock() {
-		diskLock.writeLock().unlock();
+		writeLock.unlock();
 	}
 
 	protected void changed(String version, Collection<String> blobs, File entry, Collection<String> previousVersions)
@@ -296,6 +307,24 @@ public class DiskBlobStore implements BlobStore {
 		}
 	}
 
+	protected File newPendingFile(String version) {
+		pending.mkdirs();
+		int code = version.hashCode();
+		File file;
+		do {
+			file = new File(pending, Integer.toHexString(code++));
+		} while (file.exists());
+		return file;
+	}
+
+	protected void removePending(File file) {
+		file.delete();
+		String[] list = pending.list();
+		if (list != null && list.length == 0) {
+			pending.delete();
+		}
+	}
+
 	protected void removeFromIndex(String erasing) throws IOException {
 		lock();
 		try {
@@ -318,6 +347,67 @@ public class DiskBlobStore implements BlobStore {
 		}
 	}
 
+	/**
+	 * Completes or rolls back any commits that were interrupted, by reading
+	 * only the pending area of the journal.
+	 */
+	private void recover() throws IOException {
+		File[] files = pending.listFiles();
+		if (files == null || files.length == 0)
+			return;
+		long start = System.nanoTime();
+		int completed = 0;
+		int rolledBack = 0;
+		lock();
+		try {
+			for (File file : files) {
+				String version = readFirstLine(file);
+				if (version == null) {
+					removePending(file);
+					rolledBack++;
+					continue;
+				}
+				File entry = findEntry(version);
+				DiskBlobVersion trx;
+				if (entry == null) {
+					trx = new DiskBlobVersion(this, version, journal);
+				} else {
+					trx = new DiskBlobVersion(this, version, entry);
+				}
+				if (trx.recover(file)) {
+					completed++;
+				} else {
+					rolledBack++;
+				}
+			}
+		} finally {
+			unlock();
+		}
+		monitor.recovered(completed, rolledBack, start);
+		logger.info(
+				"Recovered {} interrupted blob versions in {}: {} completed and {} rolled back",
+				new Object[] { files.length, dir, completed, rolledBack });
+	}
+
+	private String readFirstLine(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			return reader.readLine();
+		} finally {
+			reader.close();
+		}
+	}
+
+	private File findEntry(final String version) throws IOException {
+		return eachEntry(new Closure<File>() {
+			public File call(String name, String id) {
+				if (id.equals(version))
+					return new File(journal, name);
+				return null;
+			}
+		});
+	}
+
 	private boolean copy(File source, File destintation, String exclude)
 			throws FileNotFoundException, IOException {
 		boolean empty = true;
@@ -369,6 +459,7 @@ public class DiskBlobStore implements BlobStore {
 			readLock.lock();
 			if (!index.exists())
 				return null;
+			monitor.journalScanned();
 			BufferedReader reader = new BufferedReader(new FileReader(index));
 			try {
 				String line;
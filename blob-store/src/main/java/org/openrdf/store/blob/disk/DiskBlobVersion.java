@@ -31,23 +31,31 @@ package org.openrdf.store.blob.disk;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
 
 import org.openrdf.store.blob.BlobObject;
+import org.openrdf.store.blob.BlobStoreMonitor;
 import org.openrdf.store.blob.BlobVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class DiskBlobVersion implements BlobVersion {
+	private static final String END_OF_PENDING = ".";
+	private final Logger logger = LoggerFactory.getLogger(DiskBlobVersion.class);
 	private final DiskBlobStore store;
 	private final String version;
 	private final File journal;
@@ -117,55 +125,81 @@ public class DiskBlobVersion implements BlobVersion {
 	public synchronized void prepare() throws IOException {
 		if (prepared)
 			return;
+		long start = System.nanoTime();
 		store.lock();
 		prepared = true;
 		boolean faild = true;
 		try {
 			for (DiskBlob blob : open.values()) {
-				if (blob.hasConflict())
+				if (blob.hasConflict()) {
+					getMonitor().conflict(blob.toUri().toString());
 					throw new IOException("Resource has since been modified: "
 							+ blob.toUri());
+				}
 			}
 			faild = false;
 		} finally {
 			if (faild) {
 				prepared = false;
 				store.unlock();
+			} else {
+				getMonitor().prepared(version, start);
 			}
 		}
 	}
 
 	public synchronized void commit() throws IOException {
+		long start = System.nanoTime();
 		boolean newversion = committed.isEmpty();
 		if (!prepared) {
 			prepare();
 		}
-		Set<String> obsolete = new HashSet<String>(open.size());
-		for (Map.Entry<String, DiskBlob> e : open.entrySet()) {
-			String version = e.getValue().getCommittedVersion();
-			if (e.getValue().isChangePending()) {
-				if (committed.contains(e.getKey())) {
-					if (e.getValue().resync()) {
-						obsolete.add(version);
-					}
-				} else {
-					if (e.getValue().sync()) {
-						committed.add(e.getKey());
-						obsolete.add(version);
+		File pending = null;
+		Set<String> synced = new HashSet<String>(open.size());
+		boolean success = false;
+		try {
+			pending = writePending();
+			Set<String> obsolete = new HashSet<String>(open.size());
+			for (Map.Entry<String, DiskBlob> e : open.entrySet()) {
+				String version = e.getValue().getCommittedVersion();
+				if (e.getValue().isChangePending()) {
+					if (committed.contains(e.getKey())) {
+						if (e.getValue().resync()) {
+							obsolete.add(version);
+						}
+					} else {
+						if (e.getValue().sync()) {
+							committed.add(e.getKey());
+							synced.add(e.getKey());
+							obsolete.add(version);
+						}
 					}
 				}
 			}
-		}
-		open.keySet().retainAll(committed);
-		if (!committed.isEmpty()) {
-			File file = writeChanges(this.getVersion(), committed);
-			if (newversion) {
-				store.newBlobVersion(this.getVersion(), file);
+			open.keySet().retainAll(committed);
+			if (!committed.isEmpty()) {
+				File file = writeChanges(this.getVersion(), committed);
+				if (newversion) {
+					store.newBlobVersion(this.getVersion(), file);
+				}
+				store.changed(this.getVersion(), committed, file, obsolete);
+			}
+			success = true;
+		} finally {
+			try {
+				if (success) {
+					if (pending != null) {
+						store.removePending(pending);
+					}
+				} else {
+					undo(pending, synced);
+				}
+			} finally {
+				prepared = false;
+				store.unlock();
 			}
-			store.changed(this.getVersion(), committed, file, obsolete);
 		}
-		prepared = false;
-		store.unlock();
+		getMonitor().committed(version, start);
 	}
 
 	public synchronized void rollback() {
@@ -203,6 +237,63 @@ public class DiskBlobVersion implements BlobVersion {
 		}
 	}
 
+	/**
+	 * Completes or rolls back the interrupted commit of this version that is
+	 * recorded in the given pending file.
+	 * 
+	 * @return <code>true</code> if the commit was completed
+	 */
+	protected synchronized boolean recover(File pending) throws IOException {
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		boolean recovered = readPending(pending, entries);
+		if (recovered) {
+			for (Map.Entry<String, String> e : entries.entrySet()) {
+				if (!new DiskBlob(this, e.getKey()).recover(e.getValue())) {
+					recovered = false;
+					break;
+				}
+			}
+		}
+		if (recovered && !entries.isEmpty()) {
+			boolean newversion = entry == null;
+			committed.addAll(entries.keySet());
+			File file = writeChanges(getVersion(), committed);
+			if (newversion) {
+				store.newBlobVersion(getVersion(), file);
+			}
+		} else if (!recovered) {
+			for (Map.Entry<String, String> e : entries.entrySet()) {
+				new DiskBlob(this, e.getKey()).rollback(e.getValue());
+			}
+		}
+		store.removePending(pending);
+		return recovered;
+	}
+
+	/**
+	 * Removes the entries of a failed commit, so they are not replayed by a
+	 * later recovery.
+	 */
+	private void undo(File pending, Set<String> synced) {
+		committed.removeAll(synced);
+		open.keySet().removeAll(synced);
+		for (DiskBlob blob : open.values()) {
+			blob.abort();
+		}
+		if (pending == null)
+			return;
+		try {
+			Map<String, String> entries = new LinkedHashMap<String, String>();
+			readPending(pending, entries);
+			for (Map.Entry<String, String> e : entries.entrySet()) {
+				new DiskBlob(this, e.getKey()).rollback(e.getValue());
+			}
+			store.removePending(pending);
+		} catch (IOException e) {
+			logger.error(e.toString(), e);
+		}
+	}
+
 	protected synchronized void addOpenBlobs(Collection<String> set) {
 		set.addAll(open.keySet());
 	}
@@ -221,6 +312,10 @@ public class DiskBlobVersion implements BlobVersion {
 		return store.getDirectory();
 	}
 
+	protected BlobStoreMonitor getMonitor() {
+		return store.getMonitor();
+	}
+
 	protected String getVersion() {
 		return version;
 	}
@@ -237,6 +332,67 @@ public class DiskBlobVersion implements BlobVersion {
 		return store.readLock();
 	}
 
+	/**
+	 * Records the changes that are about to be committed, so they can be
+	 * completed if this commit is interrupted.
+	 * 
+	 * @return the pending file or <code>null</code> if nothing is changed
+	 */
+	private File writePending() throws IOException {
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, DiskBlob> e : open.entrySet()) {
+			if (e.getValue().isChangePending()) {
+				String entry = e.getValue().getPendingEntry();
+				if (entry != null) {
+					entries.put(e.getKey(), entry);
+				}
+			}
+		}
+		if (entries.isEmpty())
+			return null;
+		File file = store.newPendingFile(getVersion());
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			PrintWriter writer = new PrintWriter(new OutputStreamWriter(out));
+			writer.println(getVersion());
+			for (Map.Entry<String, String> e : entries.entrySet()) {
+				writer.println(e.getKey());
+				writer.println(e.getValue());
+			}
+			writer.println(END_OF_PENDING);
+			if (writer.checkError())
+				throw new IOException("Could not write " + file);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * @return <code>true</code> if the pending file was completely written
+	 */
+	private boolean readPending(File pending, Map<String, String> entries)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(pending));
+		try {
+			String line = reader.readLine();
+			if (!getVersion().equals(line))
+				return false;
+			while ((line = reader.readLine()) != null) {
+				if (END_OF_PENDING.equals(line))
+					return true;
+				String entry = reader.readLine();
+				if (entry == null || entry.split("\\s+", 4).length < 4)
+					return false;
+				entries.put(line, entry);
+			}
+			return false;
+		} finally {
+			reader.close();
+		}
+	}
+
 	private Map<String, DiskBlob> readChanges(File changes) throws IOException {
 		Lock readLock = store.readLock();
 		try {
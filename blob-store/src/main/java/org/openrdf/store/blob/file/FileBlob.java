@@ -39,6 +39,7 @@ import java.net.URI;
 import java.util.concurrent.locks.Lock;
 
 import org.openrdf.store.blob.BlobObject;
+import org.openrdf.store.blob.BlobStoreMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -166,14 +167,15 @@ public class FileBlob extends BlobObject implements FileListener {
 		init(false);
 		if (deleted)
 			return null;
+		BlobStoreMonitor monitor = disk.getMonitor();
 		if (written)
-			return new FileInputStream(writeFile);
+			return monitor.openedInputStream(uri, new FileInputStream(writeFile));
 		Lock read = disk.readLock();
 		try {
 			read.lock();
 			if (readFile == null || !readFile.exists())
 				return null;
-			return new FileInputStream(readFile);
+			return monitor.openedInputStream(uri, new FileInputStream(readFile));
 		} finally {
 			read.unlock();
 		}
@@ -186,12 +188,17 @@ public class FileBlob extends BlobObject implements FileListener {
 		if (!dir.canWrite() || writeFile.exists() && !writeFile.canWrite())
 			throw new IOException("Cannot open blob file for writting");
 		final OutputStream fout = new FileOutputStream(writeFile);
+		final BlobStoreMonitor monitor = disk.getMonitor();
+		monitor.openedOutputStream();
 		return new FilterOutputStream(fout) {
+			private long size = 0;
 			private IOException fatal;
+			private boolean closed;
 
 			public void write(int b) throws IOException {
 				try {
 					fout.write(b);
+					size++;
 				} catch (IOException e) {
 					fatal = e;
 					throw e;
@@ -201,6 +208,7 @@ public class FileBlob extends BlobObject implements FileListener {
 			public void write(byte[] b, int off, int len) throws IOException {
 				try {
 					fout.write(b, off, len);
+					size += len;
 				} catch (IOException e) {
 					fatal = e;
 					throw e;
@@ -208,7 +216,14 @@ public class FileBlob extends BlobObject implements FileListener {
 			}
 
 			public void close() throws IOException {
-				fout.close();
+				try {
+					fout.close();
+				} finally {
+					if (!closed) {
+						closed = true;
+						monitor.closedOutputStream(uri, size);
+					}
+				}
 				written(fatal == null);
 			}
 		};
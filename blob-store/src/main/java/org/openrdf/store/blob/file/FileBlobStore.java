@@ -39,12 +39,16 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.openrdf.store.blob.BlobObject;
-import org.openrdf.store.blob.BlobStore;
+import org.openrdf.store.blob.BlobStoreMonitor;
+import org.openrdf.store.blob.MonitoredBlobStore;
 
 @Deprecated
-public class FileBlobStore implements BlobStore {
+public class FileBlobStore implements MonitoredBlobStore {
 	private final File dir;
 	private final ReentrantReadWriteLock diskLock = new ReentrantReadWriteLock();
+	private final BlobStoreMonitor monitor = new BlobStoreMonitor(null);
+	private final Lock readLock = monitor.timed(diskLock.readLock());
+	private final Lock writeLock = monitor.timed(diskLock.writeLock());
 	private final Map<String, Set<FileListener>> listeners = new HashMap<String, Set<FileListener>>();
 
 	public FileBlobStore(File dir) throws IOException {
@@ -73,6 +77,10 @@ public class FileBlobStore implements BlobStore {
 		return true;
 	}
 
+	public BlobStoreMonitor getMonitor() {
+		return monitor;
+	}
+
 	public BlobObject open(String uri) throws IOException {
 		return new LiveFileBlob(this, uri);
 	}
@@ -139,15 +147,15 @@ public class FileBlobStore implements BlobStore {
 	}
 
 	protected Lock readLock() {
-		return diskLock.readLock();
+		return readLock;
 	}
 
 	protected void lock() {
-		diskLock.writeLock().lock();
+		writeLock.lock();
 	}
 
 	protected void unlock() {
-		diskLock.writeLock().unlock();
+		writeLock.unlock();
 	}
 
 	protected void changed(Collection<String> blobs) throws IOException {
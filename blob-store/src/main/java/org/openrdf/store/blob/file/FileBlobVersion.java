@@ -37,6 +37,7 @@ import java.util.Set;
 import java.util.concurrent.locks.Lock;
 
 import org.openrdf.store.blob.BlobObject;
+import org.openrdf.store.blob.BlobStoreMonitor;
 import org.openrdf.store.blob.BlobVersion;
 
 @Deprecated
@@ -94,25 +95,31 @@ public class FileBlobVersion implements BlobVersion {
 	public synchronized void prepare() throws IOException {
 		if (prepared)
 			throw new IllegalStateException("This version is already prepared");
+		long start = System.nanoTime();
 		store.lock();
 		prepared = true;
 		boolean faild = true;
 		try {
 			for (FileBlob blob : open.values()) {
-				if (blob.hasConflict())
+				if (blob.hasConflict()) {
+					getMonitor().conflict(blob.toString());
 					throw new IOException("Resource has since been modified: "
 							+ blob.toUri());
+				}
 			}
 			faild = false;
 		} finally {
 			if (faild) {
 				prepared = false;
 				store.unlock();
+			} else {
+				getMonitor().prepared(toString(), start);
 			}
 		}
 	}
 
 	public synchronized void commit() throws IOException {
+		long start = System.nanoTime();
 		if (!prepared) {
 			prepare();
 		}
@@ -127,6 +134,7 @@ public class FileBlobVersion implements BlobVersion {
 		}
 		prepared = false;
 		store.unlock();
+		getMonitor().committed(toString(), start);
 	}
 
 	public synchronized void rollback() {
@@ -146,6 +154,10 @@ public class FileBlobVersion implements BlobVersion {
 		return store.getDirectory();
 	}
 
+	protected BlobStoreMonitor getMonitor() {
+		return store.getMonitor();
+	}
+
 	protected void watch(String uri, FileListener listener) {
 		store.watch(uri, listener);
 	}
@@ -182,6 +182,29 @@ public abstract class BlobStoreTestCase extends TestCase {
 			throw error;
 	}
 
+	public void testMonitor() throws Exception {
+		BlobStoreMonitor monitor = ((MonitoredBlobStore) store).getMonitor();
+		BlobVersion trx1 = store.newVersion("urn:test:trx1");
+		Writer file = trx1.open("urn:test:file").openWriter();
+		assertEquals(1, monitor.getOpenOutputStreams());
+		file.append("blob store test");
+		file.close();
+		assertEquals(0, monitor.getOpenOutputStreams());
+		trx1.commit();
+		BlobVersion trx2 = store.newVersion("urn:test:trx2");
+		CharSequence str = trx2.open("urn:test:file").getCharContent(true);
+		assertEquals("blob store test", str.toString());
+		assertEquals(0, monitor.getOpenInputStreams());
+		assertEquals(str.length(), monitor.getBytesWritten());
+		assertEquals(str.length(), monitor.getBytesRead());
+		assertEquals(1, sum(monitor.getPrepareLatencyHistogram()));
+		assertEquals(1, sum(monitor.getCommitLatencyHistogram()));
+		assertTrue(monitor.getLockCount() > 0);
+		monitor.resetCounters();
+		assertEquals(0, monitor.getBytesRead());
+		assertEquals(0, sum(monitor.getCommitLatencyHistogram()));
+	}
+
 	protected void assertEmpty(File dir) {
 		assertEquals(dir.getName() + "/", tree(dir, 0).toString());
 	}
@@ -201,4 +224,12 @@ public abstract class BlobStoreTestCase extends TestCase {
 		return sb;
 	}
 
+	private long sum(long[] histogram) {
+		long sum = 0;
+		for (long count : histogram) {
+			sum += count;
+		}
+		return sum;
+	}
+
 }
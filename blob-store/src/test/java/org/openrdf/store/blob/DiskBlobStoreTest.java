@@ -1,9 +1,15 @@
 package org.openrdf.store.blob;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.openrdf.store.blob.disk.DiskBlobStore;
 
@@ -183,4 +189,137 @@ public class DiskBlobStoreTest extends BlobStoreTestCase {
 				Arrays.asList(store.open("urn:test:file").getRecentVersions()));
 	}
 
+	public void testRecoverInterruptedCommit() throws Exception {
+		BlobVersion trx1 = store.newVersion("urn:test:trx1");
+		Writer file = trx1.open("urn:test:file").openWriter();
+		file.append("test1");
+		file.close();
+		trx1.commit();
+		BlobVersion trx2 = store.newVersion("urn:test:trx2");
+		file = trx2.open("urn:test:file").openWriter();
+		file.append("test2");
+		file.close();
+		trx2.commit();
+		// interrupt trx2 after the blob was synced, but before it was indexed
+		File journal = new File(dir, "$versions");
+		File index = new File(journal, "index");
+		List<String> lines = readLines(index);
+		String last = lines.remove(lines.size() - 1);
+		assertTrue(last.endsWith(" urn:test:trx2"));
+		new File(journal, last.substring(0, last.indexOf(' '))).delete();
+		writeLines(index, lines);
+		List<String> blob = readLines(findBlobIndex(dir));
+		File pending = new File(journal, "pending");
+		pending.mkdirs();
+		writeLines(new File(pending, "trx2"), Arrays.asList("urn:test:trx2",
+				"urn:test:file", blob.get(blob.size() - 1), "."));
+		store = new DiskBlobStore(dir);
+		assertFalse(pending.exists());
+		assertEquals(1, ((DiskBlobStore) store).getMonitor()
+				.getRecoveredVersionCount());
+		assertEquals("test2",
+				store.openVersion("urn:test:trx2").open("urn:test:file")
+						.getCharContent(true).toString());
+		assertEquals("test2", store.open("urn:test:file").getCharContent(true)
+				.toString());
+	}
+
+	public void testRollbackIncompleteCommit() throws Exception {
+		BlobVersion trx1 = store.newVersion("urn:test:trx1");
+		Writer file = trx1.open("urn:test:file").openWriter();
+		file.append("test1");
+		file.close();
+		trx1.commit();
+		File pending = new File(new File(dir, "$versions"), "pending");
+		pending.mkdirs();
+		writeLines(new File(pending, "trx2"), Arrays.asList("urn:test:trx2",
+				"urn:test:file"));
+		store = new DiskBlobStore(dir);
+		assertFalse(pending.exists());
+		assertEquals(1, ((DiskBlobStore) store).getMonitor()
+				.getRolledBackVersionCount());
+		assertEquals("test1", store.open("urn:test:file").getCharContent(true)
+				.toString());
+		try {
+			store.openVersion("urn:test:trx2");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// pass
+		}
+	}
+
+	public void testFailedCommitIsNotRecovered() throws Exception {
+		BlobVersion trx1 = store.newVersion("urn:test:trx1");
+		Writer file = trx1.open("urn:test:file").openWriter();
+		file.append("test1");
+		file.close();
+		trx1.commit();
+		// make the version index unwritable, so trx2 fails after its blob synced
+		File journal = new File(dir, "$versions");
+		File index = new File(journal, "index");
+		File backup = new File(journal, "index.bak");
+		assertTrue(index.renameTo(backup));
+		assertTrue(index.mkdir());
+		BlobVersion trx2 = store.newVersion("urn:test:trx2");
+		file = trx2.open("urn:test:file").openWriter();
+		file.append("test2");
+		file.close();
+		try {
+			trx2.commit();
+			fail();
+		} catch (IOException e) {
+			// pass
+		}
+		assertTrue(index.delete());
+		assertTrue(backup.renameTo(index));
+		File pending = new File(journal, "pending");
+		assertFalse(pending.exists());
+		store = new DiskBlobStore(dir);
+		assertEquals(0, ((DiskBlobStore) store).getMonitor()
+				.getRecoveredVersionCount());
+		assertEquals("test1", store.open("urn:test:file").getCharContent(true)
+				.toString());
+	}
+
+	private File findBlobIndex(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null)
+			return null;
+		for (File file : files) {
+			if (file.isFile() && file.getName().startsWith("index$"))
+				return file;
+			if (file.isDirectory() && !file.getName().equals("$versions")) {
+				File index = findBlobIndex(file);
+				if (index != null)
+					return index;
+			}
+		}
+		return null;
+	}
+
+	private List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	private void writeLines(File file, List<String> lines) throws IOException {
+		PrintWriter writer = new PrintWriter(new FileWriter(file));
+		try {
+			for (String line : lines) {
+				writer.println(line);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
 }
@@ -28,13 +28,27 @@
  */
 package org.openrdf.sail.keyword;
 
+import info.aduna.iteration.CloseableIteration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.algebra.UpdateExpr;
 import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailException;
@@ -56,6 +70,13 @@ public class KeywordConnection extends SailConnectionWrapper {
 	private final Resource graph;
 	private final URI property;
 	private final InferencerConnection infer;
+	private final PhoneIndex index;
+	private final Map<Resource, Set<String>> indexed = new HashMap<Resource, Set<String>>();
+	private final Map<Resource, Set<String>> unindexed = new HashMap<Resource, Set<String>>();
+	private final PrefixIndex prefix;
+	private final Set<Literal> completions = new HashSet<Literal>();
+	private final Set<Literal> uncompleted = new HashSet<Literal>();
+	private boolean cleared;
 
 	protected KeywordConnection(KeywordSail sail,
 			SailConnection delegate, PhoneHelper keyword)
@@ -66,6 +87,8 @@ public class KeywordConnection extends SailConnectionWrapper {
 		this.vf = sail.getValueFactory();
 		this.graph = sail.getPhoneGraph();
 		this.property = sail.getPhoneProperty();
+		this.index = sail.getPhoneIndex();
+		this.prefix = sail.getPrefixIndex();
 		if (delegate instanceof InferencerConnection) {
 			infer = (InferencerConnection) delegate;
 		} else {
@@ -78,6 +101,58 @@ public class KeywordConnection extends SailConnectionWrapper {
 		return getWrappedConnection().toString();
 	}
 
+	@Override
+	public CloseableIteration<? extends BindingSet, QueryEvaluationException> evaluate(
+			TupleExpr tupleExpr, Dataset dataset, BindingSet bindings,
+			boolean includeInferred) throws SailException {
+		tupleExpr = tupleExpr.clone();
+		new KeywordIndexOptimizer(sail, helper).optimize(tupleExpr, dataset,
+				bindings);
+		return super.evaluate(tupleExpr, dataset, bindings, includeInferred);
+	}
+
+	@Override
+	public void commit() throws SailException {
+		super.commit();
+		try {
+			if (prefix != null) {
+				if (cleared) {
+					prefix.clear();
+				}
+				for (Literal label : uncompleted) {
+					if (!isIndexedValue(label)) {
+						prefix.remove(label);
+					}
+				}
+				for (Literal label : completions) {
+					prefix.add(label);
+				}
+			}
+			if (index != null) {
+				if (cleared) {
+					index.clear();
+				}
+				for (Map.Entry<Resource, Set<String>> e : unindexed.entrySet()) {
+					index.remove(PhoneIndexSet.key(e.getKey()), e.getValue());
+				}
+				for (Map.Entry<Resource, Set<String>> e : indexed.entrySet()) {
+					index.add(PhoneIndexSet.key(e.getKey()), e.getValue());
+				}
+				index.commit();
+			}
+		} catch (IOException e) {
+			throw new SailException(e);
+		} finally {
+			resetPending();
+		}
+	}
+
+	@Override
+	public void rollback() throws SailException {
+		resetPending();
+		super.rollback();
+	}
+
 	@Override
 	public void executeUpdate(UpdateExpr updateExpr, Dataset dataset,
 			BindingSet bindings, boolean includeInferred) throws SailException {
@@ -91,11 +166,52 @@ public class KeywordConnection extends SailConnectionWrapper {
 		super.addStatement(subj, pred, obj, contexts);
 		if (sail.isIndexedProperty(pred)) {
 			index(subj, obj);
+			if (prefix != null && obj instanceof Literal) {
+				uncompleted.remove(obj);
+				completions.add((Literal) obj);
+			}
+		}
+	}
+
+	@Override
+	public void removeStatements(Resource subj, URI pred, Value obj,
+			Resource... contexts) throws SailException {
+		if (pred != null && !sail.isIndexedProperty(pred)) {
+			super.removeStatements(subj, pred, obj, contexts);
+		} else {
+			Set<Resource> subjects = findIndexedSubjects(subj, pred, obj,
+					contexts);
+			super.removeStatements(subj, pred, obj, contexts);
+			for (Resource resource : subjects) {
+				unindex(resource);
+			}
+		}
+	}
+
+	@Override
+	public void clear(Resource... contexts) throws SailException {
+		if (contexts == null || contexts.length == 0) {
+			super.clear(contexts);
+			removePhones(null, null);
+			resetPending();
+			cleared = true;
+		} else {
+			Set<Resource> subjects = findIndexedSubjects(null, null, null,
+					contexts);
+			super.clear(contexts);
+			for (Resource resource : subjects) {
+				unindex(resource);
+			}
 		}
 	}
 
 	protected void index(Resource subj, Value obj) throws SailException {
-		for (String s : helper.phones(obj.stringValue())) {
+		index(subj, helper.phones(obj.stringValue()));
+	}
+
+	protected void index(Resource subj, Set<String> phones)
+			throws SailException {
+		for (String s : phones) {
 			Literal lit = vf.createLiteral(s);
 			if (infer == null) {
 				super.addStatement(subj, property, lit, graph);
@@ -103,6 +219,116 @@ public class KeywordConnection extends SailConnectionWrapper {
 				infer.addInferredStatement(subj, property, lit, graph);
 			}
 		}
+		if (index != null && !phones.isEmpty()) {
+			pending(unindexed, subj).removeAll(phones);
+			pending(indexed, subj).addAll(phones);
+		}
+	}
+
+	/**
+	 * Removes the phone codes of this subject that are no longer produced by
+	 * any of its remaining indexed property values. Each code is counted
+	 * against the values that produce it, so a code shared by another label
+	 * of the same subject is kept.
+	 */
+	protected void unindex(Resource subj) throws SailException {
+		Set<String> produced = new HashSet<String>();
+		for (URI pred : sail.getKeywordProperties()) {
+			CloseableIteration<? extends Statement, SailException> stmts;
+			stmts = super.getStatements(subj, pred, null, false);
+			try {
+				while (stmts.hasNext()) {
+					produced.addAll(helper.phones(stmts.next().getObject()
+							.stringValue()));
+				}
+			} finally {
+				stmts.close();
+			}
+		}
+		List<Value> stale = new ArrayList<Value>();
+		CloseableIteration<? extends Statement, SailException> stmts;
+		stmts = super.getStatements(subj, property, null, true, graph);
+		try {
+			while (stmts.hasNext()) {
+				Value code = stmts.next().getObject();
+				if (!produced.contains(code.stringValue())) {
+					stale.add(code);
+				}
+			}
+		} finally {
+			stmts.close();
+		}
+		for (Value code : stale) {
+			removePhones(subj, code);
+		}
+	}
+
+	private Set<Resource> findIndexedSubjects(Resource subj, URI pred,
+			Value obj, Resource... contexts) throws SailException {
+		Set<URI> indexed = sail.getKeywordProperties();
+		if (pred != null) {
+			indexed = Collections.singleton(pred);
+		}
+		Set<Resource> subjects = new HashSet<Resource>();
+		for (URI p : indexed) {
+			CloseableIteration<? extends Statement, SailException> stmts;
+			stmts = super.getStatements(subj, p, obj, false, contexts);
+			try {
+				while (stmts.hasNext()) {
+					Statement st = stmts.next();
+					subjects.add(st.getSubject());
+					if (prefix != null && st.getObject() instanceof Literal) {
+						completions.remove(st.getObject());
+						uncompleted.add((Literal) st.getObject());
+					}
+				}
+			} finally {
+				stmts.close();
+			}
+		}
+		return subjects;
+	}
+
+	private void removePhones(Resource subj, Value code) throws SailException {
+		if (infer == null) {
+			super.removeStatements(subj, property, code, graph);
+		} else {
+			infer.removeInferredStatement(subj, property, code, graph);
+		}
+		if (index != null && subj != null) {
+			pending(indexed, subj).remove(code.stringValue());
+			pending(unindexed, subj).add(code.stringValue());
+		}
+	}
+
+	private Set<String> pending(Map<Resource, Set<String>> map, Resource subj) {
+		Set<String> set = map.get(subj);
+		if (set == null) {
+			map.put(subj, set = new HashSet<String>());
+		}
+		return set;
+	}
+
+	private boolean isIndexedValue(Value obj) throws SailException {
+		for (URI pred : sail.getKeywordProperties()) {
+			CloseableIteration<? extends Statement, SailException> stmts;
+			stmts = super.getStatements(null, pred, obj, false);
+			try {
+				if (stmts.hasNext())
+					return true;
+			} finally {
+				stmts.close();
+			}
+		}
+		return false;
+	}
+
+	private void resetPending() {
+		indexed.clear();
+		unindexed.clear();
+		completions.clear();
+		uncompleted.clear();
+		cleared = false;
 	}
 
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.keyword;
+
+import java.util.List;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.algebra.Filter;
+import org.openrdf.query.algebra.FunctionCall;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.Regex;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.ValueConstant;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryOptimizer;
+import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+
+/**
+ * Replaces keyword:match statement patterns with a {@link PhoneIndexSet} and
+ * keyword:complete statement patterns with a {@link PrefixIndexSet}. The
+ * filter <code>regex(?label, keyword:regex("keyword"))</code> is replaced by
+ * {@link Matches}, which reuses the compiled pattern. A filter of
+ * {@link MatchesWord} on an indexed property is joined with a phone index
+ * probe for the keyword, which returns every resource it can match.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class KeywordIndexOptimizer extends QueryModelVisitorBase<RuntimeException>
+		implements QueryOptimizer {
+	private static final String REGEX = "http://www.openrdf.org/rdf/2011/keyword#regex";
+	private final KeywordSail sail;
+	private final PhoneIndex index;
+	private final PhoneHelper helper;
+	private final ValueFactory vf;
+	private final PrefixIndex prefix;
+	private BindingSet bindings;
+	private boolean modified;
+	private int varCount;
+
+	public KeywordIndexOptimizer(KeywordSail sail, PhoneHelper helper) {
+		this.sail = sail;
+		this.index = sail.getPhoneIndex();
+		this.prefix = sail.getPrefixIndex();
+		this.helper = helper;
+		this.vf = sail.getValueFactory();
+	}
+
+	public boolean isModified() {
+		return modified;
+	}
+
+	public void optimize(TupleExpr query, Dataset dataset, BindingSet bindings) {
+		this.bindings = bindings;
+		this.modified = false;
+		query.visit(this);
+	}
+
+	@Override
+	public void meet(StatementPattern sp) throws RuntimeException {
+		super.meet(sp);
+		if (!sp.getPredicateVar().hasValue())
+			return;
+		String pred = sp.getPredicateVar().getValue().stringValue();
+		if (index != null && PhoneIndexSet.MATCH.equals(pred)) {
+			modified = true;
+			sp.replaceWith(new PhoneIndexSet(sp, index, helper, vf, bindings));
+		} else if (prefix != null && PrefixIndexSet.COMPLETE.equals(pred)) {
+			modified = true;
+			int limit = sail.getCompletionLimit();
+			sp.replaceWith(new PrefixIndexSet(sp, sail, limit, bindings));
+		}
+	}
+
+	@Override
+	public void meet(Regex node) throws RuntimeException {
+		super.meet(node);
+		if (node.getFlagsArg() == null
+				&& node.getPatternArg() instanceof FunctionCall) {
+			FunctionCall call = (FunctionCall) node.getPatternArg();
+			List<ValueExpr> args = call.getArgs();
+			if (REGEX.equals(call.getURI()) && args.size() == 1) {
+				modified = true;
+				node.replaceWith(new FunctionCall(Matches.URI, node.getArg()
+						.clone(), args.get(0).clone()));
+			}
+		}
+	}
+
+	@Override
+	public void meet(Filter filter) throws RuntimeException {
+		super.meet(filter);
+		if (index == null)
+			return;
+		if (!(filter.getCondition() instanceof FunctionCall))
+			return;
+		FunctionCall call = (FunctionCall) filter.getCondition();
+		List<ValueExpr> args = call.getArgs();
+		if (!MatchesWord.URI.equals(call.getURI()) || args.size() != 2
+				|| !(args.get(0) instanceof Var))
+			return;
+		Var word = var(args.get(1));
+		if (word == null)
+			return;
+		StatementPattern sp = findLabelPattern(filter.getArg(),
+				((Var) args.get(0)).getName());
+		if (sp == null)
+			return;
+		Var match = newVar(vf.createURI(PhoneIndexSet.MATCH));
+		StatementPattern probe = new StatementPattern(sp.getSubjectVar()
+				.clone(), match, word);
+		TupleExpr arg = filter.getArg();
+		PhoneIndexSet set = new PhoneIndexSet(probe, index, helper, vf,
+				bindings);
+		filter.setArg(new Join(set, arg));
+		modified = true;
+	}
+
+	/**
+	 * Finds a pattern, joined with the rest of the expression, that binds the
+	 * given variable to the value of a keyword property.
+	 */
+	private StatementPattern findLabelPattern(TupleExpr expr, String label) {
+		if (expr instanceof Filter)
+			return findLabelPattern(((Filter) expr).getArg(), label);
+		if (expr instanceof Join) {
+			Join join = (Join) expr;
+			StatementPattern sp = findLabelPattern(join.getLeftArg(), label);
+			if (sp != null)
+				return sp;
+			return findLabelPattern(join.getRightArg(), label);
+		}
+		if (expr instanceof StatementPattern) {
+			StatementPattern sp = (StatementPattern) expr;
+			Var pred = sp.getPredicateVar();
+			if (label.equals(sp.getObjectVar().getName()) && pred.hasValue()
+					&& pred.getValue() instanceof URI
+					&& sail.isIndexedProperty((URI) pred.getValue()))
+				return sp;
+		}
+		return null;
+	}
+
+	private Var var(ValueExpr expr) {
+		if (expr instanceof Var)
+			return ((Var) expr).clone();
+		if (expr instanceof ValueConstant)
+			return newVar(((ValueConstant) expr).getValue());
+		return null;
+	}
+
+	private Var newVar(Value value) {
+		Var var = new Var("-keyword-const-" + (varCount++), value);
+		var.setAnonymous(true);
+		return var;
+	}
+
+}
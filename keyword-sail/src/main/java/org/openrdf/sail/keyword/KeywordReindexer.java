@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.keyword;
+
+import info.aduna.iteration.CloseableIteration;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.sail.SailException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds the keyword:phone index of a property by scanning its values in
+ * batches, computing the soundex codes on worker threads and writing the
+ * results back in scan order.
+ * 
+ * @author James Leigh
+ * 
+ */
+class KeywordReindexer {
+	private static final int BATCH_SIZE = 1024;
+	private static final int PROGRESS_BATCHES = 64;
+
+	/**
+	 * Notified after each periodic commit, so the progress can be recorded.
+	 */
+	interface Progress {
+		void committed(URI pred, long count) throws SailException;
+	}
+
+	/**
+	 * Values of a property whose phones are computed in a worker thread.
+	 */
+	private static class PhoneBatch implements Callable<PhoneBatch> {
+		private final PhoneHelper helper;
+		private final List<Resource> subjects = new ArrayList<Resource>(
+				BATCH_SIZE);
+		private final List<String> values = new ArrayList<String>(BATCH_SIZE);
+		private final List<Set<String>> phones = new ArrayList<Set<String>>(
+				BATCH_SIZE);
+
+		public PhoneBatch(PhoneHelper helper) {
+			this.helper = helper;
+		}
+
+		public int size() {
+			return subjects.size();
+		}
+
+		public void add(Resource subj, String value) {
+			subjects.add(subj);
+			values.add(value);
+		}
+
+		public PhoneBatch call() {
+			phones.addAll(helper.phones(values));
+			return this;
+		}
+
+		public void index(KeywordConnection con) throws SailException {
+			for (int i = 0, n = subjects.size(); i < n; i++) {
+				con.index(subjects.get(i), phones.get(i));
+			}
+		}
+	}
+
+	private final Logger logger = LoggerFactory
+			.getLogger(KeywordReindexer.class);
+	private final PhoneHelper helper;
+	private final int threads;
+	private ExecutorService executor;
+
+	public KeywordReindexer(PhoneHelper helper) {
+		this(helper, Runtime.getRuntime().availableProcessors());
+	}
+
+	public KeywordReindexer(PhoneHelper helper, int threads) {
+		this.helper = helper;
+		this.threads = Math.max(1, threads);
+	}
+
+	public synchronized void start() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads,
+					new ThreadFactory() {
+						private int count;
+
+						public Thread newThread(Runnable r) {
+							String name = "Keyword Reindexer " + (++count);
+							Thread thread = new Thread(r, name);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+	}
+
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Indexes every value of the given property and commits the connection.
+	 * 
+	 * @return the number of values indexed
+	 */
+	public long reindex(KeywordConnection con, URI pred) throws SailException {
+		return reindex(con, pred, 0, null);
+	}
+
+	/**
+	 * Indexes the values of the given property after the first given number
+	 * of values in scan order, committing the connection every
+	 * {@value #PROGRESS_BATCHES} batches and at the end.
+	 * 
+	 * @return the number of values indexed, including those skipped
+	 */
+	public long reindex(KeywordConnection con, URI pred, long skip,
+			Progress progress) throws SailException {
+		start();
+		LinkedList<Future<PhoneBatch>> queue = new LinkedList<Future<PhoneBatch>>();
+		long count = 0;
+		long batches = 0;
+		CloseableIteration<? extends Statement, SailException> stmts;
+		stmts = con.getStatements(null, pred, null, false);
+		try {
+			while (count < skip && stmts.hasNext()) {
+				stmts.next();
+				count++;
+			}
+			PhoneBatch batch = new PhoneBatch(helper);
+			while (stmts.hasNext()) {
+				Statement st = stmts.next();
+				batch.add(st.getSubject(), st.getObject().stringValue());
+				if (batch.size() >= BATCH_SIZE) {
+					queue.add(executor.submit(batch));
+					batch = new PhoneBatch(helper);
+					while (queue.size() > threads * 2) {
+						count += write(con, queue.removeFirst());
+						if (++batches % PROGRESS_BATCHES == 0) {
+							con.commit();
+							if (progress != null) {
+								progress.committed(pred, count);
+							}
+							logger.info("Indexed {} values of {}", count, pred);
+						}
+					}
+				}
+			}
+			if (batch.size() > 0) {
+				queue.add(executor.submit(batch));
+			}
+			while (!queue.isEmpty()) {
+				count += write(con, queue.removeFirst());
+			}
+		} finally {
+			for (Future<PhoneBatch> future : queue) {
+				future.cancel(true);
+			}
+			stmts.close();
+		}
+		con.commit();
+		return count;
+	}
+
+	private int write(KeywordConnection con, Future<PhoneBatch> future)
+			throws SailException {
+		try {
+			PhoneBatch batch = future.get();
+			batch.index(con);
+			return batch.size();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SailException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new SailException(e.getCause());
+		}
+	}
+
+}
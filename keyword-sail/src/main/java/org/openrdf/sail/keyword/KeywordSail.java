@@ -39,15 +39,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
 
+import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
+import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.sail.Sail;
@@ -69,12 +74,20 @@ import org.slf4j.LoggerFactory;
  */
 public class KeywordSail extends SailWrapper {
 	private static final String SETTING_PROPERTIES = "org.openrdf.sail.keyword.properties";
+	private static final String REINDEX_CHECKPOINT = "org.openrdf.sail.keyword.checkpoint";
+	private static final String PHONE_INDEX = "org.openrdf.sail.keyword.index";
 	private static final String PHONE_URI = "http://www.openrdf.org/rdf/2011/keyword#phone";
 	private final Logger logger = LoggerFactory.getLogger(KeywordSail.class);
 	private boolean enabled = true;
 	private URI property;
 	private URI graph = null;
 	private Set<URI> labels;
+	private int reindexThreads = Runtime.getRuntime().availableProcessors();
+	private boolean phoneIndexEnabled;
+	private PhoneIndex index;
+	private boolean prefixIndexEnabled;
+	private int completionLimit = 10;
+	private PrefixIndex prefix;
 	private final PhoneHelper helper = PhoneHelperFactory.newInstance()
 			.createPhoneHelper();
 
@@ -135,6 +148,54 @@ public class KeywordSail extends SailWrapper {
 		this.labels = set;
 	}
 
+	public int getReindexThreads() {
+		return reindexThreads;
+	}
+
+	/**
+	 * Number of worker threads used to compute soundex codes when the
+	 * keyword index is rebuilt.
+	 */
+	public void setReindexThreads(int reindexThreads) {
+		this.reindexThreads = reindexThreads;
+	}
+
+	public boolean isPhoneIndexEnabled() {
+		return phoneIndexEnabled;
+	}
+
+	/**
+	 * Also maintain a {@link PhoneIndex} of the soundex codes to evaluate the
+	 * keyword:match property.
+	 */
+	public void setPhoneIndexEnabled(boolean phoneIndexEnabled) {
+		this.phoneIndexEnabled = phoneIndexEnabled;
+	}
+
+	public boolean isPrefixIndexEnabled() {
+		return prefixIndexEnabled;
+	}
+
+	/**
+	 * Also maintain a {@link PrefixIndex} of the keyword property values to
+	 * evaluate the keyword:complete property. The index is held in memory and
+	 * is loaded from the store the first time keyword:complete is evaluated.
+	 */
+	public void setPrefixIndexEnabled(boolean prefixIndexEnabled) {
+		this.prefixIndexEnabled = prefixIndexEnabled;
+	}
+
+	public int getCompletionLimit() {
+		return completionLimit;
+	}
+
+	/**
+	 * Maximum number of values returned by keyword:complete.
+	 */
+	public void setCompletionLimit(int completionLimit) {
+		this.completionLimit = completionLimit;
+	}
+
 	@Override
 	public void initialize() throws SailException {
 		super.initialize();
@@ -158,19 +219,57 @@ public class KeywordSail extends SailWrapper {
 		}
 		try {
 			File dir = getDataDir();
+			if (enabled && phoneIndexEnabled) {
+				File file = dir == null ? null : new File(dir, PHONE_INDEX);
+				index = new PhoneIndex(file);
+			}
 			if (dir != null) {
 				Properties properties = loadSettings(dir);
-				if (!isSameSettings(properties)) {
-					logger.info("Reindexing keywords in {}", this);
-					clear(properties);
+				if (!isSameSettings(properties) || index != null
+						&& !index.isConsistent()) {
+					File file = new File(dir, REINDEX_CHECKPOINT);
+					Properties checkpoint = loadProperties(file);
+					// an inconsistent index may be missing checkpointed values
+					if (isSameSettings(checkpoint)
+							&& (index == null || index.isConsistent())) {
+						logger.info("Resuming keyword reindex in {}", this);
+					} else {
+						logger.info("Reindexing keywords in {}", this);
+						clear(checkpoint);
+						clear(properties);
+						checkpoint = getSettings();
+						dir.mkdirs();
+						storeProperties(checkpoint, file);
+					}
 					if (enabled) {
-						reindex();
+						reindex(checkpoint, file);
 					}
+					saveSettings(dir);
+					file.delete();
+				} else {
+					saveSettings(dir);
 				}
-				saveSettings(dir);
 			}
+			if (enabled && prefixIndexEnabled) {
+				prefix = new PrefixIndex(helper);
+			}
+		} catch (IOException e) {
+			throw new SailException(e);
+		}
+	}
+
+	@Override
+	public void shutDown() throws SailException {
+		try {
+			if (index != null) {
+				index.close();
+				index = null;
+			}
+			prefix = null;
 		} catch (IOException e) {
 			throw new SailException(e);
+		} finally {
+			super.shutDown();
 		}
 	}
 
@@ -185,14 +284,41 @@ public class KeywordSail extends SailWrapper {
 		return labels.contains(property);
 	}
 
+	PhoneIndex getPhoneIndex() {
+		return index;
+	}
+
+	PrefixIndex getPrefixIndex() {
+		return prefix;
+	}
+
+	/**
+	 * The prefix index, after it has been loaded from the store.
+	 */
+	PrefixIndex getLoadedPrefixIndex() throws SailException {
+		PrefixIndex prefix = this.prefix;
+		if (prefix != null) {
+			synchronized (prefix) {
+				if (!prefix.isLoaded()) {
+					complete(prefix);
+				}
+			}
+		}
+		return prefix;
+	}
+
 	private KeywordConnection getKeywordConnection() throws SailException {
 		return new KeywordConnection(this, super.getConnection(), helper);
 	}
 
 	private Properties loadSettings(File dir) throws FileNotFoundException,
 			IOException {
+		return loadProperties(new File(dir, SETTING_PROPERTIES));
+	}
+
+	private Properties loadProperties(File file) throws FileNotFoundException,
+			IOException {
 		Properties properties = new Properties();
-		File file = new File(dir, SETTING_PROPERTIES);
 		if (file.exists()) {
 			FileInputStream in = new FileInputStream(file);
 			try {
@@ -215,12 +341,19 @@ public class KeywordSail extends SailWrapper {
 			return false;
 		if (enabled && "false".equals(properties.getProperty("enabled")))
 			return false;
+		if (enabled && phoneIndexEnabled
+				&& !"true".equals(properties.getProperty("index")))
+			return false;
 		if (graph == null)
 			return properties.getProperty("graph") == null;
 		return graph.stringValue().equals(properties.getProperty("graph"));
 	}
 
-	private void clear(Properties properties) throws SailException {
+	private void clear(Properties properties) throws SailException,
+			IOException {
+		if (index != null) {
+			index.clear();
+		}
 		ValueFactory vf = getValueFactory();
 		String property = properties.getProperty("property");
 		if (property != null) {
@@ -242,41 +375,114 @@ public class KeywordSail extends SailWrapper {
 		}
 	}
 
-	private void reindex() throws SailException {
-		KeywordConnection con = getKeywordConnection();
+	/**
+	 * Rebuilds the index one property at a time, recording each completed
+	 * property, and the values committed of the current property, in the
+	 * checkpoint so an interrupted reindex can resume.
+	 */
+	private void reindex(final Properties checkpoint, final File file)
+			throws SailException, IOException {
+		Set<String> indexed = new HashSet<String>();
+		String done = checkpoint.getProperty("indexed");
+		if (done != null && done.length() > 0) {
+			indexed.addAll(Arrays.asList(done.split(" ")));
+		}
+		KeywordReindexer reindexer = new KeywordReindexer(helper,
+				reindexThreads);
+		KeywordReindexer.Progress progress = new KeywordReindexer.Progress() {
+			public void committed(URI pred, long count) throws SailException {
+				checkpoint.setProperty("indexing", pred.stringValue());
+				checkpoint.setProperty("indexing.count", String.valueOf(count));
+				try {
+					storeProperties(checkpoint, file);
+				} catch (IOException e) {
+					throw new SailException(e);
+				}
+			}
+		};
+		try {
+			for (URI pred : labels) {
+				if (indexed.contains(pred.stringValue()))
+					continue;
+				long skip = 0;
+				if (pred.stringValue().equals(checkpoint.getProperty("indexing"))) {
+					// the store scans values in the same order after a restart
+					skip = Long.parseLong(checkpoint.getProperty(
+							"indexing.count", "0"));
+				}
+				KeywordConnection con = getKeywordConnection();
+				try {
+					long count = reindexer.reindex(con, pred, skip, progress);
+					logger.info("Indexed {} values of {}", count, pred);
+				} finally {
+					con.close();
+				}
+				checkpoint.remove("indexing");
+				checkpoint.remove("indexing.count");
+				indexed.add(pred.stringValue());
+				StringBuilder sb = new StringBuilder();
+				for (String uri : indexed) {
+					if (sb.length() > 0) {
+						sb.append(' ');
+					}
+					sb.append(uri);
+				}
+				checkpoint.setProperty("indexed", sb.toString());
+				storeProperties(checkpoint, file);
+			}
+		} finally {
+			reindexer.stop();
+		}
+	}
+
+	private void complete(PrefixIndex prefix) throws SailException {
+		List<Literal> values = new ArrayList<Literal>();
+		SailConnection con = super.getConnection();
 		try {
 			for (URI pred : labels) {
 				CloseableIteration<? extends Statement, SailException> stmts;
 				stmts = con.getStatements(null, pred, null, false);
 				try {
 					while (stmts.hasNext()) {
-						Statement st = stmts.next();
-						con.index(st.getSubject(), st.getObject());
+						Value obj = stmts.next().getObject();
+						if (obj instanceof Literal) {
+							values.add((Literal) obj);
+						}
 					}
 				} finally {
 					stmts.close();
 				}
 			}
-			con.commit();
 		} finally {
 			con.close();
 		}
+		prefix.load(values);
+		logger.info("Indexed {} keyword prefixes in {}", prefix.size(), this);
 	}
 
 	private void saveSettings(File dir) throws IOException {
+		dir.mkdirs();
+		storeProperties(getSettings(), new File(dir, SETTING_PROPERTIES));
+	}
+
+	private Properties getSettings() {
 		Properties properties = new Properties();
 		String code = Integer.toHexString(helper.hashCode());
 		properties.setProperty("phone", code);
 		properties.setProperty("label", Integer.toHexString(labels.hashCode()));
 		properties.setProperty("property", property.stringValue());
 		properties.setProperty("enabled", String.valueOf(enabled));
+		properties.setProperty("index", String.valueOf(phoneIndexEnabled));
 		if (graph == null) {
 			properties.remove("graph");
 		} else {
 			properties.setProperty("graph", graph.stringValue());
 		}
-		dir.mkdirs();
-		File file = new File(dir, SETTING_PROPERTIES);
+		return properties;
+	}
+
+	private void storeProperties(Properties properties, File file)
+			throws IOException {
 		FileOutputStream out = new FileOutputStream(file);
 		try {
 			properties.store(out, this.toString());
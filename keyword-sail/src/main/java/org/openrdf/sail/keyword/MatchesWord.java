@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.keyword;
+
+import java.util.Set;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.function.Function;
+import org.openrdf.query.algebra.evaluation.util.QueryEvaluationUtil;
+
+/**
+ * Tests if a string matches the regex of a keyword and shares a phone code
+ * with it. Unlike <code>keyword:matches(?term, "keyword")</code>, values that
+ * only match within a word are not returned, so a filter of
+ * <code>keyword:matchesWord(?label, "keyword")</code> on an indexed property
+ * can be restricted to the resources in the {@link PhoneIndex} first.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class MatchesWord implements Function {
+	public static final String URI = "http://www.openrdf.org/rdf/2011/keyword#matchesWord";
+	private final PhoneHelper helper = PhoneHelperFactory.newInstance()
+			.createPhoneHelper();
+
+	public String toString() {
+		return getURI();
+	}
+
+	public String getURI() {
+		return URI;
+	}
+
+	public Literal evaluate(ValueFactory vf, Value... args)
+			throws ValueExprEvaluationException {
+		if (args == null || args.length != 2)
+			throw new ValueExprEvaluationException(
+					"keyword:matchesWord requires two arguments");
+		if (!QueryEvaluationUtil.isStringLiteral(args[0]))
+			throw new ValueExprEvaluationException();
+		String text = ((Literal) args[0]).getLabel();
+		String word = args[1].stringValue();
+		if (!helper.pattern(word).matcher(text).find())
+			return vf.createLiteral(false);
+		Set<String> phones = helper.phones(text);
+		for (String phone : helper.phones(word)) {
+			if (phones.contains(phone))
+				return vf.createLiteral(true);
+		}
+		return vf.createLiteral(false);
+	}
+
+}
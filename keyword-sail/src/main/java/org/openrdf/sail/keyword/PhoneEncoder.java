@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.keyword;
+
+import static java.lang.Character.isWhitespace;
+
+import java.util.Collection;
+
+/**
+ * Reusable encoder that cleans and encodes input strings into soundex codes
+ * without intermediate strings. An encoder keeps its buffers between calls and
+ * must not be shared between threads.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class PhoneEncoder {
+	private static final String NO_SOUNDEX = "_000";
+	/** US English soundex mapping of the letters A to Z */
+	private static final char[] MAPPING = "01230120022455012623010202"
+			.toCharArray();
+	private final PhoneHelper helper;
+	private final char[] substitutes;
+	private final boolean[] punctuation;
+	private final char[][][] suffix;
+	private final char[] code = new char[4];
+	private char[] buf = new char[64];
+	private int length;
+	private int[] words = new int[8];
+	private int count;
+
+	protected PhoneEncoder(PhoneHelper helper, char[] substitutes,
+			boolean[] punctuation, char[][][] suffix) {
+		this.helper = helper;
+		this.substitutes = substitutes;
+		this.punctuation = punctuation;
+		this.suffix = suffix;
+	}
+
+	/**
+	 * Adds the soundex of every word in the input together with the soundex
+	 * of the input from the beginning of each word to the sink. The same code
+	 * may be added more than once.
+	 */
+	public void phones(CharSequence input, Collection<? super String> sink) {
+		clean(input);
+		if (count < 2) {
+			sink.add(encode(0, length));
+			return;
+		}
+		int end = words[1] - 1;
+		if (end > 1) {
+			// not one letter word
+			sink.add(encode(0, end));
+		}
+		sink.add(encode(0, length));
+		// words after the first are encoded with their leading separator,
+		// which is ignored by soundex and never matches a linking word
+		for (int i = 1; i < count; i++) {
+			int start = words[i] - 1;
+			if (start >= length - 2)
+				break;
+			if (i + 1 < count) {
+				sink.add(encode(start, words[i + 1] - 1));
+			}
+			sink.add(encode(start, length));
+		}
+	}
+
+	/**
+	 * Soundex of the entire input.
+	 * 
+	 * @return a letter or '_' followed by three numbers.
+	 */
+	public String soundex(CharSequence input) {
+		clean(input);
+		return encode(0, length);
+	}
+
+	/**
+	 * This removes non-english letters, replaces accented letters, drops
+	 * common suffixes and separates the words by a single space.
+	 */
+	public String clean(String input) {
+		clean((CharSequence) input);
+		return new String(buf, 0, length);
+	}
+
+	private void clean(CharSequence str) {
+		length = 0;
+		count = 0;
+		int start = -1;
+		for (int i = 0, n = str == null ? 0 : str.length(); i < n; i++) {
+			char ch = Character.toUpperCase(str.charAt(i));
+			if ('A' <= ch && ch <= 'Z' || '0' <= ch && ch <= '9') {
+				start = append(start, ch);
+			} else if (ch < substitutes.length && substitutes[ch] != 0) {
+				start = append(start, substitutes[ch]);
+			} else if (isWhitespace(ch) || ch < punctuation.length
+					&& punctuation[ch]) {
+				start = endWord(start);
+			} else {
+				start = append(start, '_');
+			}
+		}
+		endWord(start);
+	}
+
+	private int append(int start, char ch) {
+		if (length + 2 > buf.length) {
+			char[] grow = new char[buf.length * 2];
+			System.arraycopy(buf, 0, grow, 0, length);
+			buf = grow;
+		}
+		if (start < 0) {
+			if (count > 0) {
+				buf[length++] = ' ';
+			}
+			start = length;
+		}
+		buf[length++] = ch;
+		return start;
+	}
+
+	private int endWord(int start) {
+		if (start < 0)
+			return start;
+		trimSuffix(start);
+		if (length > start) {
+			if (count >= words.length) {
+				int[] grow = new int[words.length * 2];
+				System.arraycopy(words, 0, grow, 0, count);
+				words = grow;
+			}
+			words[count++] = start;
+		} else if (count > 0) {
+			length = start - 1;
+		} else {
+			length = start;
+		}
+		return -1;
+	}
+
+	private void trimSuffix(int start) {
+		int len = length - start;
+		if (len > 3) {
+			if (len > 4 && isSuffix(4, buf[length - 5])) {
+				length -= 4;
+			} else if (isSuffix(3, buf[length - 4])) {
+				length -= 3;
+			} else if (isSuffix(2, buf[length - 3])) {
+				length -= 2;
+			} else if (isSuffix(1, buf[length - 2])) {
+				length -= 1;
+			}
+		}
+	}
+
+	/**
+	 * If the last n characters are a suffix that does not contain the
+	 * character before it.
+	 */
+	private boolean isSuffix(int n, char before) {
+		int off = length - n;
+		for (int i = off; i < length; i++) {
+			if (buf[i] == before)
+				return false;
+		}
+		search: for (char[] s : suffix[n]) {
+			for (int i = 0; i < n; i++) {
+				if (s[i] != buf[off + i])
+					continue search;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * American soundex of the letters in the given range, ignoring any other
+	 * characters. Letters separated by H or W with the same code are coded
+	 * once.
+	 */
+	private String encode(int start, int end) {
+		int letters = 0;
+		int n = 1;
+		char last = 0;
+		char prev1 = 0;
+		char prev2 = 0;
+		for (int i = start; i < end && n < code.length; i++) {
+			char ch = buf[i];
+			if (ch < 'A' || 'Z' < ch)
+				continue;
+			char mapped = MAPPING[ch - 'A'];
+			if (letters == 0) {
+				code[0] = ch;
+				code[1] = code[2] = code[3] = '0';
+				last = mapped;
+			} else {
+				if (letters > 1 && mapped != '0'
+						&& (prev1 == 'H' || prev1 == 'W')
+						&& (MAPPING[prev2 - 'A'] == mapped || prev2 == 'H' || prev2 == 'W')) {
+					mapped = 0;
+				}
+				if (mapped != 0) {
+					if (mapped != '0' && mapped != last) {
+						code[n++] = mapped;
+					}
+					last = mapped;
+				}
+			}
+			prev2 = prev1;
+			prev1 = ch;
+			letters++;
+		}
+		if (letters == 0)
+			return NO_SOUNDEX;
+		return helper.code(code);
+	}
+
+}
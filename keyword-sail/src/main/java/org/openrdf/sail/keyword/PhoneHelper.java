@@ -28,15 +28,13 @@
  */
 package org.openrdf.sail.keyword;
 
-import static java.lang.Character.isWhitespace;
-
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
-import org.apache.commons.codec.language.Soundex;
+import java.util.regex.Pattern;
 
 /**
  * Cleans up input string before generating soundex and regex for matching
@@ -46,13 +44,31 @@ import org.apache.commons.codec.language.Soundex;
  * 
  */
 public class PhoneHelper {
-	private static final String NO_SOUNDEX = "_000";
+	/** Number of distinct soundex codes: a letter and three digits 0-6 */
+	private static final int CODES = 26 * 7 * 7 * 7;
+	private static final int PATTERN_CACHE_SIZE = 256;
 	private final Set<String> linking;
 	private final Set<String> suffix;
 	private final Set<Character> punctuation;
 	private final Map<Character, Character> substitutes;
 	private final Map<Character, Set<Character>> substitutable;
-	private Soundex soundex = new Soundex();
+	private final char[] substituteTable;
+	private final boolean[] punctuationTable;
+	private final char[][][] suffixTable;
+	private final String[] codes = new String[CODES];
+	private final Map<String, Pattern> patterns = new LinkedHashMap<String, Pattern>(
+			PATTERN_CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = -2004787862066224512L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+			return size() > PATTERN_CACHE_SIZE;
+		}
+	};
+	private final ThreadLocal<PhoneEncoder> encoders = new ThreadLocal<PhoneEncoder>() {
+		protected PhoneEncoder initialValue() {
+			return newEncoder();
+		}
+	};
 
 	protected PhoneHelper(Set<String> linking, Set<String> suffix,
 			Set<Character> punctuation, Map<Character, Character> substitutes,
@@ -67,6 +83,40 @@ public class PhoneHelper {
 		this.punctuation = punctuation;
 		this.substitutes = substitutes;
 		this.substitutable = substitutable;
+		char max = 0;
+		for (Character chr : substitutes.keySet()) {
+			max = (char) Math.max(max, chr);
+		}
+		substituteTable = new char[max + 1];
+		for (Map.Entry<Character, Character> e : substitutes.entrySet()) {
+			substituteTable[e.getKey()] = e.getValue();
+		}
+		max = 0;
+		for (Character chr : punctuation) {
+			max = (char) Math.max(max, chr);
+		}
+		punctuationTable = new boolean[max + 1];
+		for (Character chr : punctuation) {
+			punctuationTable[chr] = true;
+		}
+		suffixTable = new char[5][][];
+		for (int i = 0; i < suffixTable.length; i++) {
+			List<char[]> list = new ArrayList<char[]>();
+			for (String s : suffix) {
+				if (s.length() == i) {
+					list.add(s.toCharArray());
+				}
+			}
+			suffixTable[i] = list.toArray(new char[list.size()][]);
+		}
+	}
+
+	/**
+	 * Creates a new encoder for use by a single thread.
+	 */
+	public PhoneEncoder newEncoder() {
+		return new PhoneEncoder(this, substituteTable, punctuationTable,
+				suffixTable);
 	}
 
 	@Override
@@ -110,30 +160,28 @@ public class PhoneHelper {
 	 * @return soundex of each keyword of the input
 	 */
 	public Set<String> phones(String input) {
-		String clean = clean(input);
 		Set<String> phones = new HashSet<String>();
-		int start = 0;
-		do {
-			int end = clean.indexOf(' ', start + 1);
-			if (end > start + 1) {
-				// not one letter word
-				String word = clean.substring(start, end);
-				if (start > 0 && linking.contains(word))
-					continue; // skip linking words
-				phones.add(encode(word));
-			}
-			String word = clean.substring(start);
-			if (start > 0 && linking.contains(word))
-				continue; // skip linking words
-			phones.add(encode(word));
-			start = end;
-		} while (start > 0 && (start == 0 || start < clean.length() - 2));
-		if (phones.isEmpty()) {
-			phones.add(NO_SOUNDEX);
-		}
+		encoders.get().phones(input, phones);
 		return phones;
 	}
 
+	/**
+	 * The phones of each input using the same encoder.
+	 * 
+	 * @param inputs
+	 * @return soundex of each keyword of each input in the same order
+	 */
+	public List<Set<String>> phones(Iterable<String> inputs) {
+		PhoneEncoder encoder = encoders.get();
+		List<Set<String>> result = new ArrayList<Set<String>>();
+		for (String input : inputs) {
+			Set<String> phones = new HashSet<String>();
+			encoder.phones(input, phones);
+			result.add(phones);
+		}
+		return result;
+	}
+
 	/**
 	 * Soundex of the entire input.
 	 * 
@@ -141,13 +189,7 @@ public class PhoneHelper {
 	 * @return a letter or '_' followed by three numbers.
 	 */
 	public String soundex(String input) {
-		String word = clean(input);
-		String encode = encode(word);
-		if (encode != null && encode.length() > 0) {
-			return encode;
-		} else {
-			return NO_SOUNDEX;
-		}
+		return encoders.get().soundex(input);
 	}
 
 	/**
@@ -187,82 +229,41 @@ public class PhoneHelper {
 	}
 
 	/**
-	 * This removes non-english letters.
+	 * The compiled {@link #regex(String)} of the given word. The most recently
+	 * used patterns are cached.
+	 * 
+	 * @param word
+	 *            input string to generate a regex from
+	 * @return a compiled regular expression
 	 */
-	private String clean(String str) {
-		if (str == null || str.length() == 0)
-			return "";
-		List<String> list = new ArrayList<String>();
-		StringBuilder sb = new StringBuilder(str.length());
-		for (int i = 0, n = str.length(); i < n; i++) {
-			char ch = Character.toUpperCase(str.charAt(i));
-			if ('A' <= ch && ch <= 'Z' || '0' <= ch && ch <= '9') {
-				sb.append(ch);
-			} else if (substitutes.containsKey(ch)) {
-				sb.append(substitutes.get(ch));
-			} else if (isWhitespace(ch) || punctuation.contains(ch)) {
-				trimSuffix(sb);
-				if (sb.length() > 0) {
-					list.add(sb.toString());
-				}
-				sb.setLength(0);
-			} else {
-				sb.append('_');
+	public Pattern pattern(String word) {
+		synchronized (patterns) {
+			Pattern pattern = patterns.get(word);
+			if (pattern == null) {
+				pattern = Pattern.compile(regex(word));
+				patterns.put(word, pattern);
 			}
+			return pattern;
 		}
-		trimSuffix(sb);
-		if (sb.length() > 0) {
-			list.add(sb.toString());
-		}
-		if (list.isEmpty())
-			return "";
-		if (list.size() == 1)
-			return list.get(0);
-		sb.setLength(0);
-		for (String word : list) {
-			sb.append(word);
-			sb.append(' ');
-		}
-		sb.setLength(sb.length() - 1);
-		return sb.toString();
 	}
 
-	private boolean trimSuffix(StringBuilder sb) {
-		if (sb.length() > 3) {
-			String last4 = sb.substring(sb.length() - 4, sb.length());
-			String last3 = last4.substring(1);
-			String last2 = last3.substring(1);
-			String last1 = last2.substring(1);
-			if (sb.length() > 4
-					&& last4.indexOf(sb.charAt(sb.length() - 5)) < 0
-					&& suffix.contains(last4)) {
-				sb.setLength(sb.length() - 4);
-				return true;
-			}
-			if (last3.indexOf(sb.charAt(sb.length() - 4)) < 0
-					&& suffix.contains(last3)) {
-				sb.setLength(sb.length() - 3);
-				return true;
-			}
-			if (last2.indexOf(sb.charAt(sb.length() - 3)) < 0
-					&& suffix.contains(last2)) {
-				sb.setLength(sb.length() - 2);
-				return true;
-			}
-			if (last1.indexOf(sb.charAt(sb.length() - 2)) < 0
-					&& suffix.contains(last1)) {
-				sb.setLength(sb.length() - 1);
-				return true;
-			}
+	/**
+	 * Shared instance of the given soundex code.
+	 */
+	String code(char[] code) {
+		int idx = (code[0] - 'A') * 343 + (code[1] - '0') * 49
+				+ (code[2] - '0') * 7 + (code[3] - '0');
+		String str = codes[idx];
+		if (str == null) {
+			codes[idx] = str = new String(code);
 		}
-		return false;
+		return str;
 	}
 
-	private String encode(String word) {
-		String encoded = soundex.encode(word);
-		if (encoded != null && encoded.length() > 0)
-			return encoded;
-		return NO_SOUNDEX;
+	private String clean(String str) {
+		if (str == null || str.length() == 0)
+			return "";
+		return encoders.get().clean(str);
 	}
 
 }
@@ -0,0 +1,504 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.keyword;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Inverted index from soundex phone code to the subjects that have an indexed
+ * property value producing that code. Subjects are identified by a string key
+ * and stored once in an append-only file of lines, with a memory-mapped
+ * dictionary of their line offsets and of their positions in sorted order to
+ * find a subject by binary search. Postings are lists of dictionary positions
+ * in a memory-mapped file, after a table of codes that is also searched in
+ * place. Only subjects and postings changed since the last {@link #flush()}
+ * are held in memory. While changes are pending a marker file is present, so
+ * an index that was not flushed before a crash is reported as inconsistent
+ * when it is reopened.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class PhoneIndex {
+	private static final String SUBJECTS = "subjects";
+	private static final String DICTIONARY = "dictionary";
+	private static final String POSTINGS = "postings";
+	private static final String DIRTY = "dirty";
+	private static final int FLUSH_THRESHOLD = 1 << 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private final File dir;
+	/** subjects added since the last flush, positioned after the flushed */
+	private final List<String> subjects = new ArrayList<String>();
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private int flushedSubjects;
+	/** lines of the subjects file */
+	private MappedByteBuffer lines;
+	/** subject count, line offsets, then positions in subject order */
+	private MappedByteBuffer dictionary;
+	/** code count, entries in code order, codes, then postings */
+	private MappedByteBuffer mapped;
+	private final Map<String, Set<Integer>> added = new HashMap<String, Set<Integer>>();
+	private final Map<String, Set<Integer>> removed = new HashMap<String, Set<Integer>>();
+	private int pending;
+	private boolean consistent = true;
+
+	/**
+	 * Opens an index in the given directory or a memory only index if dir is
+	 * null.
+	 */
+	public PhoneIndex(File dir) throws IOException {
+		this.dir = dir;
+		if (dir != null) {
+			dir.mkdirs();
+			consistent = !new File(dir, DIRTY).exists();
+			File subjects = new File(dir, SUBJECTS);
+			File dictionary = new File(dir, DICTIONARY);
+			if (subjects.exists() && !dictionary.exists()) {
+				// written without a dictionary, postings cannot be read
+				consistent = false;
+				return;
+			}
+			if (dictionary.exists()) {
+				lines = map(subjects);
+				this.dictionary = map(dictionary);
+				flushedSubjects = this.dictionary.getInt(0);
+			}
+			File postings = new File(dir, POSTINGS);
+			if (postings.exists()) {
+				mapped = map(postings);
+			}
+		}
+	}
+
+	public String toString() {
+		return String.valueOf(dir);
+	}
+
+	/**
+	 * If false, changes were lost and the index must be rebuilt.
+	 */
+	public synchronized boolean isConsistent() {
+		return consistent;
+	}
+
+	public synchronized void add(String subject, Collection<String> codes)
+			throws IOException {
+		Integer id = id(subject);
+		if (id == null) {
+			id = flushedSubjects + subjects.size();
+			subjects.add(subject);
+			ids.put(subject, id);
+		}
+		for (String code : codes) {
+			Set<Integer> set = removed.get(code);
+			if (set != null) {
+				set.remove(id);
+			}
+			changed(added, code).add(id);
+		}
+	}
+
+	public synchronized void remove(String subject, Collection<String> codes)
+			throws IOException {
+		Integer id = id(subject);
+		if (id == null)
+			return;
+		for (String code : codes) {
+			Set<Integer> set = added.get(code);
+			if (set != null) {
+				set.remove(id);
+			}
+			changed(removed, code).add(id);
+		}
+	}
+
+	/**
+	 * Removes every subject from the index.
+	 */
+	public synchronized void clear() throws IOException {
+		mapped = null;
+		dictionary = null;
+		lines = null;
+		subjects.clear();
+		ids.clear();
+		added.clear();
+		removed.clear();
+		pending = 0;
+		flushedSubjects = 0;
+		if (dir != null) {
+			new File(dir, POSTINGS).delete();
+			new File(dir, DICTIONARY).delete();
+			new File(dir, SUBJECTS).delete();
+			new File(dir, DIRTY).delete();
+		}
+		consistent = true;
+	}
+
+	/**
+	 * Subjects that have at least one of the given codes, ordered by the
+	 * number of codes they have.
+	 * 
+	 * @return map of subject key to the number of matched codes
+	 */
+	public synchronized Map<String, Integer> rank(Collection<String> codes) {
+		final Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		for (String code : new HashSet<String>(codes)) {
+			for (Integer id : postings(code)) {
+				Integer count = counts.get(id);
+				counts.put(id, count == null ? 1 : count + 1);
+			}
+		}
+		List<Integer> list = new ArrayList<Integer>(counts.keySet());
+		Collections.sort(list, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				int cmp = counts.get(o2).compareTo(counts.get(o1));
+				if (cmp != 0)
+					return cmp;
+				return o1.compareTo(o2);
+			}
+		});
+		Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+		for (Integer id : list) {
+			result.put(subject(id), counts.get(id));
+		}
+		return result;
+	}
+
+	/**
+	 * Positions of the subjects that have this code.
+	 */
+	public synchronized Set<Integer> postings(String code) {
+		Set<Integer> set = new TreeSet<Integer>();
+		int entry = entry(code);
+		if (entry >= 0) {
+			int offset = mapped.getInt(entry + 4);
+			int count = mapped.getInt(entry + 8);
+			for (int i = 0; i < count; i++) {
+				set.add(mapped.getInt(offset + i * 4));
+			}
+		}
+		if (removed.containsKey(code)) {
+			set.removeAll(removed.get(code));
+		}
+		if (added.containsKey(code)) {
+			set.addAll(added.get(code));
+		}
+		return set;
+	}
+
+	/**
+	 * Called after a transaction's changes have been applied, writes the
+	 * pending changes if enough have accumulated.
+	 */
+	public synchronized void commit() throws IOException {
+		if (pending >= FLUSH_THRESHOLD) {
+			flush();
+		}
+	}
+
+	/**
+	 * Appends the new subjects and merges the pending changes into a new
+	 * postings file.
+	 */
+	public synchronized void flush() throws IOException {
+		if (dir == null || added.isEmpty() && removed.isEmpty()
+				&& subjects.isEmpty())
+			return;
+		if (!subjects.isEmpty()) {
+			appendSubjects();
+		}
+		writePostings();
+		added.clear();
+		removed.clear();
+		pending = 0;
+		new File(dir, DIRTY).delete();
+	}
+
+	public synchronized void close() throws IOException {
+		flush();
+		mapped = null;
+		dictionary = null;
+		lines = null;
+	}
+
+	private Set<Integer> changed(Map<String, Set<Integer>> map, String code)
+			throws IOException {
+		if (pending++ == 0 && dir != null) {
+			new File(dir, DIRTY).createNewFile();
+		}
+		Set<Integer> set = map.get(code);
+		if (set == null) {
+			map.put(code, set = new HashSet<Integer>());
+		}
+		return set;
+	}
+
+	private Integer id(String subject) {
+		Integer id = ids.get(subject);
+		if (id != null)
+			return id;
+		int sorted = 4 + flushedSubjects * 4;
+		int low = 0;
+		int high = flushedSubjects - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int pos = dictionary.getInt(sorted + mid * 4);
+			int cmp = subject(pos).compareTo(subject);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return pos;
+			}
+		}
+		return null;
+	}
+
+	private String subject(int id) {
+		if (id >= flushedSubjects)
+			return subjects.get(id - flushedSubjects);
+		int start = dictionary.getInt(4 + id * 4);
+		int end = start;
+		while (lines.get(end) != '\n') {
+			end++;
+		}
+		return decode(lines, start, end);
+	}
+
+	/**
+	 * Position of the table entry of this code or -1.
+	 */
+	private int entry(String code) {
+		if (mapped == null)
+			return -1;
+		int low = 0;
+		int high = mapped.getInt(0) - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int entry = 4 + mid * 12;
+			int cmp = code(entry).compareTo(code);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return entry;
+			}
+		}
+		return -1;
+	}
+
+	private String code(int entry) {
+		int start = mapped.getInt(entry);
+		int length = mapped.getShort(start) & 0xFFFF;
+		return decode(mapped, start + 2, start + 2 + length);
+	}
+
+	private String decode(ByteBuffer buffer, int start, int end) {
+		ByteBuffer buf = buffer.duplicate();
+		buf.limit(end);
+		buf.position(start);
+		return UTF8.decode(buf).toString();
+	}
+
+	/**
+	 * Appends the new subjects as lines and writes a new dictionary, merging
+	 * their positions into the subject order.
+	 */
+	private void appendSubjects() throws IOException {
+		File file = new File(dir, SUBJECTS);
+		int[] offsets = new int[subjects.size()];
+		long offset = file.length();
+		FileOutputStream fout = new FileOutputStream(file, true);
+		try {
+			OutputStream out = new BufferedOutputStream(fout);
+			for (int i = 0; i < offsets.length; i++) {
+				byte[] bytes = subjects.get(i).getBytes("UTF-8");
+				offsets[i] = (int) offset;
+				out.write(bytes);
+				out.write('\n');
+				offset += bytes.length + 1;
+			}
+			out.flush();
+			fout.getFD().sync();
+		} finally {
+			fout.close();
+		}
+		lines = map(file);
+		Integer[] order = new Integer[subjects.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = flushedSubjects + i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				return subject(o1).compareTo(subject(o2));
+			}
+		});
+		File dict = new File(dir, DICTIONARY);
+		File tmp = new File(dir, DICTIONARY + ".tmp");
+		fout = new FileOutputStream(tmp);
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(fout));
+			out.writeInt(flushedSubjects + offsets.length);
+			for (int i = 0; i < flushedSubjects; i++) {
+				out.writeInt(dictionary.getInt(4 + i * 4));
+			}
+			for (int i = 0; i < offsets.length; i++) {
+				out.writeInt(offsets[i]);
+			}
+			int sorted = 4 + flushedSubjects * 4;
+			int j = 0;
+			for (int i = 0; i < flushedSubjects; i++) {
+				int pos = dictionary.getInt(sorted + i * 4);
+				String subject = subject(pos);
+				while (j < order.length
+						&& subject(order[j]).compareTo(subject) < 0) {
+					out.writeInt(order[j++]);
+				}
+				out.writeInt(pos);
+			}
+			while (j < order.length) {
+				out.writeInt(order[j++]);
+			}
+			out.flush();
+			fout.getFD().sync();
+		} finally {
+			fout.close();
+		}
+		dictionary = null;
+		dict.delete();
+		if (!tmp.renameTo(dict))
+			throw new IOException("Could not replace " + dict);
+		dictionary = map(dict);
+		flushedSubjects += subjects.size();
+		subjects.clear();
+		ids.clear();
+	}
+
+	/**
+	 * Writes the postings of every code after a table of codes, which is
+	 * written last when the size of each postings list is known.
+	 */
+	private void writePostings() throws IOException {
+		Set<String> codes = new TreeSet<String>(added.keySet());
+		for (int i = 0, n = mapped == null ? 0 : mapped.getInt(0); i < n; i++) {
+			codes.add(code(4 + i * 12));
+		}
+		int table = 4 + codes.size() * 12;
+		int postings = table;
+		for (String code : codes) {
+			postings += 2 + code.getBytes("UTF-8").length;
+		}
+		int[] counts = new int[codes.size()];
+		File file = new File(dir, POSTINGS);
+		File tmp = new File(dir, POSTINGS + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			raf.setLength(0);
+			raf.seek(postings);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Channels.newOutputStream(raf
+							.getChannel())));
+			int k = 0;
+			for (String code : codes) {
+				Set<Integer> set = postings(code);
+				counts[k++] = set.size();
+				for (Integer id : set) {
+					out.writeInt(id);
+				}
+			}
+			out.flush();
+			raf.seek(0);
+			out = new DataOutputStream(new BufferedOutputStream(Channels
+					.newOutputStream(raf.getChannel())));
+			out.writeInt(codes.size());
+			int start = table;
+			int offset = postings;
+			k = 0;
+			for (String code : codes) {
+				out.writeInt(start);
+				out.writeInt(offset);
+				out.writeInt(counts[k]);
+				start += 2 + code.getBytes("UTF-8").length;
+				offset += counts[k++] * 4;
+			}
+			for (String code : codes) {
+				byte[] bytes = code.getBytes("UTF-8");
+				out.writeShort(bytes.length);
+				out.write(bytes);
+			}
+			out.flush();
+			raf.getFD().sync();
+		} finally {
+			raf.close();
+		}
+		mapped = null;
+		file.delete();
+		if (!tmp.renameTo(file))
+			throw new IOException("Could not replace " + file);
+		mapped = map(file);
+	}
+
+	private MappedByteBuffer map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+					.size());
+		} finally {
+			raf.close();
+		}
+	}
+
+}
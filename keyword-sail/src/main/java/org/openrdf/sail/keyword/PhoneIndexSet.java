@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.keyword;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.EmptyIteration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.ExternalSet;
+
+/**
+ * Evaluates the keyword:match magic property, <code>?resource keyword:match
+ * "words"</code>, using the {@link PhoneIndex}. Resources are returned in
+ * order of the number of phone codes of the words they match.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class PhoneIndexSet extends ExternalSet {
+	public static final String MATCH = "http://www.openrdf.org/rdf/2011/keyword#match";
+
+	static String key(Resource subj) {
+		if (subj instanceof BNode)
+			return "_:" + subj.stringValue();
+		return "<" + subj.stringValue() + ">";
+	}
+
+	static Resource resource(String key, ValueFactory vf) {
+		if (key.startsWith("_:"))
+			return vf.createBNode(key.substring(2));
+		return vf.createURI(key.substring(1, key.length() - 1));
+	}
+
+	private final StatementPattern sp;
+	private final PhoneIndex index;
+	private final PhoneHelper helper;
+	private final ValueFactory vf;
+	private final BindingSet bindings;
+
+	public PhoneIndexSet(StatementPattern sp, PhoneIndex index,
+			PhoneHelper helper, ValueFactory vf, BindingSet bindings) {
+		this.sp = sp;
+		this.index = index;
+		this.helper = helper;
+		this.vf = vf;
+		this.bindings = bindings;
+	}
+
+	@Override
+	public PhoneIndexSet clone() {
+		return (PhoneIndexSet) super.clone();
+	}
+
+	@Override
+	public Set<String> getBindingNames() {
+		return sp.getBindingNames();
+	}
+
+	@Override
+	public Set<String> getAssuredBindingNames() {
+		return sp.getAssuredBindingNames();
+	}
+
+	@Override
+	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(
+			BindingSet bindings) throws QueryEvaluationException {
+		if (this.bindings != null) {
+			QueryBindingSet b = new QueryBindingSet(bindings);
+			b.addAll(this.bindings);
+			bindings = b;
+		}
+		Value words = value(sp.getObjectVar(), bindings);
+		Value subj = value(sp.getSubjectVar(), bindings);
+		if (!(words instanceof Literal))
+			return new EmptyIteration<BindingSet, QueryEvaluationException>();
+		Map<String, Integer> ranked;
+		ranked = index.rank(helper.phones(words.stringValue()));
+		List<BindingSet> list = new ArrayList<BindingSet>(ranked.size());
+		for (String key : ranked.keySet()) {
+			Resource resource = resource(key, vf);
+			if (subj != null && !subj.equals(resource))
+				continue;
+			QueryBindingSet result = new QueryBindingSet(bindings);
+			bind(result, sp.getSubjectVar(), resource);
+			list.add(result);
+		}
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(
+				list.iterator());
+	}
+
+	@Override
+	public String getSignature() {
+		return super.getSignature() + " " + sp.getSubjectVar().getName()
+				+ " keyword:match " + sp.getObjectVar();
+	}
+
+	private Value value(Var var, BindingSet bindings) {
+		if (var.getValue() != null)
+			return var.getValue();
+		return bindings.getValue(var.getName());
+	}
+
+	private void bind(QueryBindingSet result, Var var, Value value) {
+		if (!var.hasValue() && !result.hasBinding(var.getName())) {
+			result.addBinding(var.getName(), value);
+		}
+	}
+
+}
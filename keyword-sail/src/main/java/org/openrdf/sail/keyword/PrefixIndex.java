@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.keyword;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.openrdf.model.Literal;
+
+/**
+ * Sorted table of keyword property values, keyed by each word of their
+ * cleaned text, used to complete a partially typed keyword. The table is
+ * empty and ignores changes until it is {@link #load(Collection) loaded} from
+ * the store, which is done the first time it is used.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class PrefixIndex {
+	private final PhoneEncoder encoder;
+	private final TreeMap<String, Set<Literal>> table = new TreeMap<String, Set<Literal>>();
+	private final Set<Literal> labels = new HashSet<Literal>();
+	private boolean loaded;
+
+	public PrefixIndex(PhoneHelper helper) {
+		this.encoder = helper.newEncoder();
+	}
+
+	public synchronized int size() {
+		return labels.size();
+	}
+
+	/**
+	 * If the values in the store have been added.
+	 */
+	public synchronized boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Adds the values read from the store, after which changes are applied.
+	 */
+	public synchronized void load(Collection<Literal> values) {
+		for (Literal label : values) {
+			index(label);
+		}
+		loaded = true;
+	}
+
+	public synchronized void clear() {
+		table.clear();
+		labels.clear();
+	}
+
+	public synchronized void add(Literal label) {
+		if (loaded) {
+			index(label);
+		}
+	}
+
+	public synchronized void remove(Literal label) {
+		if (labels.remove(label)) {
+			for (String key : keys(encoder.clean(label.stringValue()))) {
+				Set<Literal> set = table.get(key);
+				if (set != null) {
+					set.remove(label);
+					if (set.isEmpty()) {
+						table.remove(key);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Values that have a word starting with the given prefix, ordered by that
+	 * word. A prefix of several words must start at a word of the value.
+	 * 
+	 * @param prefix
+	 *            partially typed keyword
+	 * @param limit
+	 *            maximum number of completions
+	 */
+	public synchronized List<Literal> complete(String prefix, int limit) {
+		String from = encoder.clean(prefix);
+		int space = from.indexOf(' ');
+		Collection<Set<Literal>> matches;
+		if (from.length() == 0) {
+			matches = table.values();
+		} else if (space < 0) {
+			String to = from + Character.MAX_VALUE;
+			matches = table.subMap(from, true, to, false).values();
+		} else {
+			Set<Literal> set = table.get(from.substring(0, space));
+			if (set == null)
+				return new ArrayList<Literal>();
+			matches = Collections.singleton(set);
+		}
+		Set<Literal> result = new LinkedHashSet<Literal>();
+		for (Set<Literal> set : matches) {
+			for (Literal label : set) {
+				if (space >= 0 && !isStartOfWord(label, from))
+					continue;
+				result.add(label);
+				if (result.size() >= limit)
+					return new ArrayList<Literal>(result);
+			}
+		}
+		return new ArrayList<Literal>(result);
+	}
+
+	private void index(Literal label) {
+		if (labels.add(label)) {
+			for (String key : keys(encoder.clean(label.stringValue()))) {
+				Set<Literal> set = table.get(key);
+				if (set == null) {
+					table.put(key, set = new HashSet<Literal>(1));
+				}
+				set.add(label);
+			}
+		}
+	}
+
+	private boolean isStartOfWord(Literal label, String words) {
+		String clean = encoder.clean(label.stringValue());
+		int i = 0;
+		do {
+			if (clean.startsWith(words, i))
+				return true;
+			i = clean.indexOf(' ', i) + 1;
+		} while (i > 0);
+		return false;
+	}
+
+	private Set<String> keys(String clean) {
+		Set<String> keys = new HashSet<String>();
+		for (String word : clean.split(" ")) {
+			if (word.length() > 0) {
+				keys.add(word);
+			}
+		}
+		return keys;
+	}
+
+}
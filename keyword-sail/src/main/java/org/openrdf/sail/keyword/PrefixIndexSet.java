@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2012 3 Round Stones Inc., Some rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.keyword;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.EmptyIteration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.ExternalSet;
+import org.openrdf.sail.SailException;
+
+/**
+ * Evaluates the keyword:complete magic property, <code>?label
+ * keyword:complete "prefix"</code>, using the {@link PrefixIndex}.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class PrefixIndexSet extends ExternalSet {
+	public static final String COMPLETE = "http://www.openrdf.org/rdf/2011/keyword#complete";
+	private final StatementPattern sp;
+	private final KeywordSail sail;
+	private final int limit;
+	private final BindingSet bindings;
+
+	public PrefixIndexSet(StatementPattern sp, KeywordSail sail, int limit,
+			BindingSet bindings) {
+		this.sp = sp;
+		this.sail = sail;
+		this.limit = limit;
+		this.bindings = bindings;
+	}
+
+	@Override
+	public PrefixIndexSet clone() {
+		return (PrefixIndexSet) super.clone();
+	}
+
+	@Override
+	public Set<String> getBindingNames() {
+		return sp.getBindingNames();
+	}
+
+	@Override
+	public Set<String> getAssuredBindingNames() {
+		return sp.getAssuredBindingNames();
+	}
+
+	@Override
+	public double cardinality() {
+		return limit;
+	}
+
+	@Override
+	public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(
+			BindingSet bindings) throws QueryEvaluationException {
+		if (this.bindings != null) {
+			QueryBindingSet b = new QueryBindingSet(bindings);
+			b.addAll(this.bindings);
+			bindings = b;
+		}
+		Value prefix = value(sp.getObjectVar(), bindings);
+		Value label = value(sp.getSubjectVar(), bindings);
+		if (!(prefix instanceof Literal))
+			return new EmptyIteration<BindingSet, QueryEvaluationException>();
+		PrefixIndex index;
+		try {
+			index = sail.getLoadedPrefixIndex();
+		} catch (SailException e) {
+			throw new QueryEvaluationException(e);
+		}
+		if (index == null)
+			return new EmptyIteration<BindingSet, QueryEvaluationException>();
+		List<Literal> completions = index.complete(prefix.stringValue(), limit);
+		List<BindingSet> list = new ArrayList<BindingSet>(completions.size());
+		for (Literal completion : completions) {
+			if (label != null && !label.equals(completion))
+				continue;
+			QueryBindingSet result = new QueryBindingSet(bindings);
+			Var var = sp.getSubjectVar();
+			if (!var.hasValue() && !result.hasBinding(var.getName())) {
+				result.addBinding(var.getName(), completion);
+			}
+			list.add(result);
+		}
+		return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(
+				list.iterator());
+	}
+
+	private Value value(Var var, BindingSet bindings) {
+		if (var.getValue() != null)
+			return var.getValue();
+		return bindings.getValue(var.getName());
+	}
+
+}
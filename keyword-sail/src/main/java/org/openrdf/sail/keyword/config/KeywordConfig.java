@@ -28,10 +28,13 @@
  */
 package org.openrdf.sail.keyword.config;
 
+import static org.openrdf.sail.keyword.config.KeywordSchema.COMPLETION_LIMIT;
 import static org.openrdf.sail.keyword.config.KeywordSchema.ENABLED;
 import static org.openrdf.sail.keyword.config.KeywordSchema.KEYWORD_PROPERTY;
 import static org.openrdf.sail.keyword.config.KeywordSchema.PHONE_GRAPH;
+import static org.openrdf.sail.keyword.config.KeywordSchema.PHONE_INDEX;
 import static org.openrdf.sail.keyword.config.KeywordSchema.PHONE_PROPERTY;
+import static org.openrdf.sail.keyword.config.KeywordSchema.PREFIX_INDEX;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -64,6 +67,9 @@ public class KeywordConfig extends DelegatingSailImplConfigBase {
 	private Set<URI> keywordProperties;
 	private URI phoneProperty;
 	private URI phoneGraph;
+	private Boolean phoneIndex;
+	private Boolean prefixIndex;
+	private Integer completionLimit;
 
 	public boolean isEnabled() {
 		return enabled == null ? true : enabled;
@@ -97,6 +103,30 @@ public class KeywordConfig extends DelegatingSailImplConfigBase {
 		this.phoneGraph = phoneGraph;
 	}
 
+	public boolean isPhoneIndex() {
+		return phoneIndex == null ? false : phoneIndex;
+	}
+
+	public void setPhoneIndex(boolean phoneIndex) {
+		this.phoneIndex = phoneIndex;
+	}
+
+	public boolean isPrefixIndex() {
+		return prefixIndex == null ? false : prefixIndex;
+	}
+
+	public void setPrefixIndex(boolean prefixIndex) {
+		this.prefixIndex = prefixIndex;
+	}
+
+	public Integer getCompletionLimit() {
+		return completionLimit;
+	}
+
+	public void setCompletionLimit(Integer completionLimit) {
+		this.completionLimit = completionLimit;
+	}
+
 	@Override
 	public Resource export(Graph model) {
 		Resource self = super.export(model);
@@ -114,6 +144,15 @@ public class KeywordConfig extends DelegatingSailImplConfigBase {
 		if (phoneGraph != null) {
 			model.add(self, PHONE_GRAPH, phoneGraph);
 		}
+		if (phoneIndex != null) {
+			model.add(self, PHONE_INDEX, vf.createLiteral(phoneIndex));
+		}
+		if (prefixIndex != null) {
+			model.add(self, PREFIX_INDEX, vf.createLiteral(prefixIndex));
+		}
+		if (completionLimit != null) {
+			model.add(self, COMPLETION_LIMIT, vf.createLiteral(completionLimit));
+		}
 		return self;
 	}
 
@@ -135,6 +174,21 @@ public class KeywordConfig extends DelegatingSailImplConfigBase {
 			Literal lit = (Literal) set.iterator().next();
 			enabled = lit.booleanValue();
 		}
+		set = model.filter(implNode, PHONE_INDEX, null).objects();
+		if (!set.isEmpty()) {
+			Literal lit = (Literal) set.iterator().next();
+			phoneIndex = lit.booleanValue();
+		}
+		set = model.filter(implNode, PREFIX_INDEX, null).objects();
+		if (!set.isEmpty()) {
+			Literal lit = (Literal) set.iterator().next();
+			prefixIndex = lit.booleanValue();
+		}
+		set = model.filter(implNode, COMPLETION_LIMIT, null).objects();
+		if (!set.isEmpty()) {
+			Literal lit = (Literal) set.iterator().next();
+			completionLimit = lit.intValue();
+		}
 	}
 
 }
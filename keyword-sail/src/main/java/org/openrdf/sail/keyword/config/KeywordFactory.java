@@ -66,6 +66,11 @@ public class KeywordFactory implements SailFactory {
 		sail.setPhoneProperty(cfg.getPhoneProperty());
 		sail.setPhoneGraph(cfg.getPhoneGraph());
 		sail.setEnabled(cfg.isEnabled());
+		sail.setPhoneIndexEnabled(cfg.isPhoneIndex());
+		sail.setPrefixIndexEnabled(cfg.isPrefixIndex());
+		if (cfg.getCompletionLimit() != null) {
+			sail.setCompletionLimit(cfg.getCompletionLimit());
+		}
 		return sail;
 	}
 }
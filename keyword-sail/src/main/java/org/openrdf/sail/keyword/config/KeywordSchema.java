@@ -40,6 +40,9 @@ public class KeywordSchema {
 	public static final URI PHONE_PROPERTY = new URIImpl(NAMESPACE + "phoneProperty");
 	public static final URI PHONE_GRAPH = new URIImpl(NAMESPACE + "phoneGraph");
 	public static final URI KEYWORD_PROPERTY = new URIImpl(NAMESPACE + "keywordProperty");
+	public static final URI PHONE_INDEX = new URIImpl(NAMESPACE + "phoneIndex");
+	public static final URI PREFIX_INDEX = new URIImpl(NAMESPACE + "prefixIndex");
+	public static final URI COMPLETION_LIMIT = new URIImpl(NAMESPACE + "completionLimit");
 
 	private KeywordSchema() {
 		// no constructor
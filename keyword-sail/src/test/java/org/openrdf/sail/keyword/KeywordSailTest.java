@@ -3,17 +3,27 @@ package org.openrdf.sail.keyword;
 import info.aduna.io.FileUtil;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
+import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
 import org.openrdf.model.URI;
+import org.openrdf.model.Value;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.model.vocabulary.RDFS;
 import org.openrdf.query.BooleanQuery;
 import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
 import org.openrdf.repository.Repository;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.sail.SailRepository;
@@ -181,4 +191,295 @@ public class KeywordSailTest extends TestCase {
 		qry.setBinding("keyword", vf.createLiteral("base ball"));
 		assertTrue(qry.evaluate());
 	}
+
+	public void testRemoveLabel() throws Exception {
+		PhoneHelper helper = PhoneHelperFactory.newInstance().createPhoneHelper();
+		URI ball = vf.createURI("urn:test:ball");
+		URI phone = vf.createURI("http://www.openrdf.org/rdf/2011/keyword#phone");
+		Literal base = vf.createLiteral(helper.soundex("base"));
+		Literal bat = vf.createLiteral(helper.soundex("bat"));
+		con.add(ball, RDFS.LABEL, vf.createLiteral("base ball"));
+		con.add(ball, RDFS.LABEL, vf.createLiteral("ball bat"));
+		assertTrue(con.hasStatement(ball, phone, base, true));
+		con.remove(ball, RDFS.LABEL, vf.createLiteral("base ball"));
+		assertFalse(con.hasStatement(ball, phone, base, true));
+		assertTrue(con.hasStatement(ball, phone, bat, true));
+		assertTrue(con.hasStatement(ball, phone,
+				vf.createLiteral(helper.soundex("ball")), true));
+	}
+
+	public void testDeleteData() throws Exception {
+		URI ball = vf.createURI("urn:test:ball");
+		URI phone = vf.createURI("http://www.openrdf.org/rdf/2011/keyword#phone");
+		con.add(ball, RDFS.LABEL, vf.createLiteral("base ball"));
+		assertTrue(con.hasStatement(ball, phone, null, true));
+		con.prepareUpdate(QueryLanguage.SPARQL, PREFIX
+			+ "DELETE DATA { <urn:test:ball> rdfs:label \"base ball\" }").execute();
+		assertFalse(con.hasStatement(ball, phone, null, true));
+	}
+
+	public void testReindexManyValues() throws Exception {
+		for (int i = 0; i < 3000; i++) {
+			con.add(vf.createURI("urn:test:ball" + i), RDF.VALUE,
+					vf.createLiteral("base ball " + i));
+		}
+		con.close();
+		repo.shutDown();
+		KeywordSail sail = new KeywordSail(new MemoryStore(dir));
+		sail.setKeywordProperties(Collections.singleton(RDF.VALUE));
+		sail.setReindexThreads(3);
+		repo = new SailRepository(sail);
+		repo.initialize();
+		vf = repo.getValueFactory();
+		con = repo.getConnection();
+		URI phone = vf.createURI("http://www.openrdf.org/rdf/2011/keyword#phone");
+		for (int i = 0; i < 3000; i++) {
+			assertTrue(con.hasStatement(vf.createURI("urn:test:ball" + i),
+					phone, null, true));
+		}
+		assertFalse(new File(dir, "org.openrdf.sail.keyword.checkpoint").exists());
+	}
+
+	public void testResumeReindexWithinProperty() throws Exception {
+		con.close();
+		repo.shutDown();
+		KeywordSail sail = new KeywordSail(new MemoryStore(dir));
+		sail.setKeywordProperties(Collections.singleton(RDF.VALUE));
+		repo = new SailRepository(sail);
+		repo.initialize();
+		repo.shutDown();
+		File settings = new File(dir, "org.openrdf.sail.keyword.properties");
+		Properties checkpoint = new Properties();
+		FileInputStream in = new FileInputStream(settings);
+		try {
+			checkpoint.load(in);
+		} finally {
+			in.close();
+		}
+		repo = new SailRepository(new MemoryStore(dir));
+		repo.initialize();
+		vf = repo.getValueFactory();
+		con = repo.getConnection();
+		for (int i = 0; i < 3000; i++) {
+			con.add(vf.createURI("urn:test:ball" + i), RDF.VALUE,
+					vf.createLiteral("base ball " + i));
+		}
+		con.close();
+		repo.shutDown();
+		// crash after the first 2000 values were committed
+		settings.delete();
+		checkpoint.setProperty("indexing", RDF.VALUE.stringValue());
+		checkpoint.setProperty("indexing.count", "2000");
+		FileOutputStream out = new FileOutputStream(new File(dir,
+				"org.openrdf.sail.keyword.checkpoint"));
+		try {
+			checkpoint.store(out, null);
+		} finally {
+			out.close();
+		}
+		sail = new KeywordSail(new MemoryStore(dir));
+		sail.setKeywordProperties(Collections.singleton(RDF.VALUE));
+		repo = new SailRepository(sail);
+		repo.initialize();
+		vf = repo.getValueFactory();
+		con = repo.getConnection();
+		URI phone = vf.createURI("http://www.openrdf.org/rdf/2011/keyword#phone");
+		int indexed = 0;
+		for (int i = 0; i < 3000; i++) {
+			if (con.hasStatement(vf.createURI("urn:test:ball" + i), phone,
+					null, true)) {
+				indexed++;
+			}
+		}
+		assertEquals(1000, indexed);
+		assertFalse(new File(dir, "org.openrdf.sail.keyword.checkpoint").exists());
+	}
+
+	public void testPhoneIndexMatch() throws Exception {
+		con.close();
+		repo.shutDown();
+		KeywordSail sail = new KeywordSail(new MemoryStore(dir));
+		sail.setPhoneIndexEnabled(true);
+		repo = new SailRepository(sail);
+		repo.initialize();
+		vf = repo.getValueFactory();
+		con = repo.getConnection();
+		con.add(vf.createURI("urn:test:bat"), RDFS.LABEL,
+				vf.createLiteral("ball bat"));
+		con.add(vf.createURI("urn:test:ball"), RDFS.LABEL,
+				vf.createLiteral("base ball"));
+		con.add(vf.createURI("urn:test:glove"), RDFS.LABEL,
+				vf.createLiteral("glove"));
+		TupleQuery qry = con.prepareTupleQuery(QueryLanguage.SPARQL, PREFIX
+				+ "SELECT ?resource { ?resource keyword:match $keyword }");
+		qry.setBinding("keyword", vf.createLiteral("base ball"));
+		TupleQueryResult result = qry.evaluate();
+		try {
+			assertTrue(result.hasNext());
+			assertEquals(vf.createURI("urn:test:ball"), result.next()
+					.getValue("resource"));
+			assertTrue(result.hasNext());
+			assertEquals(vf.createURI("urn:test:bat"), result.next()
+					.getValue("resource"));
+			assertFalse(result.hasNext());
+		} finally {
+			result.close();
+		}
+	}
+
+	public void testReindexInconsistentPhoneIndex() throws Exception {
+		con.close();
+		repo.shutDown();
+		KeywordSail sail = new KeywordSail(new MemoryStore(dir));
+		sail.setPhoneIndexEnabled(true);
+		repo = new SailRepository(sail);
+		repo.initialize();
+		vf = repo.getValueFactory();
+		con = repo.getConnection();
+		con.add(vf.createURI("urn:test:ball"), RDFS.LABEL,
+				vf.createLiteral("base ball"));
+		con.close();
+		repo.shutDown();
+		// crash after rdfs:label was checkpointed, but before the index flushed
+		File settings = new File(dir, "org.openrdf.sail.keyword.properties");
+		Properties checkpoint = new Properties();
+		FileInputStream in = new FileInputStream(settings);
+		try {
+			checkpoint.load(in);
+		} finally {
+			in.close();
+		}
+		checkpoint.setProperty("indexed", RDFS.LABEL.stringValue());
+		FileOutputStream out = new FileOutputStream(new File(dir,
+				"org.openrdf.sail.keyword.checkpoint"));
+		try {
+			checkpoint.store(out, null);
+		} finally {
+			out.close();
+		}
+		File index = new File(dir, "org.openrdf.sail.keyword.index");
+		FileUtil.deltree(index);
+		index.mkdirs();
+		new File(index, "dirty").createNewFile();
+		sail = new KeywordSail(new MemoryStore(dir));
+		sail.setPhoneIndexEnabled(true);
+		repo = new SailRepository(sail);
+		repo.initialize();
+		vf = repo.getValueFactory();
+		con = repo.getConnection();
+		TupleQuery qry = con.prepareTupleQuery(QueryLanguage.SPARQL, PREFIX
+				+ "SELECT ?resource { ?resource keyword:match $keyword }");
+		qry.setBinding("keyword", vf.createLiteral("base ball"));
+		TupleQueryResult result = qry.evaluate();
+		try {
+			assertTrue(result.hasNext());
+			assertEquals(vf.createURI("urn:test:ball"), result.next()
+					.getValue("resource"));
+		} finally {
+			result.close();
+		}
+		assertFalse(new File(dir, "org.openrdf.sail.keyword.checkpoint").exists());
+	}
+
+	public void testPrefixIndexComplete() throws Exception {
+		con.add(vf.createURI("urn:test:glove"), RDFS.LABEL,
+				vf.createLiteral("glove"));
+		con.close();
+		repo.shutDown();
+		KeywordSail sail = new KeywordSail(new MemoryStore(dir));
+		sail.setPrefixIndexEnabled(true);
+		sail.setCompletionLimit(2);
+		repo = new SailRepository(sail);
+		repo.initialize();
+		vf = repo.getValueFactory();
+		con = repo.getConnection();
+		con.add(vf.createURI("urn:test:ball"), RDFS.LABEL,
+				vf.createLiteral("base ball"));
+		con.add(vf.createURI("urn:test:bat"), RDFS.LABEL,
+				vf.createLiteral("Bat"));
+		con.add(vf.createURI("urn:test:bag"), RDFS.LABEL,
+				vf.createLiteral("bag"));
+		TupleQuery qry = con.prepareTupleQuery(QueryLanguage.SPARQL, PREFIX
+				+ "SELECT ?label { ?label keyword:complete $prefix }");
+		qry.setBinding("prefix", vf.createLiteral("bal"));
+		TupleQueryResult result = qry.evaluate();
+		try {
+			assertEquals(vf.createLiteral("base ball"), result.next()
+					.getValue("label"));
+			assertFalse(result.hasNext());
+		} finally {
+			result.close();
+		}
+		qry.setBinding("prefix", vf.createLiteral("ba"));
+		result = qry.evaluate();
+		try {
+			assertEquals(vf.createLiteral("bag"), result.next().getValue("label"));
+			assertEquals(vf.createLiteral("base ball"), result.next()
+					.getValue("label"));
+			assertFalse(result.hasNext());
+		} finally {
+			result.close();
+		}
+		qry.setBinding("prefix", vf.createLiteral("base ba"));
+		result = qry.evaluate();
+		try {
+			assertEquals(vf.createLiteral("base ball"), result.next()
+					.getValue("label"));
+			assertFalse(result.hasNext());
+		} finally {
+			result.close();
+		}
+		qry.setBinding("prefix", vf.createLiteral("ball ba"));
+		assertFalse(qry.evaluate().hasNext());
+		qry.setBinding("prefix", vf.createLiteral("glo"));
+		assertTrue(qry.evaluate().hasNext());
+		con.remove(vf.createURI("urn:test:glove"), RDFS.LABEL,
+				vf.createLiteral("glove"));
+		assertFalse(qry.evaluate().hasNext());
+	}
+
+	public void testRegexProbe() throws Exception {
+		con.close();
+		repo.shutDown();
+		KeywordSail sail = new KeywordSail(new MemoryStore(dir));
+		sail.setPhoneIndexEnabled(true);
+		repo = new SailRepository(sail);
+		repo.initialize();
+		vf = repo.getValueFactory();
+		con = repo.getConnection();
+		con.add(vf.createURI("urn:test:ball"), RDFS.LABEL,
+				vf.createLiteral("base ball"));
+		con.add(vf.createURI("urn:test:glove"), RDFS.LABEL,
+				vf.createLiteral("glove"));
+		con.add(vf.createURI("urn:test:football"), RDFS.LABEL,
+				vf.createLiteral("football"));
+		TupleQuery qry = con.prepareTupleQuery(QueryLanguage.SPARQL, PREFIX
+				+ "SELECT ?resource { ?resource rdfs:label ?label\n"
+				+ "FILTER regex(?label, keyword:regex($keyword)) }");
+		qry.setBinding("keyword", vf.createLiteral("ball"));
+		Set<Value> resources = new HashSet<Value>();
+		TupleQueryResult result = qry.evaluate();
+		try {
+			while (result.hasNext()) {
+				resources.add(result.next().getValue("resource"));
+			}
+		} finally {
+			result.close();
+		}
+		assertEquals(new HashSet<Value>(Arrays.asList(
+				vf.createURI("urn:test:ball"),
+				vf.createURI("urn:test:football"))), resources);
+		qry = con.prepareTupleQuery(QueryLanguage.SPARQL, PREFIX
+				+ "SELECT ?resource { ?resource rdfs:label ?label\n"
+				+ "FILTER keyword:matchesWord(?label, $keyword) }");
+		qry.setBinding("keyword", vf.createLiteral("ball"));
+		result = qry.evaluate();
+		try {
+			assertEquals(vf.createURI("urn:test:ball"), result.next()
+					.getValue("resource"));
+			assertFalse(result.hasNext());
+		} finally {
+			result.close();
+		}
+	}
 }
@@ -1,7 +1,13 @@
 package org.openrdf.sail.keyword;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
 import junit.framework.TestCase;
 
+import org.apache.commons.codec.language.Soundex;
+
 public class PhoneHelperTest extends TestCase {
 	private PhoneHelper helper = PhoneHelperFactory.newInstance().createPhoneHelper();
 
@@ -11,4 +17,27 @@ public class PhoneHelperTest extends TestCase {
 		assertTrue(helper.phones("base ball").contains(helper.soundex("base ball")));
 	}
 
+	public void testSoundexCompatibility() throws Exception {
+		Soundex soundex = new Soundex();
+		for (String word : Arrays.asList("Ashcraft", "Tymczak", "Pfister",
+				"Lukasiewicz", "Bhwb", "Shwhs", "Robert", "Rupert", "Honeyman")) {
+			assertEquals(soundex.encode(word.toUpperCase()), helper.soundex(word));
+		}
+	}
+
+	public void testBatch() throws Exception {
+		List<Set<String>> phones = helper.phones(Arrays.asList("base ball",
+				"glove"));
+		assertEquals(2, phones.size());
+		assertEquals(helper.phones("base ball"), phones.get(0));
+		assertEquals(helper.phones("glove"), phones.get(1));
+	}
+
+	public void testPatternCache() throws Exception {
+		assertSame(helper.pattern("base ball"), helper.pattern("base ball"));
+		assertEquals(helper.regex("base ball"), helper.pattern("base ball")
+				.pattern());
+		assertTrue(helper.pattern("ball").matcher("Base Ball").find());
+	}
+
 }
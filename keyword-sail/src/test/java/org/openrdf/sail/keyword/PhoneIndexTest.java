@@ -0,0 +1,72 @@
+package org.openrdf.sail.keyword;
+
+import info.aduna.io.FileUtil;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class PhoneIndexTest extends TestCase {
+	private File dir;
+	private PhoneIndex index;
+
+	public void setUp() throws Exception {
+		dir = File.createTempFile("phone", "");
+		dir.delete();
+		dir.mkdirs();
+		index = new PhoneIndex(dir);
+	}
+
+	public void tearDown() throws Exception {
+		index.close();
+		FileUtil.deltree(dir);
+	}
+
+	public void testRank() throws Exception {
+		index.add("<urn:test:ball>", Arrays.asList("B200", "B400", "B214"));
+		index.add("<urn:test:bat>", Arrays.asList("B300", "B400"));
+		Map<String, Integer> ranked = index.rank(Arrays.asList("B200", "B400"));
+		assertEquals(Arrays.asList("<urn:test:ball>", "<urn:test:bat>"),
+				Arrays.asList(ranked.keySet().toArray()));
+		assertEquals(Integer.valueOf(2), ranked.get("<urn:test:ball>"));
+	}
+
+	public void testReopen() throws Exception {
+		index.add("<urn:test:ball>", Arrays.asList("B200", "B400"));
+		index.flush();
+		index.remove("<urn:test:ball>", Arrays.asList("B200"));
+		index.add("_:node1", Arrays.asList("B200"));
+		index.close();
+		index = new PhoneIndex(dir);
+		assertTrue(index.isConsistent());
+		assertEquals(1, index.rank(Arrays.asList("B200")).size());
+		assertTrue(index.rank(Arrays.asList("B200")).containsKey("_:node1"));
+		assertTrue(index.rank(Arrays.asList("B400")).containsKey("<urn:test:ball>"));
+	}
+
+	public void testReopenDictionary() throws Exception {
+		index.add("<urn:test:b>", Arrays.asList("B200"));
+		index.flush();
+		index.add("<urn:test:c>", Arrays.asList("B200"));
+		index.add("<urn:test:a>", Arrays.asList("B400"));
+		index.close();
+		index = new PhoneIndex(dir);
+		index.remove("<urn:test:b>", Arrays.asList("B200"));
+		index.add("<urn:test:a>", Arrays.asList("B200"));
+		index.close();
+		index = new PhoneIndex(dir);
+		assertEquals(Arrays.asList("<urn:test:c>", "<urn:test:a>"),
+				Arrays.asList(index.rank(Arrays.asList("B200")).keySet()
+						.toArray()));
+		assertEquals(Integer.valueOf(2), index.rank(
+				Arrays.asList("B200", "B400")).get("<urn:test:a>"));
+	}
+
+	public void testInconsistent() throws Exception {
+		index.add("<urn:test:ball>", Arrays.asList("B200", "B400"));
+		index = new PhoneIndex(dir);
+		assertFalse(index.isConsistent());
+	}
+}
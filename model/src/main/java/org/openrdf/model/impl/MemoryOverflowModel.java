@@ -92,6 +92,14 @@ public class MemoryOverflowModel extends AbstractModel {
 		memory = new TreeModel(namespaces);
 	}
 
+	/**
+	 * If the statements of this model have been moved to a temporary store on
+	 * disk.
+	 */
+	public synchronized boolean isOverflowed() {
+		return disk != null;
+	}
+
 	@Override
 	public synchronized void closeIterator(Iterator<?> iter) {
 		super.closeIterator(iter);
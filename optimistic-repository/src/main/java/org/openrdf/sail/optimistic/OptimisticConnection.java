@@ -93,6 +93,7 @@ import org.openrdf.sail.optimistic.helpers.EvaluateOperation;
 import org.openrdf.sail.optimistic.helpers.InconsistentChange;
 import org.openrdf.sail.optimistic.helpers.InvalidTripleSource;
 import org.openrdf.sail.optimistic.helpers.NonExcludingFinder;
+import org.openrdf.sail.optimistic.helpers.ObservationIndex;
 
 /**
  * Optionally enforces snapshot and serializable isolation.
@@ -219,7 +220,7 @@ public class OptimisticConnection extends TransactionalSailConnectionWrapper imp
 	/** locked by this */
 	private Set<String> removedPrefixes = new HashSet<String>();
 	/** locked by observations */
-	private final Set<EvaluateOperation> observations = new HashSet<EvaluateOperation>();
+	private final ObservationIndex observations = new ObservationIndex();
 	/** locked by observations */
 	private final LinkedList<InconsistentChange> changes = new LinkedList<InconsistentChange>();
 	/** If sail.getWriteLock() */
@@ -920,21 +921,33 @@ public class OptimisticConnection extends TransactionalSailConnectionWrapper imp
 
 	/**
 	 * Checks this change to see if it is inconsistent with the observed state
-	 * of the store.
+	 * of the store, using a single read connection and stopping at the first
+	 * inconsistent observation. Only observations with a pattern that matches
+	 * the change are re-evaluated.
 	 */
 	void changed(Model added, Model removed)
 			throws SailException {
 		synchronized (observations) {
-			for (EvaluateOperation op : observations) {
-				if (!added.isEmpty() && sail.effects(added, op)) {
-					ConcurrencyException inc = inconsistency(op);
-					changes.add(new InconsistentChange(added, removed, inc));
-					break;
-				} else if (!removed.isEmpty() && sail.effects(removed, op)) {
-					ConcurrencyException inc = inconsistency(op);
-					changes.add(new InconsistentChange(added, removed, inc));
-					break;
+			Set<EvaluateOperation> affected;
+			affected = observations.findAffected(added, removed);
+			if (affected.isEmpty())
+				return;
+			SailConnection localCon = sail.getReadConnection();
+			try {
+				for (EvaluateOperation op : affected) {
+					if (!added.isEmpty() && sail.effects(added, op, localCon)) {
+						ConcurrencyException inc = inconsistency(op);
+						changes.add(new InconsistentChange(added, removed, inc));
+						break;
+					} else if (!removed.isEmpty()
+							&& sail.effects(removed, op, localCon)) {
+						ConcurrencyException inc = inconsistency(op);
+						changes.add(new InconsistentChange(added, removed, inc));
+						break;
+					}
 				}
+			} finally {
+				localCon.close();
 			}
 		}
 	}
@@ -101,6 +101,18 @@ public class OptimisticRepository extends SailRepository implements NamedQueryRe
 		sail.setSerializable(serializable);
 	}
 
+	/**
+	 * @return the maximum number of open transactions that are checked for
+	 *         conflicts concurrently while another transaction is prepared.
+	 */
+	public int getConflictCheckThreads() {
+		return sail.getConflictCheckThreads();
+	}
+
+	public void setConflictCheckThreads(int threads) {
+		sail.setConflictCheckThreads(threads);
+	}
+
 	@Override
 	public SailRepositoryConnection getConnection() throws RepositoryException {
 		try {
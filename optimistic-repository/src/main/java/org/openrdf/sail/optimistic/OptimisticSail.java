@@ -35,10 +35,18 @@ import info.aduna.concurrent.locks.ReadWriteLockManager;
 import info.aduna.concurrent.locks.WritePrefReadWriteLockManager;
 import info.aduna.iteration.CloseableIteration;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.openrdf.model.Model;
 import org.openrdf.model.ValueFactory;
@@ -78,6 +86,8 @@ public class OptimisticSail extends SailWrapper implements NotifyingSail {
 	private volatile OptimisticConnection prepared;
 	private volatile boolean listenersIsEmpty = true;
 	private Set<SailChangedListener> listeners = new HashSet<SailChangedListener>();
+	private int conflictCheckThreads = Runtime.getRuntime().availableProcessors();
+	private ExecutorService conflictCheckExecutor;
 
 	public OptimisticSail() {
 		super();
@@ -123,6 +133,22 @@ public class OptimisticSail extends SailWrapper implements NotifyingSail {
 		this.serializable = serializable;
 	}
 
+	/**
+	 * @return the maximum number of open transactions that are checked for
+	 *         conflicts concurrently while another transaction is prepared.
+	 */
+	public int getConflictCheckThreads() {
+		return conflictCheckThreads;
+	}
+
+	public synchronized void setConflictCheckThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException(
+					"Conflict check threads must be positive: " + threads);
+		this.conflictCheckThreads = threads;
+		stopConflictCheckExecutor();
+	}
+
 	@Override
 	public String toString() {
 		return getBaseSail().toString();
@@ -136,6 +162,14 @@ public class OptimisticSail extends SailWrapper implements NotifyingSail {
 		}
 	}
 
+	@Override
+	public void shutDown() throws SailException {
+		synchronized (this) {
+			stopConflictCheckExecutor();
+		}
+		super.shutDown();
+	}
+
 	public void addSailChangedListener(SailChangedListener listener) {
 		synchronized (listeners) {
 			listeners.add(listener);
@@ -198,11 +232,84 @@ public class OptimisticSail extends SailWrapper implements NotifyingSail {
 			Model removed = prepared.getRemovedModel();
 			if (added.isEmpty() && removed.isEmpty())
 				return;
+			List<OptimisticConnection> others = new ArrayList<OptimisticConnection>();
 			for (OptimisticConnection con : transactions.keySet()) {
-				if (con == prepared)
-					continue;
-				con.changed(added, removed);
-			}		
+				if (con != prepared) {
+					others.add(con);
+				}
+			}
+			if (others.size() < 2 || conflictCheckThreads < 2) {
+				for (OptimisticConnection con : others) {
+					con.changed(added, removed);
+				}
+			} else {
+				changed(others, added, removed);
+			}
+		}
+	}
+
+	/**
+	 * Checks each of the given transactions for conflicts in parallel; each
+	 * transaction stops at its first conflicting observation.
+	 */
+	private void changed(List<OptimisticConnection> others, final Model added,
+			final Model removed) throws InterruptedException, SailException {
+		ExecutorService executor = getConflictCheckExecutor();
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(others.size());
+		try {
+			for (final OptimisticConnection con : others) {
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() throws SailException {
+						con.changed(added, removed);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof SailException)
+						throw (SailException) cause;
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new SailException(cause);
+				}
+			}
+		} finally {
+			for (Future<Void> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/** locked by this */
+	private ExecutorService getConflictCheckExecutor() {
+		if (conflictCheckExecutor == null) {
+			conflictCheckExecutor = Executors.newFixedThreadPool(
+					conflictCheckThreads, new ThreadFactory() {
+						private int count;
+
+						public Thread newThread(Runnable r) {
+							String name = "Optimistic Conflict Check "
+									+ (++count);
+							Thread thread = new Thread(r, name);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		return conflictCheckExecutor;
+	}
+
+	/** locked by this */
+	private void stopConflictCheckExecutor() {
+		if (conflictCheckExecutor != null) {
+			conflictCheckExecutor.shutdownNow();
+			conflictCheckExecutor = null;
 		}
 	}
 
@@ -254,6 +361,21 @@ public class OptimisticSail extends SailWrapper implements NotifyingSail {
 	 * the extra binding comes out the other side.
 	 */
 	boolean effects(Model delta, EvaluateOperation op) throws SailException {
+		// open local connection for this transaction if required
+		SailConnection localCon = super.getConnection() ;
+		try {
+			return effects(delta, op, localCon);
+		} finally {
+			localCon.close();
+		}
+	}
+
+	/**
+	 * Same as {@link #effects(Model, EvaluateOperation)}, but evaluates the
+	 * modified query using the given read connection.
+	 */
+	boolean effects(Model delta, EvaluateOperation op, SailConnection localCon)
+			throws SailException {
 		TupleExpr query = new QueryRoot(op.getTupleExpr().clone());
 		BindingSet bindings = op.getBindingSet();
 		boolean inf = op.isIncludeInferred();
@@ -266,27 +388,28 @@ public class OptimisticSail extends SailWrapper implements NotifyingSail {
 		if (!merger.isModified())
 			return false;
 	
-		// open local connection for this transaction if required
-		SailConnection localCon = super.getConnection() ;
+		CloseableIteration<? extends BindingSet, QueryEvaluationException> result;
+		result = localCon.evaluate(query, op.getDataset(), bindings, inf);
 		try {
-			CloseableIteration<? extends BindingSet, QueryEvaluationException> result;
-			result = localCon.evaluate(query, op.getDataset(), bindings, inf);
 			try {
-				try {
-					while (result.hasNext()) {
-						if (result.next().hasBinding(DELTA_VARNAME))
-							return true;
-					}
-					return false;
-				} finally {
-					result.close();
+				while (result.hasNext()) {
+					if (result.next().hasBinding(DELTA_VARNAME))
+						return true;
 				}
-			} catch (QueryEvaluationException e) {
-				throw new SailException(e);
+				return false;
+			} finally {
+				result.close();
 			}
-		} finally {
-			localCon.close();
+		} catch (QueryEvaluationException e) {
+			throw new SailException(e);
 		}
 	}
+
+	/**
+	 * Opens a read connection on the underlying store for conflict checks.
+	 */
+	SailConnection getReadConnection() throws SailException {
+		return super.getConnection();
+	}
 	
 }
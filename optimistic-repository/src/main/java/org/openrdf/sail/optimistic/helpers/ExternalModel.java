@@ -134,7 +134,7 @@ public class ExternalModel extends ExternalSet {
 		return new StatementBindingSetCursor(stIter, sp, bindings);
 	}
 
-	private Value value(Var var, BindingSet bindings) {
+	static Value value(Var var, BindingSet bindings) {
 		if (var == null)
 			return null;
 		if (var.getValue() != null)
@@ -142,7 +142,7 @@ public class ExternalModel extends ExternalSet {
 		return bindings.getValue(var.getName());
 	}
 
-	private Resource[] contexts(StatementPattern sp, Dataset dataset,
+	static Resource[] contexts(StatementPattern sp, Dataset dataset,
 			BindingSet bindings) {
 		Value contextValue = value(sp.getContextVar(), bindings);
 
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2009, James Leigh All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.optimistic.helpers;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.model.Model;
+
+/**
+ * Observed operations of a transaction indexed by the signatures of their
+ * statement patterns, so a change can be probed in memory before any
+ * operation is re-evaluated.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class ObservationIndex {
+	private final Set<EvaluateOperation> observations = new LinkedHashSet<EvaluateOperation>();
+	private final Map<PatternSignature, Set<EvaluateOperation>> index = new HashMap<PatternSignature, Set<EvaluateOperation>>();
+
+	public boolean isEmpty() {
+		return observations.isEmpty();
+	}
+
+	public void add(EvaluateOperation op) {
+		if (!observations.add(op))
+			return;
+		for (PatternSignature sig : PatternSignature.signatures(op)) {
+			Set<EvaluateOperation> set = index.get(sig);
+			if (set == null) {
+				index.put(sig, set = new HashSet<EvaluateOperation>());
+			}
+			set.add(op);
+		}
+	}
+
+	public void clear() {
+		observations.clear();
+		index.clear();
+	}
+
+	/**
+	 * Only these operations might observe a different state after the given
+	 * change; all others match none of the changed statements.
+	 */
+	public Set<EvaluateOperation> findAffected(Model added, Model removed) {
+		Set<EvaluateOperation> affected = new HashSet<EvaluateOperation>();
+		for (Map.Entry<PatternSignature, Set<EvaluateOperation>> e : index
+				.entrySet()) {
+			if (affected.containsAll(e.getValue()))
+				continue;
+			PatternSignature sig = e.getKey();
+			if (sig.isAffectedBy(added) || sig.isAffectedBy(removed)) {
+				affected.addAll(e.getValue());
+			}
+		}
+		Set<EvaluateOperation> result = new LinkedHashSet<EvaluateOperation>();
+		for (EvaluateOperation op : observations) {
+			if (affected.contains(op)) {
+				result.add(op);
+			}
+		}
+		return result;
+	}
+}
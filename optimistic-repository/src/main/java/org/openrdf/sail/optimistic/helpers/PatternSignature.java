@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2009, James Leigh All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution. 
+ * - Neither the name of the openrdf.org nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+package org.openrdf.sail.optimistic.helpers;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+
+/**
+ * The constant subject, predicate, object and contexts of a statement pattern
+ * within an observed operation. A change can only effect the operation if one
+ * of its signatures matches a statement of the change.
+ * 
+ * @author James Leigh
+ * 
+ */
+public class PatternSignature {
+
+	/**
+	 * The signature of every statement pattern in the given operation.
+	 */
+	public static Set<PatternSignature> signatures(EvaluateOperation op) {
+		final Dataset dataset = op.getDataset();
+		final BindingSet bindings = op.getBindingSet();
+		final Set<PatternSignature> set = new HashSet<PatternSignature>();
+		op.getTupleExpr().visit(new QueryModelVisitorBase<RuntimeException>() {
+			public void meet(StatementPattern sp) {
+				set.add(new PatternSignature(sp, dataset, bindings));
+			}
+		});
+		return set;
+	}
+
+	private final Value subj;
+	private final Value pred;
+	private final Value obj;
+	/** null if no context can match */
+	private final Resource[] contexts;
+
+	public PatternSignature(StatementPattern sp, Dataset dataset,
+			BindingSet bindings) {
+		subj = ExternalModel.value(sp.getSubjectVar(), bindings);
+		pred = ExternalModel.value(sp.getPredicateVar(), bindings);
+		obj = ExternalModel.value(sp.getObjectVar(), bindings);
+		Resource[] ctxs;
+		try {
+			ctxs = ExternalModel.contexts(sp, dataset, bindings);
+		} catch (ClassCastException e) {
+			// context is bound to a literal
+			ctxs = null;
+		}
+		contexts = ctxs;
+	}
+
+	/**
+	 * @return <code>true</code> if any statement of the delta matches this
+	 *         pattern
+	 */
+	public boolean isAffectedBy(Model delta) {
+		if (contexts == null)
+			return false;
+		return !delta.filter(subj, pred, obj, contexts).isEmpty();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((subj == null) ? 0 : subj.hashCode());
+		result = prime * result + ((pred == null) ? 0 : pred.hashCode());
+		result = prime * result + ((obj == null) ? 0 : obj.hashCode());
+		result = prime * result + Arrays.hashCode(contexts);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null || getClass() != obj.getClass())
+			return false;
+		PatternSignature other = (PatternSignature) obj;
+		return equals(subj, other.subj) && equals(pred, other.pred)
+				&& equals(this.obj, other.obj)
+				&& Arrays.equals(contexts, other.contexts);
+	}
+
+	@Override
+	public String toString() {
+		return subj + " " + pred + " " + obj + " "
+				+ (contexts == null ? "none" : Arrays.asList(contexts));
+	}
+
+	private boolean equals(Value a, Value b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -132,6 +132,71 @@ public class SerializableTest extends TestCase {
 		}
 	}
 
+	public void test_independentGraph() throws Exception {
+		URI g1 = lf.createURI(NS, "g1");
+		URI g2 = lf.createURI(NS, "g2");
+		a.setAutoCommit(false);
+		b.setAutoCommit(false);
+		a.add(PICASSO, RDF.TYPE, PAINTER, g1);
+		b.add(REMBRANDT, RDF.TYPE, PAINTER, g2);
+		assertEquals(1, size(b, null, RDF.TYPE, PAINTER, false, g2));
+		a.setAutoCommit(true);
+		b.setAutoCommit(true);
+		assertEquals(2, size(a, null, RDF.TYPE, PAINTER, false));
+	}
+
+	public void test_conflictGraph() throws Exception {
+		URI g1 = lf.createURI(NS, "g1");
+		a.setAutoCommit(false);
+		b.setAutoCommit(false);
+		a.add(PICASSO, RDF.TYPE, PAINTER, g1);
+		b.add(REMBRANDT, RDF.TYPE, PAINTER, g1);
+		assertEquals(1, size(b, null, RDF.TYPE, PAINTER, false, g1));
+		a.setAutoCommit(true);
+		try {
+			b.setAutoCommit(true);
+			fail();
+		} catch (ConcurrencyException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void test_conflictManyTransactions() throws Exception {
+		sail.setConflictCheckThreads(2);
+		RepositoryConnection[] others = new RepositoryConnection[6];
+		try {
+			a.setAutoCommit(false);
+			a.add(PICASSO, RDF.TYPE, PAINTER);
+			for (int i = 0; i < others.length; i++) {
+				others[i] = sail.getConnection();
+				others[i].setAutoCommit(false);
+				URI painting = lf.createURI(NS, "painting" + i);
+				others[i].add(painting, RDF.TYPE, PAINTING);
+				if (i % 2 == 0) {
+					assertEquals(0, size(others[i], null, RDF.TYPE, PAINTER, false));
+				} else {
+					assertEquals(1, size(others[i], painting, RDF.TYPE, null, false));
+				}
+			}
+			a.setAutoCommit(true);
+			for (int i = 0; i < others.length; i++) {
+				try {
+					others[i].setAutoCommit(true);
+					assertTrue(i % 2 == 1);
+				} catch (ConcurrencyException e) {
+					assertTrue(i % 2 == 0);
+				}
+			}
+		} finally {
+			for (RepositoryConnection con : others) {
+				if (con != null) {
+					con.close();
+				}
+			}
+		}
+		assertEquals(4, size(a, null, RDF.TYPE, null, false));
+	}
+
 	public void test_safeQuery() throws Exception {
 		b.add(REMBRANDT, RDF.TYPE, PAINTER);
 		b.add(REMBRANDT, PAINTS, NIGHTWATCH);
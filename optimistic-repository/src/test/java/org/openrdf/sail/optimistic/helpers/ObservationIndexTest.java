@@ -0,0 +1,112 @@
+package org.openrdf.sail.optimistic.helpers;
+
+import junit.framework.TestCase;
+
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.impl.DatasetImpl;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.query.impl.MapBindingSet;
+
+public class ObservationIndexTest extends TestCase {
+	private ValueFactory vf = ValueFactoryImpl.getInstance();
+	private String NS = "http://example.com/";
+	private URI carmichael = vf.createURI(NS, "carmichael");
+	private URI harris = vf.createURI(NS, "harris");
+	private URI knows = vf.createURI("http://xmlns.com/foaf/0.1/knows");
+	private URI g1 = vf.createURI(NS, "g1");
+	private URI g2 = vf.createURI(NS, "g2");
+	private ObservationIndex index = new ObservationIndex();
+	private Model added = new LinkedHashModel();
+	private Model removed = new LinkedHashModel();
+
+	public void setUp() throws Exception {
+		added.add(carmichael, knows, harris, g1);
+	}
+
+	public void testDisjointGraph() throws Exception {
+		EvaluateOperation op = observe(new StatementPattern(var("s"),
+				var("p", knows), var("o"), var("c", g2)));
+		assertFalse(index.findAffected(added, removed).contains(op));
+	}
+
+	public void testSameGraph() throws Exception {
+		EvaluateOperation op = observe(new StatementPattern(var("s"),
+				var("p", knows), var("o"), var("c", g1)));
+		assertTrue(index.findAffected(added, removed).contains(op));
+	}
+
+	public void testRemovedFromGraph() throws Exception {
+		EvaluateOperation op = observe(new StatementPattern(var("s"),
+				var("p", knows), var("o"), var("c", g1)));
+		assertTrue(index.findAffected(removed, added).contains(op));
+	}
+
+	public void testVariables() throws Exception {
+		EvaluateOperation op = observe(new StatementPattern(var("s"),
+				var("p"), var("o")));
+		assertTrue(index.findAffected(added, removed).contains(op));
+	}
+
+	public void testBindings() throws Exception {
+		StatementPattern sp = new StatementPattern(var("s"), var("p", knows),
+				var("o"), var("c"));
+		MapBindingSet inG1 = new MapBindingSet();
+		inG1.addBinding("c", g1);
+		MapBindingSet inG2 = new MapBindingSet();
+		inG2.addBinding("c", g2);
+		EvaluateOperation op1 = observe(null, sp, inG1);
+		EvaluateOperation op2 = observe(null, sp.clone(), inG2);
+		assertTrue(index.findAffected(added, removed).contains(op1));
+		assertFalse(index.findAffected(added, removed).contains(op2));
+	}
+
+	public void testDataset() throws Exception {
+		StatementPattern sp = new StatementPattern(var("s"), var("p", knows),
+				var("o"));
+		DatasetImpl inG1 = new DatasetImpl();
+		inG1.addDefaultGraph(g1);
+		DatasetImpl inG2 = new DatasetImpl();
+		inG2.addDefaultGraph(g2);
+		EvaluateOperation op2 = observe(inG2, sp, EmptyBindingSet.getInstance());
+		EvaluateOperation op1 = observe(inG1, sp.clone(), EmptyBindingSet.getInstance());
+		assertTrue(index.findAffected(added, removed).contains(op1));
+		assertFalse(index.findAffected(added, removed).contains(op2));
+	}
+
+	public void testClear() throws Exception {
+		observe(new StatementPattern(var("s"), var("p"), var("o")));
+		index.clear();
+		assertTrue(index.isEmpty());
+		assertTrue(index.findAffected(added, removed).isEmpty());
+	}
+
+	private EvaluateOperation observe(StatementPattern sp) {
+		EvaluateOperation op = new EvaluateOperation(sp, false);
+		index.add(op);
+		return op;
+	}
+
+	private EvaluateOperation observe(Dataset dataset, StatementPattern sp,
+			BindingSet bindings) {
+		EvaluateOperation op = new EvaluateOperation(dataset, sp, bindings,
+				false);
+		index.add(op);
+		return op;
+	}
+
+	private Var var(String name) {
+		return new Var(name);
+	}
+
+	private Var var(String name, URI value) {
+		return new Var(name, value);
+	}
+}